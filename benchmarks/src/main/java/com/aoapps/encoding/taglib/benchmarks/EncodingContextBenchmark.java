@@ -0,0 +1,76 @@
+/*
+ * ao-encoding-taglib - High performance streaming character encoding in a JSP environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-encoding-taglib.
+ *
+ * ao-encoding-taglib is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-encoding-taglib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-encoding-taglib.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.aoapps.encoding.taglib.benchmarks;
+
+import com.aoapps.encoding.EncodingContext;
+import com.aoapps.encoding.servlet.EncodingContextEE;
+import com.aoapps.encoding.taglib.EncodingContextCache;
+import com.aoapps.encoding.taglib.mock.ServletMocks;
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares creating an {@link EncodingContextEE} per tag with the per-request
+ * {@link EncodingContextCache}.  With the GC profiler, the cached lookup should
+ * show zero bytes allocated per operation.
+ *
+ * @author  AO Industries, Inc.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EncodingContextBenchmark {
+
+	private ServletContext servletContext;
+	private HttpServletRequest request;
+	private HttpServletResponse response;
+
+	@Setup
+	public void setup() {
+		servletContext = ServletMocks.newServletContext();
+		request = ServletMocks.newHttpServletRequest(servletContext);
+		response = ServletMocks.newHttpServletResponse(TagBenchmark.RESPONSE_CONTENT_TYPE);
+	}
+
+	@Benchmark
+	public EncodingContext newEncodingContext() {
+		return new EncodingContextEE(servletContext, request, response);
+	}
+
+	@Benchmark
+	public EncodingContext cachedEncodingContext() {
+		return EncodingContextCache.getEncodingContext(servletContext, request, response);
+	}
+}
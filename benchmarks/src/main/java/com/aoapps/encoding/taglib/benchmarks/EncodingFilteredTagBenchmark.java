@@ -0,0 +1,71 @@
+/*
+ * ao-encoding-taglib - High performance streaming character encoding in a JSP environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-encoding-taglib.
+ *
+ * ao-encoding-taglib is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-encoding-taglib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-encoding-taglib.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.aoapps.encoding.taglib.benchmarks;
+
+import com.aoapps.encoding.MediaType;
+import com.aoapps.encoding.taglib.EncodingFilteredTag;
+import java.io.IOException;
+import javax.servlet.jsp.JspException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link EncodingFilteredTag#doTag()}, the body being filtered straight through.
+ *
+ * @author  AO Industries, Inc.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EncodingFilteredTagBenchmark extends TagBenchmark {
+
+	public static class Tag extends EncodingFilteredTag {
+
+		private final MediaType contentType;
+
+		public Tag(MediaType contentType) {
+			this.contentType = contentType;
+		}
+
+		@Override
+		public MediaType getContentType() {
+			return contentType;
+		}
+	}
+
+	@Benchmark
+	@SuppressWarnings("deprecation")
+	public long doTag() throws JspException, IOException {
+		// A new instance per invocation, as with the SimpleTag lifecycle
+		Tag tag = new Tag(tagType);
+		tag.setJspContext(pageContext);
+		tag.setJspBody(jspBody);
+		tag.doTag();
+		return out.getCount();
+	}
+}
@@ -0,0 +1,80 @@
+/*
+ * ao-encoding-taglib - High performance streaming character encoding in a JSP environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-encoding-taglib.
+ *
+ * ao-encoding-taglib is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-encoding-taglib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-encoding-taglib.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.aoapps.encoding.taglib.benchmarks;
+
+import com.aoapps.encoding.MediaType;
+import com.aoapps.encoding.taglib.EncodingNullTag;
+import java.io.IOException;
+import java.io.Writer;
+import javax.servlet.jsp.JspException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link EncodingNullTag#doTag()}, the body being discarded and a value
+ * of the same size written, as done by <code>&lt;encoding:out&gt;</code>.
+ *
+ * @author  AO Industries, Inc.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EncodingNullTagBenchmark extends TagBenchmark {
+
+	public static class Tag extends EncodingNullTag {
+
+		private final MediaType outputType;
+		private final String value;
+
+		public Tag(MediaType outputType, String value) {
+			this.outputType = outputType;
+			this.value = value;
+		}
+
+		@Override
+		public MediaType getOutputType() {
+			return outputType;
+		}
+
+		@Override
+		protected void doTag(Writer out) throws IOException {
+			out.write(value);
+		}
+	}
+
+	@Benchmark
+	@SuppressWarnings("deprecation")
+	public long doTag() throws JspException, IOException {
+		// A new instance per invocation, as with the SimpleTag lifecycle
+		Tag tag = new Tag(tagType, payload);
+		tag.setJspContext(pageContext);
+		tag.setJspBody(jspBody);
+		tag.doTag();
+		return out.getCount();
+	}
+}
@@ -0,0 +1,96 @@
+/*
+ * ao-encoding-taglib - High performance streaming character encoding in a JSP environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-encoding-taglib.
+ *
+ * ao-encoding-taglib is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-encoding-taglib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-encoding-taglib.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.aoapps.encoding.taglib.benchmarks;
+
+import com.aoapps.encoding.taglib.OutValueWriter;
+import com.aoapps.encoding.taglib.mock.MockJspWriter;
+import com.aoapps.lang.Coercion;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the generic {@link Coercion#write(java.lang.Object, java.io.Writer)} with the
+ * type-specialized {@link OutValueWriter} used by <code>&lt;encoding:out&gt;</code>.
+ * Run through {@link BenchmarkRunner}, so <code>gc.alloc.rate.norm</code> shows that numbers
+ * are written without allocation.
+ *
+ * @author  AO Industries, Inc.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OutValueWriterBenchmark {
+
+	public enum ValueType {
+		STRING("The quick brown fox jumps over the lazy dog"),
+		SMALL_INTEGER(7),
+		INTEGER(1234567),
+		LONG(-9876543210L),
+		BOOLEAN(Boolean.TRUE),
+		ENUM(TimeUnit.MILLISECONDS),
+		STRING_BUILDER(new StringBuilder("The quick brown fox jumps over the lazy dog"));
+
+		private final Object value;
+
+		private ValueType(Object value) {
+			this.value = value;
+		}
+	}
+
+	@Param
+	protected ValueType valueType;
+
+	private Object value;
+
+	private MockJspWriter out;
+
+	@Setup
+	public void setup() {
+		value = valueType.value;
+		out = new MockJspWriter();
+	}
+
+	@Benchmark
+	public long coercionWrite() throws IOException {
+		Coercion.write(value, out);
+		return out.getCount();
+	}
+
+	@Benchmark
+	public long outValueWrite() throws IOException {
+		OutValueWriter.write(value, out);
+		return out.getCount();
+	}
+}
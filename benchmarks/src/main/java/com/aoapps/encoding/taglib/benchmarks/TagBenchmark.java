@@ -0,0 +1,146 @@
+/*
+ * ao-encoding-taglib - High performance streaming character encoding in a JSP environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-encoding-taglib.
+ *
+ * ao-encoding-taglib is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-encoding-taglib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-encoding-taglib.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.aoapps.encoding.taglib.benchmarks;
+
+import com.aoapps.encoding.MediaType;
+import com.aoapps.encoding.MediaValidator;
+import com.aoapps.encoding.taglib.RequestEncodingContext;
+import com.aoapps.encoding.taglib.mock.MockBody;
+import com.aoapps.encoding.taglib.mock.MockJspWriter;
+import com.aoapps.encoding.taglib.mock.MockPageContext;
+import com.aoapps.encoding.taglib.mock.ServletMocks;
+import java.io.IOException;
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Shared state for the tag benchmarks.  One simulated request is used per
+ * trial, so per-request caches behave as they would for a page with many tags.
+ *
+ * @author  AO Industries, Inc.
+ */
+@State(Scope.Thread)
+public abstract class TagBenchmark {
+
+	/**
+	 * The content type of the simulated response.
+	 */
+	public static final String RESPONSE_CONTENT_TYPE = "application/xhtml+xml;charset=UTF-8";
+
+	/**
+	 * Where the tag is invoked and which branch of the encoding decision it takes.
+	 * <p>
+	 * There is no top-level pass-through: without a parent encoding context, a
+	 * tag that does not need an encoder always validates its own output.
+	 * </p>
+	 */
+	public enum Scenario {
+		/**
+		 * Top-level JavaScript in an XHTML response: encoder.
+		 */
+		TOP_LEVEL_ENCODER(false, MediaType.JAVASCRIPT),
+
+		/**
+		 * Top-level XHTML in an XHTML response: no encoder, validator.
+		 */
+		TOP_LEVEL_VALIDATOR(false, MediaType.XHTML),
+
+		/**
+		 * JavaScript nested in a validating XHTML parent: encoder.
+		 */
+		NESTED_ENCODER(true, MediaType.JAVASCRIPT),
+
+		/**
+		 * XHTML nested in a validating XHTML parent: pass-through.
+		 */
+		NESTED_PASSTHROUGH(true, MediaType.XHTML);
+
+		private final boolean nested;
+		private final MediaType tagType;
+
+		private Scenario(boolean nested, MediaType tagType) {
+			this.nested = nested;
+			this.tagType = tagType;
+		}
+	}
+
+	/**
+	 * The size of the tag body.
+	 */
+	public enum Body {
+		SMALL(32),
+		LARGE(64 * 1024);
+
+		private final String payload;
+
+		private Body(int length) {
+			String pattern = "The quick brown fox jumps over the lazy dog 0123456789 ";
+			StringBuilder sb = new StringBuilder(length);
+			while(sb.length() < length) {
+				sb.append(pattern, 0, Math.min(pattern.length(), length - sb.length()));
+			}
+			payload = sb.toString();
+		}
+	}
+
+	@Param
+	public Scenario scenario;
+
+	@Param
+	public Body body;
+
+	protected MediaType tagType;
+	protected String payload;
+	protected MockJspWriter out;
+	protected ServletContext servletContext;
+	protected HttpServletRequest request;
+	protected MockPageContext pageContext;
+	protected MockBody jspBody;
+
+	@Setup
+	public void setup() throws IOException {
+		tagType = scenario.tagType;
+		payload = body.payload;
+		out = new MockJspWriter();
+		servletContext = ServletMocks.newServletContext();
+		request = ServletMocks.newHttpServletRequest(servletContext);
+		HttpServletResponse response = ServletMocks.newHttpServletResponse(RESPONSE_CONTENT_TYPE);
+		pageContext = new MockPageContext(servletContext, request, response, out);
+		jspBody = new MockBody(pageContext, payload);
+		if(scenario.nested) {
+			// Tags restore this parent context when they complete
+			RequestEncodingContext.setCurrentContext(
+				request,
+				new RequestEncodingContext(
+					MediaType.XHTML,
+					MediaValidator.getMediaValidator(MediaType.XHTML, out)
+				)
+			);
+		}
+	}
+}
@@ -0,0 +1,221 @@
+/*
+ * ao-encoding-taglib - High performance streaming character encoding in a JSP environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-encoding-taglib.
+ *
+ * ao-encoding-taglib is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-encoding-taglib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-encoding-taglib.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.aoapps.encoding.taglib;
+
+import com.aoapps.io.buffer.AutoTempFileWriter;
+import com.aoapps.lang.Strings;
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.servlet.ServletContext;
+
+/**
+ * <p>
+ * Selects the temp file threshold of buffered tags from the capture sizes
+ * observed for each concrete tag class.  Enabled by setting the context-param
+ * {@link #INIT_PARAM} to <code>true</code>, otherwise the threshold is
+ * {@link AutoTempFileWriter#DEFAULT_TEMP_FILE_THRESHOLD}.
+ * </p>
+ * <p>
+ * Capture sizes are recorded in a lock-free histogram of power-of-two buckets.
+ * Once enough captures have been observed:
+ * </p>
+ * <ol>
+ * <li>When no capture has reached {@link #SMALL_LIMIT}, the threshold is {@link Long#MAX_VALUE},
+ *     so captures are not wrapped to spill to a temp file at all.  A single larger capture
+ *     restores the default threshold for the class.  Only the capture that first exceeds the
+ *     limit may be buffered in the heap beyond the default threshold.</li>
+ * <li>When the median capture reaches {@link #LARGE_LIMIT}, the threshold is lowered
+ *     to {@link #EARLY_THRESHOLD}, spilling to a temp file before buffering the
+ *     bulk of the body in the heap.</li>
+ * <li>Otherwise, the default threshold is used.</li>
+ * </ol>
+ *
+ * @author  AO Industries, Inc.
+ */
+// Java 9: Make module-private
+public final class AdaptiveTempFileThreshold {
+
+	private static final Logger logger = Logger.getLogger(AdaptiveTempFileThreshold.class.getName());
+
+	/**
+	 * The name of the context-param that enables adaptive thresholds.
+	 */
+	public static final String INIT_PARAM = AdaptiveTempFileThreshold.class.getName();
+
+	private static final String APPLICATION_ATTRIBUTE = AdaptiveTempFileThreshold.class.getName();
+
+	/**
+	 * The number of captures observed before the threshold is adapted.
+	 */
+	private static final long MIN_SAMPLES = 100;
+
+	/**
+	 * The threshold is re-evaluated after this many captures.
+	 */
+	private static final long UPDATE_INTERVAL = 64;
+
+	/**
+	 * Classes with no capture of at least this size do not use temp files.
+	 */
+	public static final long SMALL_LIMIT = AutoTempFileWriter.DEFAULT_TEMP_FILE_THRESHOLD >> 6;
+
+	/**
+	 * Classes with a median capture of at least this size spill early.
+	 */
+	public static final long LARGE_LIMIT = AutoTempFileWriter.DEFAULT_TEMP_FILE_THRESHOLD >> 2;
+
+	/**
+	 * The threshold used by classes that spill early.
+	 */
+	public static final long EARLY_THRESHOLD = AutoTempFileWriter.DEFAULT_TEMP_FILE_THRESHOLD >> 6;
+
+	/**
+	 * Gets the adaptive thresholds for the given application.
+	 *
+	 * @return  the thresholds or {@code null} when not enabled
+	 */
+	private static AdaptiveTempFileThreshold getInstance(ServletContext servletContext) {
+		Object instance = servletContext.getAttribute(APPLICATION_ATTRIBUTE);
+		if(instance == null) {
+			synchronized(AdaptiveTempFileThreshold.class) {
+				instance = servletContext.getAttribute(APPLICATION_ATTRIBUTE);
+				if(instance == null) {
+					boolean enabled = Boolean.parseBoolean(Strings.trimNullIfEmpty(servletContext.getInitParameter(INIT_PARAM)));
+					if(logger.isLoggable(Level.CONFIG)) {
+						logger.config(INIT_PARAM + "=" + enabled);
+					}
+					instance = enabled ? new AdaptiveTempFileThreshold() : Boolean.FALSE;
+					servletContext.setAttribute(APPLICATION_ATTRIBUTE, instance);
+				}
+			}
+		}
+		return (instance instanceof AdaptiveTempFileThreshold) ? (AdaptiveTempFileThreshold)instance : null;
+	}
+
+	/**
+	 * Checks if adaptive thresholds are enabled for the given application.
+	 */
+	public static boolean isEnabled(ServletContext servletContext) {
+		return getInstance(servletContext) != null;
+	}
+
+	/**
+	 * The capture sizes of one tag class.
+	 */
+	private static final class Histogram {
+
+		/**
+		 * Bucket 0 is empty captures, bucket n is sizes in [2<sup>n-1</sup>, 2<sup>n</sup>).
+		 */
+		private final AtomicLongArray buckets = new AtomicLongArray(Long.SIZE + 1);
+		private final AtomicLong count = new AtomicLong();
+		private final AtomicLong max = new AtomicLong();
+		private volatile long threshold = AutoTempFileWriter.DEFAULT_TEMP_FILE_THRESHOLD;
+
+		private void record(long size) {
+			buckets.incrementAndGet(Long.SIZE - Long.numberOfLeadingZeros(size));
+			long m = max.get();
+			while(size > m && !max.compareAndSet(m, size)) m = max.get();
+			long c = count.incrementAndGet();
+			if(c >= MIN_SAMPLES && (c % UPDATE_INTERVAL) == 0) {
+				threshold = computeThreshold(c);
+			} else if(size >= SMALL_LIMIT && threshold == Long.MAX_VALUE) {
+				// Restore the default threshold immediately
+				threshold = AutoTempFileWriter.DEFAULT_TEMP_FILE_THRESHOLD;
+			}
+		}
+
+		private long computeThreshold(long c) {
+			if(max.get() < SMALL_LIMIT) return Long.MAX_VALUE;
+			// Find the lower bound of the median bucket
+			long half = (c + 1) / 2;
+			long cumulative = 0;
+			for(int i = 0; i < buckets.length(); i++) {
+				cumulative += buckets.get(i);
+				if(cumulative >= half) {
+					long medianLowerBound = (i == 0) ? 0 : (1L << (i - 1));
+					return medianLowerBound >= LARGE_LIMIT ? EARLY_THRESHOLD : AutoTempFileWriter.DEFAULT_TEMP_FILE_THRESHOLD;
+				}
+			}
+			return AutoTempFileWriter.DEFAULT_TEMP_FILE_THRESHOLD;
+		}
+	}
+
+	/**
+	 * Gets the temp file threshold for the given tag class.
+	 *
+	 * @return the threshold or {@link Long#MAX_VALUE} to never use temp files.
+	 */
+	public static long getTempFileThreshold(ServletContext servletContext, Class<?> tagClass) {
+		AdaptiveTempFileThreshold instance = getInstance(servletContext);
+		if(instance == null) return AutoTempFileWriter.DEFAULT_TEMP_FILE_THRESHOLD;
+		Histogram histogram = instance.histograms.get(tagClass);
+		return (histogram == null) ? AutoTempFileWriter.DEFAULT_TEMP_FILE_THRESHOLD : histogram.threshold;
+	}
+
+	/**
+	 * Records the size of a capture by the given tag class.
+	 */
+	public static void record(ServletContext servletContext, Class<?> tagClass, long size) {
+		AdaptiveTempFileThreshold instance = getInstance(servletContext);
+		if(instance != null) {
+			Histogram histogram = instance.histograms.get(tagClass);
+			if(histogram == null) histogram = instance.histograms.computeIfAbsent(tagClass, c -> new Histogram());
+			histogram.record(size);
+		}
+	}
+
+	/**
+	 * Gets the current threshold of each tag class with recorded captures, by class name.
+	 *
+	 * Does not create the instance, since read by {@link TaglibStatistics} even after
+	 * the application is destroyed.
+	 *
+	 * @return  the thresholds or an empty map when not enabled or not yet created
+	 */
+	public static SortedMap<String, Long> getThresholds(ServletContext servletContext) {
+		Object instance = servletContext.getAttribute(APPLICATION_ATTRIBUTE);
+		if(!(instance instanceof AdaptiveTempFileThreshold)) return Collections.emptySortedMap();
+		SortedMap<String, Long> thresholds = new TreeMap<>();
+		for(Map.Entry<Class<?>, Histogram> entry : ((AdaptiveTempFileThreshold)instance).histograms.entrySet()) {
+			thresholds.put(entry.getKey().getName(), entry.getValue().threshold);
+		}
+		return Collections.unmodifiableSortedMap(thresholds);
+	}
+
+	/**
+	 * Histograms are kept per application, so tag classes are not retained after the application is destroyed.
+	 */
+	private final ConcurrentMap<Class<?>, Histogram> histograms = new ConcurrentHashMap<>();
+
+	private AdaptiveTempFileThreshold() {
+	}
+}
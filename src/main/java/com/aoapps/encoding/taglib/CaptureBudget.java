@@ -0,0 +1,283 @@
+/*
+ * ao-encoding-taglib - High performance streaming character encoding in a JSP environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-encoding-taglib.
+ *
+ * ao-encoding-taglib is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-encoding-taglib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-encoding-taglib.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.aoapps.encoding.taglib;
+
+import com.aoapps.lang.Strings;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletRequest;
+
+/**
+ * <p>
+ * A per-application budget of characters buffered in memory by captures and their results,
+ * shared by all {@link MappedTempFileWriter} and {@link DeflatedTempFileWriter} of the application.
+ * A capture that would take the aggregate over budget spills to its temp file
+ * immediately, regardless of its own threshold.  Captures with a threshold of
+ * {@link Long#MAX_VALUE} never use temp files and are not budgeted.
+ * </p>
+ * <p>
+ * Each application has its own budget, since the classes of this library are loaded
+ * separately by each web application.  The memory used by captures in the process is
+ * limited by the sum of the budgets of its applications, so set each budget to its share.
+ * </p>
+ * <p>
+ * Enabling the budget also enables {@link MappedTempFileWriter} for the application,
+ * since {@link com.aoapps.io.buffer.AutoTempFileWriter} only spills at its threshold.
+ * Captures that are not compressed spill to a {@link MappedTempFileWriter}, even when
+ * its context-param is not set, so their results belong to the request that created
+ * them and must not be used after the request has completed.
+ * </p>
+ * <p>
+ * Captures reserve the budget in blocks of {@link #RESERVE_BLOCK} characters from a
+ * lock-free counter.  A capture's reservation is returned when it spills, or when its
+ * result is no longer used, such as when a {@link ReusableCaptureWriter} is reset.
+ * All other reservations, including those of results still in the heap, are returned
+ * when their request is destroyed by {@link TaglibInitializer}.  Without this listener,
+ * reservations would never be returned, so the budget is not used, with a warning,
+ * in an application that has not been initialized by {@link TaglibInitializer}.
+ * </p>
+ * <p>
+ * The budget is set by the context-param {@link #MAX_CHARS_INIT_PARAM}.  It is disabled
+ * by default, or by a value of <code>0</code>.
+ * </p>
+ *
+ * @author  AO Industries, Inc.
+ */
+// Java 9: Make module-private
+public final class CaptureBudget {
+
+	private static final Logger logger = Logger.getLogger(CaptureBudget.class.getName());
+
+	/**
+	 * The name of the context-param that sets the budget in characters.
+	 */
+	public static final String MAX_CHARS_INIT_PARAM = CaptureBudget.class.getName() + ".maxChars";
+
+	/**
+	 * The number of characters reserved at a time.
+	 */
+	static final long RESERVE_BLOCK = 4096;
+
+	private static final String APPLICATION_ATTRIBUTE = CaptureBudget.class.getName();
+
+	private static final String RESERVATIONS_REQUEST_ATTRIBUTE = CaptureBudget.class.getName() + ".reservations";
+
+	/**
+	 * Used when not enabled, or when the application has not been initialized by {@link TaglibInitializer}.
+	 */
+	private static final CaptureBudget DISABLED = new CaptureBudget(0);
+
+	private static long getMaxChars(ServletContext servletContext) {
+		String value = Strings.trimNullIfEmpty(servletContext.getInitParameter(MAX_CHARS_INIT_PARAM));
+		if(value == null) return 0;
+		long max = Long.parseLong(value);
+		if(max < 0) throw new IllegalArgumentException(MAX_CHARS_INIT_PARAM + " may not be negative: " + max);
+		return max;
+	}
+
+	/**
+	 * Creates the budget of the application on start-up.
+	 *
+	 * @see  TaglibInitializer
+	 */
+	static void contextInitialized(ServletContext servletContext) {
+		long maxChars = getMaxChars(servletContext);
+		if(logger.isLoggable(Level.CONFIG)) {
+			logger.config(MAX_CHARS_INIT_PARAM + "=" + maxChars);
+		}
+		servletContext.setAttribute(APPLICATION_ATTRIBUTE, (maxChars == 0) ? DISABLED : new CaptureBudget(maxChars));
+	}
+
+	/**
+	 * @see  TaglibInitializer
+	 */
+	static void contextDestroyed(ServletContext servletContext) {
+		servletContext.removeAttribute(APPLICATION_ATTRIBUTE);
+	}
+
+	/**
+	 * Returns the reservations of a request's captures when it is destroyed.
+	 *
+	 * @see  TaglibInitializer
+	 */
+	static void requestDestroyed(ServletRequest request) {
+		Reservations reservations = (Reservations)request.getAttribute(RESERVATIONS_REQUEST_ATTRIBUTE);
+		if(reservations != null) {
+			request.removeAttribute(RESERVATIONS_REQUEST_ATTRIBUTE);
+			reservations.releaseAll();
+		}
+	}
+
+	/**
+	 * Gets the budget of the given application, without creating it.
+	 *
+	 * @return  the budget or {@code null} when not initialized or the application is destroyed
+	 */
+	static CaptureBudget getExistingInstance(ServletContext servletContext) {
+		return (CaptureBudget)servletContext.getAttribute(APPLICATION_ATTRIBUTE);
+	}
+
+	/**
+	 * Gets the budget of the given application.  When the application has not been initialized by
+	 * {@link TaglibInitializer}, the budget is not used, logging a warning when it is configured.
+	 */
+	// Java 9: Make module-private
+	public static CaptureBudget getInstance(ServletContext servletContext) {
+		CaptureBudget instance = (CaptureBudget)servletContext.getAttribute(APPLICATION_ATTRIBUTE);
+		if(instance == null) {
+			if(getMaxChars(servletContext) != 0) {
+				logger.warning(
+					MAX_CHARS_INIT_PARAM + " is set, but " + TaglibInitializer.class.getName()
+					+ " is not registered to return reservations when requests are destroyed: capture budget not used"
+				);
+			}
+			instance = DISABLED;
+			servletContext.setAttribute(APPLICATION_ATTRIBUTE, instance);
+		}
+		return instance;
+	}
+
+	/**
+	 * The reservations of the captures of one request, returned when the request is destroyed.
+	 * <p>
+	 * This class is not thread safe.
+	 * </p>
+	 */
+	static final class Reservations {
+
+		private final CaptureBudget budget;
+
+		/**
+		 * The total reserved by the captures of the request.
+		 */
+		private long reserved;
+
+		private Reservations(CaptureBudget budget) {
+			this.budget = budget;
+		}
+
+		/**
+		 * Reserves the given number of characters.
+		 *
+		 * @return  {@code true} when reserved or {@code false} when over budget, in which case nothing is reserved
+		 */
+		boolean tryReserve(long chars) {
+			if(!budget.tryReserve(chars)) return false;
+			reserved += chars;
+			return true;
+		}
+
+		/**
+		 * Returns a reservation.
+		 */
+		void release(long chars) {
+			budget.release(chars);
+			reserved -= chars;
+		}
+
+		/**
+		 * Counts a capture spilled because the budget was exhausted.
+		 */
+		void spilled() {
+			budget.spills.increment();
+		}
+
+		private void releaseAll() {
+			release(reserved);
+		}
+	}
+
+	private final long maxChars;
+	private final AtomicLong usedChars = new AtomicLong();
+	private final LongAdder spills = new LongAdder();
+
+	private CaptureBudget(long maxChars) {
+		this.maxChars = maxChars;
+	}
+
+	/**
+	 * Checks if the budget is enabled.
+	 */
+	public boolean isEnabled() {
+		return maxChars > 0;
+	}
+
+	/**
+	 * The budget in characters, or <code>0</code> when disabled.
+	 */
+	public long getMaxChars() {
+		return maxChars;
+	}
+
+	/**
+	 * The number of characters currently reserved by captures.
+	 */
+	public long getUsedChars() {
+		return usedChars.get();
+	}
+
+	/**
+	 * The number of captures spilled because the budget was exhausted.
+	 */
+	public long getSpills() {
+		return spills.sum();
+	}
+
+	/**
+	 * Gets the reservations of the captures of the given request, created when first needed.
+	 */
+	Reservations getRequestReservations(ServletRequest request) {
+		Reservations reservations = (Reservations)request.getAttribute(RESERVATIONS_REQUEST_ATTRIBUTE);
+		if(reservations == null) {
+			reservations = new Reservations(this);
+			request.setAttribute(RESERVATIONS_REQUEST_ATTRIBUTE, reservations);
+		}
+		return reservations;
+	}
+
+	/**
+	 * Reserves the given number of characters.
+	 *
+	 * @return  {@code true} when reserved or {@code false} when over budget, in which case nothing is reserved
+	 */
+	boolean tryReserve(long chars) {
+		// Only commits when within budget, so other captures never see an overshoot
+		long used, updated;
+		do {
+			used = usedChars.get();
+			updated = used + chars;
+			if(updated > maxChars) return false;
+		} while(!usedChars.compareAndSet(used, updated));
+		return true;
+	}
+
+	/**
+	 * Returns a reservation.
+	 */
+	void release(long chars) {
+		if(chars != 0) usedChars.addAndGet(-chars);
+	}
+}
@@ -0,0 +1,296 @@
+/*
+ * ao-encoding-taglib - High performance streaming character encoding in a JSP environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-encoding-taglib.
+ *
+ * ao-encoding-taglib is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-encoding-taglib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-encoding-taglib.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.aoapps.encoding.taglib;
+
+import com.aoapps.lang.Strings;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletRequest;
+
+/**
+ * <p>
+ * A bounded pool of fixed-size <code>char[]</code> chunks used by {@link PooledSegmentedWriter}
+ * to capture tag bodies without the growth garbage of a doubling buffer.
+ * </p>
+ * <p>
+ * Chunks taken during a request are returned to the pool when the request is
+ * destroyed, so captured results must not be used after the request has completed.
+ * When the pool is empty, new chunks are allocated.  When the pool is full,
+ * returned chunks are left to the garbage collector.
+ * </p>
+ * <p>
+ * The pool is split into stripes selected by thread to reduce contention.  It is
+ * configured by the context-params {@link #CHUNK_SIZE_INIT_PARAM} and
+ * {@link #MAX_CHUNKS_INIT_PARAM}.
+ * </p>
+ * <p>
+ * Pooling is disabled by default, since it limits every result of
+ * {@link EncodingBufferedTag#newBufferWriter(javax.servlet.ServletRequest, long)}
+ * to the request that created it.  Only enable pooling when no captured result
+ * is kept beyond its request, such as in a cache of page or element bodies.
+ * </p>
+ *
+ * @author  AO Industries, Inc.
+ */
+// Java 9: Make module-private
+public final class CharChunkPool {
+
+	private static final Logger logger = Logger.getLogger(CharChunkPool.class.getName());
+
+	/**
+	 * The name of the context-param that sets the number of characters per chunk.
+	 */
+	public static final String CHUNK_SIZE_INIT_PARAM = CharChunkPool.class.getName() + ".chunkSize";
+
+	private static final int DEFAULT_CHUNK_SIZE = 1024;
+
+	/**
+	 * The name of the context-param that sets the maximum number of chunks kept in the pool.
+	 * Defaults to zero, which disables pooling.
+	 */
+	public static final String MAX_CHUNKS_INIT_PARAM = CharChunkPool.class.getName() + ".maxChunks";
+
+	private static final int DEFAULT_MAX_CHUNKS = 0;
+
+	private static final String APPLICATION_ATTRIBUTE = CharChunkPool.class.getName();
+
+	private static final String CHUNKS_REQUEST_ATTRIBUTE = CharChunkPool.class.getName() + ".chunks";
+
+	private static int getNonNegativeInt(ServletContext servletContext, String name, int defaultValue) {
+		String value = Strings.trimNullIfEmpty(servletContext.getInitParameter(name));
+		if(value == null) return defaultValue;
+		int i = Integer.parseInt(value);
+		if(i < 0) throw new IllegalArgumentException(name + " may not be negative: " + i);
+		return i;
+	}
+
+	/**
+	 * Creates the pool on application start-up when pooling is enabled, to fail early on invalid configuration.
+	 * Otherwise, it is created on first use.
+	 *
+	 * @see  TaglibInitializer
+	 */
+	static void contextInitialized(ServletContext servletContext) {
+		if(getNonNegativeInt(servletContext, MAX_CHUNKS_INIT_PARAM, DEFAULT_MAX_CHUNKS) > 0) {
+			getInstance(servletContext);
+		}
+	}
+
+	/**
+	 * @see  TaglibInitializer
+	 */
+	static void contextDestroyed(ServletContext servletContext) {
+		servletContext.removeAttribute(APPLICATION_ATTRIBUTE);
+	}
+
+	/**
+	 * Returns the chunks of a request to the pool when the request is destroyed.
+	 *
+	 * @see  TaglibInitializer
+	 */
+	static void requestDestroyed(ServletContext servletContext, ServletRequest request) {
+		@SuppressWarnings("unchecked")
+		List<char[]> chunks = (List<char[]>)request.getAttribute(CHUNKS_REQUEST_ATTRIBUTE);
+		if(chunks != null) {
+			request.removeAttribute(CHUNKS_REQUEST_ATTRIBUTE);
+			CharChunkPool pool = (CharChunkPool)servletContext.getAttribute(APPLICATION_ATTRIBUTE);
+			if(pool != null) {
+				for(char[] chunk : chunks) pool.release(chunk);
+			}
+		}
+	}
+
+	/**
+	 * Gets the pool for the given application, without creating it.
+	 *
+	 * @return  the pool or {@code null} when not yet created or the application is destroyed
+	 */
+	static CharChunkPool getExistingInstance(ServletContext servletContext) {
+		return (CharChunkPool)servletContext.getAttribute(APPLICATION_ATTRIBUTE);
+	}
+
+	/**
+	 * Gets the pool for the given application, creating it when first needed.
+	 */
+	// Java 9: Make module-private
+	public static CharChunkPool getInstance(ServletContext servletContext) {
+		CharChunkPool instance = (CharChunkPool)servletContext.getAttribute(APPLICATION_ATTRIBUTE);
+		if(instance == null) {
+			synchronized(CharChunkPool.class) {
+				instance = (CharChunkPool)servletContext.getAttribute(APPLICATION_ATTRIBUTE);
+				if(instance == null) {
+					int chunkSize = getNonNegativeInt(servletContext, CHUNK_SIZE_INIT_PARAM, DEFAULT_CHUNK_SIZE);
+					if(chunkSize == 0) throw new IllegalArgumentException(CHUNK_SIZE_INIT_PARAM + " must be positive: " + chunkSize);
+					instance = new CharChunkPool(
+						chunkSize,
+						getNonNegativeInt(servletContext, MAX_CHUNKS_INIT_PARAM, DEFAULT_MAX_CHUNKS)
+					);
+					servletContext.setAttribute(APPLICATION_ATTRIBUTE, instance);
+				}
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * Gets the list of chunks to be returned to the pool when the given request is destroyed.
+	 */
+	static List<char[]> getRequestChunks(ServletRequest request) {
+		@SuppressWarnings("unchecked")
+		List<char[]> chunks = (List<char[]>)request.getAttribute(CHUNKS_REQUEST_ATTRIBUTE);
+		if(chunks == null) {
+			chunks = new ArrayList<>();
+			request.setAttribute(CHUNKS_REQUEST_ATTRIBUTE, chunks);
+		}
+		return chunks;
+	}
+
+	private final int chunkSize;
+	private final int maxChunks;
+	private final ArrayBlockingQueue<char[]>[] stripes;
+	private final int stripeMask;
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder discarded = new LongAdder();
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private CharChunkPool(int chunkSize, int maxChunks) {
+		this.chunkSize = chunkSize;
+		this.maxChunks = maxChunks;
+		// A power of two stripes, no more than processors, each with at least one chunk
+		int numStripes = 1;
+		while(
+			numStripes < Runtime.getRuntime().availableProcessors()
+			&& (numStripes << 1) <= maxChunks
+		) {
+			numStripes <<= 1;
+		}
+		stripes = new ArrayBlockingQueue[numStripes];
+		for(int i = 0; i < numStripes; i++) {
+			// Distribute any remainder over the first stripes
+			int capacity = maxChunks / numStripes + (i < (maxChunks % numStripes) ? 1 : 0);
+			stripes[i] = capacity == 0 ? null : new ArrayBlockingQueue<>(capacity);
+		}
+		stripeMask = numStripes - 1;
+		if(logger.isLoggable(Level.CONFIG)) {
+			logger.config("Pooling up to " + maxChunks + " chunks of " + chunkSize + " characters in " + numStripes + " stripes");
+		}
+	}
+
+	/**
+	 * The number of characters in each chunk.
+	 */
+	public int getChunkSize() {
+		return chunkSize;
+	}
+
+	/**
+	 * The maximum number of chunks kept in the pool.
+	 */
+	public int getMaxChunks() {
+		return maxChunks;
+	}
+
+	/**
+	 * Checks if pooling is enabled.
+	 */
+	public boolean isEnabled() {
+		return maxChunks > 0;
+	}
+
+	/**
+	 * The number of chunks taken from the pool.
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * The number of chunks allocated because the pool was empty.
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * The number of returned chunks not kept because the pool was full.
+	 */
+	public long getDiscarded() {
+		return discarded.sum();
+	}
+
+	/**
+	 * The number of chunks currently available in the pool.
+	 */
+	public int getAvailable() {
+		int available = 0;
+		for(ArrayBlockingQueue<char[]> stripe : stripes) {
+			if(stripe != null) available += stripe.size();
+		}
+		return available;
+	}
+
+	private int getStripe() {
+		long id = Thread.currentThread().getId();
+		return (int)(id ^ (id >>> 32)) & stripeMask;
+	}
+
+	/**
+	 * Takes a chunk from the pool, starting with the stripe of the current
+	 * thread, or allocates a new chunk when the pool is empty.
+	 */
+	char[] take() {
+		int start = getStripe();
+		for(int i = 0; i <= stripeMask; i++) {
+			ArrayBlockingQueue<char[]> stripe = stripes[(start + i) & stripeMask];
+			if(stripe != null) {
+				char[] chunk = stripe.poll();
+				if(chunk != null) {
+					hits.increment();
+					return chunk;
+				}
+			}
+		}
+		misses.increment();
+		return new char[chunkSize];
+	}
+
+	/**
+	 * Returns a chunk to the pool, starting with the stripe of the current thread.
+	 */
+	void release(char[] chunk) {
+		if(chunk.length == chunkSize) {
+			int start = getStripe();
+			for(int i = 0; i <= stripeMask; i++) {
+				ArrayBlockingQueue<char[]> stripe = stripes[(start + i) & stripeMask];
+				if(stripe != null && stripe.offer(chunk)) return;
+			}
+		}
+		discarded.increment();
+	}
+}
@@ -0,0 +1,78 @@
+/*
+ * ao-encoding-taglib - High performance streaming character encoding in a JSP environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-encoding-taglib.
+ *
+ * ao-encoding-taglib is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-encoding-taglib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-encoding-taglib.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.aoapps.encoding.taglib;
+
+import com.aoapps.encoding.MediaType;
+import java.io.UnsupportedEncodingException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+/**
+ * Resolves the {@link MediaType} of the response, which is the container type of
+ * all top-level tags.  The result is cached per request, keyed by the response
+ * content type, so the content type is only parsed again after a call to
+ * {@link ServletResponse#setContentType(java.lang.String)} changes it.
+ *
+ * @author  AO Industries, Inc.
+ */
+// Java 9: Make module-private
+public final class ContainerMediaType {
+
+	private static final String REQUEST_ATTRIBUTE = ContainerMediaType.class.getName();
+
+	/**
+	 * Gets the container type for a top-level tag from the content type of the response.
+	 * When the response has no content type, defaults to {@link MediaType#XHTML}.
+	 */
+	// Java 9: Make module-private
+	@SuppressWarnings("StringEquality")
+	public static MediaType getContainerType(ServletRequest request, ServletResponse response) throws UnsupportedEncodingException {
+		String responseContentType = response.getContentType();
+		// Default to XHTML: TODO: Is there a better way since can't set content type early in response then reset again...
+		if(responseContentType == null) responseContentType = MediaType.XHTML.getContentType();
+		ContainerMediaType cached = (ContainerMediaType)request.getAttribute(REQUEST_ATTRIBUTE);
+		if(
+			cached == null
+			|| (
+				// Containers typically return the same String instance until the content type is changed
+				cached.responseContentType != responseContentType
+				&& !cached.responseContentType.equals(responseContentType)
+			)
+		) {
+			cached = new ContainerMediaType(
+				responseContentType,
+				MediaType.getMediaTypeForContentType(responseContentType)
+			);
+			request.setAttribute(REQUEST_ATTRIBUTE, cached);
+		}
+		return cached.containerType;
+	}
+
+	private final String responseContentType;
+	private final MediaType containerType;
+
+	private ContainerMediaType(String responseContentType, MediaType containerType) {
+		this.responseContentType = responseContentType;
+		this.containerType = containerType;
+	}
+}
@@ -0,0 +1,129 @@
+/*
+ * ao-encoding-taglib - High performance streaming character encoding in a JSP environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-encoding-taglib.
+ *
+ * ao-encoding-taglib is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-encoding-taglib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-encoding-taglib.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.aoapps.encoding.taglib;
+
+import com.aoapps.encoding.MediaType;
+import com.aoapps.encoding.MediaValidator;
+import com.aoapps.lang.Strings;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.servlet.ServletContext;
+
+/**
+ * <p>
+ * The policy for validating the output of top-level tags against the content
+ * type of the response.  Tags nested within other tags are always validated or
+ * encoded by their parent, regardless of this policy.
+ * </p>
+ * <p>
+ * Selected by the context-param {@link #INIT_PARAM}, which is read once when
+ * the application starts.  Defaults to {@link #STRICT}.
+ * </p>
+ *
+ * @author  AO Industries, Inc.
+ */
+public enum ContainerValidation {
+
+	/**
+	 * Validates all top-level output against the content type of the response.
+	 * This is the default.
+	 */
+	STRICT {
+		@Override
+		public Writer getContainerValidator(MediaType containerType, Writer out) throws IOException {
+			return MediaValidator.getMediaValidator(containerType, out);
+		}
+	},
+
+	/**
+	 * Trusts the container: top-level output is not validated against the
+	 * content type of the response.  Encoders still run and tag contents are
+	 * still validated against their own type.  Intended for production once a
+	 * site has been verified in {@link #STRICT} mode.
+	 */
+	TRUSTED {
+		@Override
+		public Writer getContainerValidator(MediaType containerType, Writer out) {
+			return out;
+		}
+	};
+
+	private static final Logger logger = Logger.getLogger(ContainerValidation.class.getName());
+
+	/**
+	 * The name of the context-param that selects the policy, one of
+	 * <code>strict</code> or <code>trusted</code> (case-insensitive).
+	 */
+	public static final String INIT_PARAM = ContainerValidation.class.getName();
+
+	private static final String APPLICATION_ATTRIBUTE = ContainerValidation.class.getName();
+
+	/**
+	 * Reads the context-param once on application start-up.
+	 *
+	 * @see  TaglibInitializer
+	 */
+	static void contextInitialized(ServletContext servletContext) {
+		getContainerValidation(servletContext);
+	}
+
+	/**
+	 * @see  TaglibInitializer
+	 */
+	static void contextDestroyed(ServletContext servletContext) {
+		servletContext.removeAttribute(APPLICATION_ATTRIBUTE);
+	}
+
+	/**
+	 * Gets the policy for the given application.
+	 *
+	 * @throws  IllegalArgumentException  when the context-param has an unexpected value
+	 */
+	public static ContainerValidation getContainerValidation(ServletContext servletContext) throws IllegalArgumentException {
+		ContainerValidation containerValidation = (ContainerValidation)servletContext.getAttribute(APPLICATION_ATTRIBUTE);
+		if(containerValidation == null) {
+			// Parse the context-param, normally done once by TaglibInitializer
+			String value = Strings.trimNullIfEmpty(servletContext.getInitParameter(INIT_PARAM));
+			containerValidation = (value == null) ? STRICT : valueOf(value.toUpperCase(Locale.ROOT));
+			if(logger.isLoggable(Level.CONFIG)) {
+				logger.config(INIT_PARAM + "=" + containerValidation);
+			}
+			servletContext.setAttribute(APPLICATION_ATTRIBUTE, containerValidation);
+		}
+		return containerValidation;
+	}
+
+	/**
+	 * Gets the writer used by a top-level tag for its output that goes directly
+	 * to the response, such as <code>writePrefix</code> and <code>writeSuffix</code>.
+	 *
+	 * @param  containerType  the content type of the response
+	 * @param  out  the writer of the response
+	 *
+	 * @return  either a validator wrapping {@code out} or {@code out} itself
+	 */
+	public abstract Writer getContainerValidator(MediaType containerType, Writer out) throws IOException;
+}
@@ -0,0 +1,206 @@
+/*
+ * ao-encoding-taglib - High performance streaming character encoding in a JSP environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-encoding-taglib.
+ *
+ * ao-encoding-taglib is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-encoding-taglib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-encoding-taglib.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.aoapps.encoding.taglib;
+
+import com.aoapps.encoding.MediaType;
+import java.io.IOException;
+import java.io.Writer;
+import javax.servlet.jsp.JspException;
+import javax.servlet.jsp.JspWriter;
+
+/**
+ * <p>
+ * Writes an encoder prefix, optionally deferred until the first character is written.
+ * When deferred and nothing is written, neither the prefix nor, by checking
+ * {@link #isPrefixWritten()}, the suffix is written, so an empty tag produces
+ * no output.
+ * </p>
+ * <p>
+ * Deferral is only for prefixes that {@linkplain #isWrapper(com.aoapps.encoding.MediaType, com.aoapps.encoding.MediaType) wrap}
+ * the output.  Prefixes that delimit a value, such as the quotes of text in JavaScript,
+ * are written immediately, so empty output is still a valid, empty value.
+ * </p>
+ * <p>
+ * A deferred prefix is written directly to the container on the first write, so
+ * an empty tag does no work for its prefix.  Any {@link JspException} from the
+ * prefix is thrown from that write as the cause of an {@link IOException}.
+ * Flushing does not trigger the prefix.
+ * </p>
+ *
+ * @author  AO Industries, Inc.
+ */
+// Java 9: Make module-private
+public final class DeferredPrefixWriter extends Writer {
+
+	/**
+	 * <p>
+	 * Checks if the encoder prefix and suffix for the given types wrap the output in an element,
+	 * rather than delimit a value.  This is JavaScript, JSON, and JSON-LD in XHTML, which are
+	 * written in a <code>&lt;script&gt;</code> element.
+	 * </p>
+	 * <p>
+	 * Each of the encoding tags defers its encoder prefix when this is {@code true}.
+	 * Deferring the prefix until the first character of output, so that a tag with no output
+	 * writes neither the encoder prefix nor suffix, is only appropriate when the prefix and suffix
+	 * wrap the output, such as the script element and CDATA section of JavaScript in XHTML.  It
+	 * must not be used when the prefix and suffix delimit a value, such as the quotes of text in
+	 * JavaScript, where empty output must still be written as <code>""</code>.
+	 * </p>
+	 */
+	// Java 9: Make module-private
+	public static boolean isWrapper(MediaType outputType, MediaType containerType) {
+		return
+			containerType == MediaType.XHTML
+			&& (
+				outputType == MediaType.JAVASCRIPT
+				|| outputType == MediaType.JSON
+				|| outputType == MediaType.LD_JSON
+			);
+	}
+
+	/**
+	 * Writes the prefix.
+	 */
+	@FunctionalInterface
+	// Java 9: Make module-private
+	public static interface Prefix {
+		void writeTo(JspWriter out) throws JspException, IOException;
+	}
+
+	private final JspWriter out;
+
+	/**
+	 * The deferred prefix, {@code null} once written.
+	 */
+	private Prefix prefix;
+
+	/**
+	 * @param  deferred  when {@code false}, the prefix is written immediately
+	 */
+	// Java 9: Make module-private
+	public DeferredPrefixWriter(JspWriter out, boolean deferred, Prefix prefix) throws JspException, IOException {
+		this.out = out;
+		if(deferred) {
+			this.prefix = prefix;
+		} else {
+			prefix.writeTo(out);
+			this.prefix = null;
+		}
+	}
+
+	/**
+	 * Checks if the prefix has been written, in which case the matching suffix
+	 * must also be written.
+	 */
+	// Java 9: Make module-private
+	public boolean isPrefixWritten() {
+		return prefix == null;
+	}
+
+	private void writePrefix() throws IOException {
+		Prefix p = prefix;
+		if(p != null) {
+			prefix = null;
+			try {
+				p.writeTo(out);
+			} catch(JspException e) {
+				throw new IOException(e);
+			}
+		}
+	}
+
+	@Override
+	public void write(int c) throws IOException {
+		writePrefix();
+		out.write(c);
+	}
+
+	@Override
+	public void write(char[] cbuf) throws IOException {
+		if(cbuf.length > 0) {
+			writePrefix();
+			out.write(cbuf);
+		}
+	}
+
+	@Override
+	public void write(char[] cbuf, int off, int len) throws IOException {
+		if(len > 0) {
+			writePrefix();
+			out.write(cbuf, off, len);
+		}
+	}
+
+	@Override
+	public void write(String str) throws IOException {
+		if(!str.isEmpty()) {
+			writePrefix();
+			out.write(str);
+		}
+	}
+
+	@Override
+	public void write(String str, int off, int len) throws IOException {
+		if(len > 0) {
+			writePrefix();
+			out.write(str, off, len);
+		}
+	}
+
+	@Override
+	public DeferredPrefixWriter append(CharSequence csq) throws IOException {
+		if(csq == null) csq = "null";
+		if(csq.length() > 0) {
+			writePrefix();
+			out.append(csq);
+		}
+		return this;
+	}
+
+	@Override
+	public DeferredPrefixWriter append(CharSequence csq, int start, int end) throws IOException {
+		if(csq == null) csq = "null";
+		if(end > start) {
+			writePrefix();
+			out.append(csq, start, end);
+		}
+		return this;
+	}
+
+	@Override
+	public DeferredPrefixWriter append(char c) throws IOException {
+		writePrefix();
+		out.append(c);
+		return this;
+	}
+
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		out.close();
+	}
+}
@@ -0,0 +1,329 @@
+/*
+ * ao-encoding-taglib - High performance streaming character encoding in a JSP environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-encoding-taglib.
+ *
+ * ao-encoding-taglib is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-encoding-taglib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-encoding-taglib.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.aoapps.encoding.taglib;
+
+import com.aoapps.io.buffer.BufferResult;
+import com.aoapps.io.buffer.EmptyResult;
+import com.aoapps.lang.Strings;
+import com.aoapps.lang.io.Encoder;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * The result of a {@link DeflatedTempFileWriter} that has spilled to a temp file,
+ * a range of its characters.  Each write-out inflates only the blocks covering
+ * the range.
+ * <p>
+ * Blocks are encoded as UTF-8, except unpaired surrogates are encoded as their
+ * own three-byte sequences, so any sequence of characters round-trips exactly.
+ * </p>
+ * <p>
+ * The temp file is deleted or recycled at the end of the request,
+ * so the result is only valid for the request.
+ * </p>
+ *
+ * @author  AO Industries, Inc.
+ */
+final class DeflatedTempFileResult implements BufferResult {
+
+	/**
+	 * The number of characters in each block, except the last.
+	 */
+	static final int BLOCK_CHARS = 64 * 1024;
+
+	/**
+	 * The maximum number of encoded bytes per character.
+	 */
+	static final int MAX_BYTES_PER_CHAR = 3;
+
+	/**
+	 * Encodes the given characters.
+	 *
+	 * @param  bytes  must have room for {@link #MAX_BYTES_PER_CHAR} per character
+	 *
+	 * @return  the number of bytes encoded
+	 */
+	static int encode(char[] chars, int len, byte[] bytes) {
+		int pos = 0;
+		for(int i = 0; i < len; i++) {
+			char c = chars[i];
+			if(c < 0x80) {
+				bytes[pos++] = (byte)c;
+			} else if(c < 0x800) {
+				bytes[pos++] = (byte)(0xC0 | (c >> 6));
+				bytes[pos++] = (byte)(0x80 | (c & 0x3F));
+			} else if(Character.isHighSurrogate(c) && (i + 1) < len && Character.isLowSurrogate(chars[i + 1])) {
+				int cp = Character.toCodePoint(c, chars[++i]);
+				bytes[pos++] = (byte)(0xF0 | (cp >> 18));
+				bytes[pos++] = (byte)(0x80 | ((cp >> 12) & 0x3F));
+				bytes[pos++] = (byte)(0x80 | ((cp >> 6) & 0x3F));
+				bytes[pos++] = (byte)(0x80 | (cp & 0x3F));
+			} else {
+				bytes[pos++] = (byte)(0xE0 | (c >> 12));
+				bytes[pos++] = (byte)(0x80 | ((c >> 6) & 0x3F));
+				bytes[pos++] = (byte)(0x80 | (c & 0x3F));
+			}
+		}
+		return pos;
+	}
+
+	/**
+	 * Decodes the given bytes.
+	 *
+	 * @return  the number of characters decoded
+	 */
+	static int decode(byte[] bytes, int len, char[] chars) {
+		int count = 0;
+		int pos = 0;
+		while(pos < len) {
+			int b = bytes[pos++] & 0xFF;
+			if(b < 0x80) {
+				chars[count++] = (char)b;
+			} else if(b < 0xE0) {
+				chars[count++] = (char)(((b & 0x1F) << 6) | (bytes[pos++] & 0x3F));
+			} else if(b < 0xF0) {
+				chars[count++] = (char)(
+					((b & 0x0F) << 12)
+					| ((bytes[pos++] & 0x3F) << 6)
+					| (bytes[pos++] & 0x3F)
+				);
+			} else {
+				int cp = ((b & 0x07) << 18)
+					| ((bytes[pos++] & 0x3F) << 12)
+					| ((bytes[pos++] & 0x3F) << 6)
+					| (bytes[pos++] & 0x3F);
+				chars[count++] = Character.highSurrogate(cp);
+				chars[count++] = Character.lowSurrogate(cp);
+			}
+		}
+		return count;
+	}
+
+	private final Path tempFile;
+	private final long[] blockOffsets;
+	private final int[] blockBytes;
+	private final long start;
+	private final long end;
+
+	DeflatedTempFileResult(Path tempFile, long[] blockOffsets, int[] blockBytes, long start, long end) {
+		assert start < end;
+		this.tempFile = tempFile;
+		this.blockOffsets = blockOffsets;
+		this.blockBytes = blockBytes;
+		this.start = start;
+		this.end = end;
+	}
+
+	/**
+	 * Reads and inflates blocks, reusing its buffers.
+	 */
+	private class BlockReader implements Closeable {
+
+		private final FileChannel channel;
+		private final Inflater inflater = new Inflater(true);
+		private byte[] compressed = new byte[0];
+		private final byte[] encoded = new byte[BLOCK_CHARS * MAX_BYTES_PER_CHAR];
+		private final char[] chars = new char[BLOCK_CHARS];
+
+		private BlockReader() throws IOException {
+			channel = FileChannel.open(tempFile, StandardOpenOption.READ);
+		}
+
+		/**
+		 * Reads the given block into {@link #chars}.
+		 *
+		 * @return  the number of characters in the block
+		 */
+		private int read(int blockIndex) throws IOException {
+			long position = blockOffsets[blockIndex];
+			int size = (int)(blockOffsets[blockIndex + 1] - position);
+			if(compressed.length < size) compressed = new byte[size];
+			ByteBuffer bb = ByteBuffer.wrap(compressed, 0, size);
+			while(bb.hasRemaining()) {
+				if(channel.read(bb, position + bb.position()) == -1) throw new EOFException();
+			}
+			int expected = blockBytes[blockIndex];
+			inflater.reset();
+			inflater.setInput(compressed, 0, size);
+			try {
+				int inflated = 0;
+				while(inflated < expected) {
+					int count = inflater.inflate(encoded, inflated, expected - inflated);
+					if(count == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) break;
+					inflated += count;
+				}
+				if(inflated != expected) throw new IOException("Truncated block " + blockIndex + " in " + tempFile);
+			} catch(DataFormatException e) {
+				throw new IOException(e);
+			}
+			return decode(encoded, expected, chars);
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				channel.close();
+			} finally {
+				inflater.end();
+			}
+		}
+	}
+
+	@Override
+	public long getLength() {
+		return end - start;
+	}
+
+	@Override
+	public boolean isFastToString() {
+		return false;
+	}
+
+	@Override
+	public String toString() {
+		long length = end - start;
+		if(length > Integer.MAX_VALUE) throw new IllegalStateException("Too large for String: " + length);
+		StringBuilder sb = new StringBuilder((int)length);
+		try (BlockReader reader = new BlockReader()) {
+			for(long pos = start; pos < end; ) {
+				int blockIndex = (int)(pos / BLOCK_CHARS);
+				long blockStart = (long)blockIndex * BLOCK_CHARS;
+				int count = reader.read(blockIndex);
+				int from = (int)(pos - blockStart);
+				int to = (int)Math.min(count, end - blockStart);
+				sb.append(reader.chars, from, to - from);
+				pos = blockStart + to;
+			}
+		} catch(IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return sb.toString();
+	}
+
+	private void writeRange(Encoder encoder, Writer out, long off, long len) throws IOException {
+		if(off < 0 || len < 0 || off + len > (end - start)) throw new IndexOutOfBoundsException();
+		if(len > 0) {
+			try (BlockReader reader = new BlockReader()) {
+				long rangeEnd = start + off + len;
+				for(long pos = start + off; pos < rangeEnd; ) {
+					int blockIndex = (int)(pos / BLOCK_CHARS);
+					long blockStart = (long)blockIndex * BLOCK_CHARS;
+					int count = reader.read(blockIndex);
+					int from = (int)(pos - blockStart);
+					int to = (int)Math.min(count, rangeEnd - blockStart);
+					if(encoder == null) {
+						out.write(reader.chars, from, to - from);
+					} else {
+						encoder.write(reader.chars, from, to - from, out);
+					}
+					pos = blockStart + to;
+				}
+			}
+		}
+	}
+
+	@Override
+	public void writeTo(Writer out) throws IOException {
+		writeRange(null, out, 0, end - start);
+	}
+
+	@Override
+	public void writeTo(Writer out, long off, long len) throws IOException {
+		writeRange(null, out, off, len);
+	}
+
+	@Override
+	public void writeTo(Encoder encoder, Writer out) throws IOException {
+		writeRange(encoder, out, 0, end - start);
+	}
+
+	@Override
+	public void writeTo(Encoder encoder, Writer out, long off, long len) throws IOException {
+		writeRange(encoder, out, off, len);
+	}
+
+	private BufferResult range(long newStart, long newEnd) {
+		if(newStart == start && newEnd == end) return this;
+		if(newStart == newEnd) return EmptyResult.getInstance();
+		return new DeflatedTempFileResult(tempFile, blockOffsets, blockBytes, newStart, newEnd);
+	}
+
+	private static long skipWhitespaceForward(BlockReader reader, long from, long to) throws IOException {
+		for(long pos = from; pos < to; ) {
+			int blockIndex = (int)(pos / BLOCK_CHARS);
+			long blockStart = (long)blockIndex * BLOCK_CHARS;
+			int count = reader.read(blockIndex);
+			int blockEnd = (int)Math.min(count, to - blockStart);
+			for(int i = (int)(pos - blockStart); i < blockEnd; i++) {
+				if(!Strings.isWhitespace(reader.chars[i])) return blockStart + i;
+			}
+			pos = blockStart + blockEnd;
+		}
+		return to;
+	}
+
+	private static long skipWhitespaceBackward(BlockReader reader, long from, long to) throws IOException {
+		for(long pos = to; pos > from; ) {
+			int blockIndex = (int)((pos - 1) / BLOCK_CHARS);
+			long blockStart = (long)blockIndex * BLOCK_CHARS;
+			reader.read(blockIndex);
+			int blockFrom = (int)Math.max(0, from - blockStart);
+			for(int i = (int)(pos - blockStart) - 1; i >= blockFrom; i--) {
+				if(!Strings.isWhitespace(reader.chars[i])) return blockStart + i + 1;
+			}
+			pos = blockStart + blockFrom;
+		}
+		return from;
+	}
+
+	@Override
+	public BufferResult trimStart() throws IOException {
+		try (BlockReader reader = new BlockReader()) {
+			return range(skipWhitespaceForward(reader, start, end), end);
+		}
+	}
+
+	@Override
+	public BufferResult trimEnd() throws IOException {
+		try (BlockReader reader = new BlockReader()) {
+			return range(start, skipWhitespaceBackward(reader, start, end));
+		}
+	}
+
+	@Override
+	public BufferResult trim() throws IOException {
+		try (BlockReader reader = new BlockReader()) {
+			long newStart = skipWhitespaceForward(reader, start, end);
+			return range(newStart, skipWhitespaceBackward(reader, newStart, end));
+		}
+	}
+}
@@ -0,0 +1,204 @@
+/*
+ * ao-encoding-taglib - High performance streaming character encoding in a JSP environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-encoding-taglib.
+ *
+ * ao-encoding-taglib is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-encoding-taglib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-encoding-taglib.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.aoapps.encoding.taglib;
+
+import com.aoapps.io.buffer.BufferResult;
+import com.aoapps.io.buffer.BufferWriter;
+import com.aoapps.tempfiles.TempFileContext;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+/**
+ * <p>
+ * Buffers in an initial {@link BufferWriter} until the threshold is reached,
+ * then spills to a temp file of independently deflated blocks of
+ * {@link DeflatedTempFileResult#BLOCK_CHARS} characters each, encoded as UTF-8.
+ * Repetitive content, such as JSON or SQL, takes a fraction of the disk bandwidth
+ * of {@link MappedTempFileWriter} at the cost of compressing on write and
+ * inflating on each write-out.
+ * </p>
+ * <p>
+ * The index of blocks is kept in memory, so a range of the
+ * {@linkplain #getResult() result} only inflates the blocks it covers.
+ * </p>
+ * <p>
+ * Used for captures of tags that request compressed temp files.
+ * </p>
+ * <p>
+ * This class is not thread safe.
+ * </p>
+ *
+ * @author  AO Industries, Inc.
+ *
+ * @see  EncodingBufferedTag#isCompressTempFile()
+ */
+// Java 9: Make module-private
+public final class DeflatedTempFileWriter extends SpillingTempFileWriter {
+
+	/**
+	 * The number of compressed bytes written to the channel at a time.
+	 */
+	private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+	private FileChannel channel;
+	private Deflater deflater;
+	private char[] block;
+	private int blockLength;
+	private byte[] encoded;
+	private byte[] compressed;
+
+	/**
+	 * The starting position in the file of each block, followed by the end of the last block.
+	 */
+	private long[] blockOffsets;
+
+	/**
+	 * The number of encoded bytes in each block.
+	 */
+	private int[] blockBytes;
+
+	private int blockCount;
+
+	// Java 9: Make module-private
+	public DeflatedTempFileWriter(BufferWriter initialBuffer, TempFileContext tempFileContext, long tempFileThreshold) {
+		this(initialBuffer, SpillFiles.of(tempFileContext), tempFileThreshold, null);
+	}
+
+	/**
+	 * @param  reservations  the {@link CaptureBudget} reservations of the request,
+	 *                       or {@code null} to not participate in the budget
+	 *
+	 * @see  CaptureBudget#getRequestReservations(javax.servlet.ServletRequest)
+	 */
+	DeflatedTempFileWriter(BufferWriter initialBuffer, SpillFiles spillFiles, long tempFileThreshold, CaptureBudget.Reservations reservations) {
+		super(initialBuffer, spillFiles, tempFileThreshold, reservations);
+	}
+
+	@Override
+	String getTempFilePrefix() {
+		return "DeflatedTempFileWriter_";
+	}
+
+	@Override
+	void openSpill(Path tempFile) throws IOException {
+		channel = FileChannel.open(
+			tempFile,
+			StandardOpenOption.WRITE,
+			StandardOpenOption.TRUNCATE_EXISTING
+		);
+		// Favor throughput: disk bandwidth is the constraint, and repetitive content compresses well even at the fastest level
+		deflater = new Deflater(Deflater.BEST_SPEED, true);
+		block = new char[DeflatedTempFileResult.BLOCK_CHARS];
+		encoded = new byte[DeflatedTempFileResult.BLOCK_CHARS * DeflatedTempFileResult.MAX_BYTES_PER_CHAR];
+		compressed = new byte[WRITE_BUFFER_SIZE];
+		blockOffsets = new long[16];
+		blockBytes = new int[16];
+	}
+
+	/**
+	 * Encodes, deflates, and writes the current block.
+	 */
+	private void writeBlock() throws IOException {
+		if(blockLength > 0) {
+			int encodedLength = DeflatedTempFileResult.encode(block, blockLength, encoded);
+			if(blockCount + 1 >= blockOffsets.length) {
+				blockOffsets = Arrays.copyOf(blockOffsets, blockOffsets.length << 1);
+				blockBytes = Arrays.copyOf(blockBytes, blockBytes.length << 1);
+			}
+			long position = blockOffsets[blockCount];
+			deflater.reset();
+			deflater.setInput(encoded, 0, encodedLength);
+			deflater.finish();
+			while(!deflater.finished()) {
+				int count = deflater.deflate(compressed);
+				ByteBuffer bb = ByteBuffer.wrap(compressed, 0, count);
+				while(bb.hasRemaining()) position += channel.write(bb);
+			}
+			blockBytes[blockCount] = encodedLength;
+			blockOffsets[++blockCount] = position;
+			blockLength = 0;
+		}
+	}
+
+	@Override
+	void spilledWrite(char c) throws IOException {
+		if(blockLength == block.length) writeBlock();
+		block[blockLength++] = c;
+	}
+
+	@Override
+	void spilledWrite(char[] cbuf, int off, int len) throws IOException {
+		while(len > 0) {
+			if(blockLength == block.length) writeBlock();
+			int count = Math.min(block.length - blockLength, len);
+			System.arraycopy(cbuf, off, block, blockLength, count);
+			blockLength += count;
+			off += count;
+			len -= count;
+		}
+	}
+
+	@Override
+	void spilledWrite(String str, int off, int len) throws IOException {
+		int end = off + len;
+		while(off < end) {
+			if(blockLength == block.length) writeBlock();
+			int count = Math.min(block.length - blockLength, end - off);
+			str.getChars(off, off + count, block, blockLength);
+			blockLength += count;
+			off += count;
+		}
+	}
+
+	@Override
+	void closeSpill() throws IOException {
+		try {
+			writeBlock();
+		} finally {
+			try {
+				channel.close();
+			} finally {
+				deflater.end();
+			}
+		}
+		deflater = null;
+		block = null;
+		encoded = null;
+		compressed = null;
+	}
+
+	@Override
+	long getTempFileBytes() {
+		return blockOffsets[blockCount];
+	}
+
+	@Override
+	BufferResult newSpilledResult(Path tempFile, long length) {
+		return new DeflatedTempFileResult(tempFile, blockOffsets, blockBytes, 0, length);
+	}
+}
@@ -0,0 +1,118 @@
+/*
+ * ao-encoding-taglib - High performance streaming character encoding in a JSP environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-encoding-taglib.
+ *
+ * ao-encoding-taglib is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-encoding-taglib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-encoding-taglib.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.aoapps.encoding.taglib;
+
+import com.aoapps.encoding.EncodingContext;
+import com.aoapps.encoding.MediaEncoder;
+import com.aoapps.encoding.MediaType;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+
+/**
+ * <p>
+ * Looks up encoders with {@link MediaEncoder#getInstance(com.aoapps.encoding.EncodingContext, com.aoapps.encoding.MediaType, com.aoapps.encoding.MediaType)},
+ * while remembering, in a dense table indexed by (output type, container type),
+ * the result for each pair.  Once a pair is resolved, the lookup is a single
+ * array access and the tag goes directly to either its encoder, pass-through,
+ * or validation.
+ * </p>
+ * <p>
+ * Pairs that require no encoder are remembered when first resolved.  An encoder is
+ * remembered only once {@link MediaEncoder#getInstance(com.aoapps.encoding.EncodingContext, com.aoapps.encoding.MediaType, com.aoapps.encoding.MediaType)}
+ * has returned the same instance for two different {@link EncodingContext}, since such
+ * an encoder is stateless and already shared by every caller.  Encoders bound to the
+ * {@link EncodingContext} of the request are created every time.
+ * </p>
+ * <p>
+ * The table is filled lazily without locking.  Concurrent resolution of the
+ * same pair is harmless, as the result is the same.
+ * </p>
+ *
+ * @author  AO Industries, Inc.
+ */
+// Java 9: Make module-private
+public final class EncoderLookup {
+
+	/**
+	 * Make no instances.
+	 */
+	private EncoderLookup() {
+	}
+
+	private static final int NUM_MEDIA_TYPES = MediaType.values().length;
+
+	/**
+	 * Marks a pair that requires no encoder.
+	 */
+	private static final Object NO_ENCODER = new Object();
+
+	/**
+	 * Marks a pair with an encoder bound to its {@link EncodingContext}.
+	 */
+	private static final Object CONTEXT_BOUND = new Object();
+
+	/**
+	 * The first encoder resolved for a pair, until resolved again for a different context.
+	 */
+	private static final class Candidate {
+
+		private final WeakReference<EncodingContext> encodingContext;
+		private final MediaEncoder mediaEncoder;
+
+		private Candidate(EncodingContext encodingContext, MediaEncoder mediaEncoder) {
+			this.encodingContext = new WeakReference<>(encodingContext);
+			this.mediaEncoder = mediaEncoder;
+		}
+	}
+
+	/**
+	 * Indexed by [contentType.ordinal()][containerType.ordinal()], {@code null} until first resolved.
+	 * Contains {@link #NO_ENCODER}, {@link #CONTEXT_BOUND}, a {@link Candidate}, or the shared {@link MediaEncoder}.
+	 */
+	private static final Object[][] resolved = new Object[NUM_MEDIA_TYPES][NUM_MEDIA_TYPES];
+
+	/**
+	 * Gets the encoder for the given types or {@code null} when no encoding is required.
+	 *
+	 * @see  MediaEncoder#getInstance(com.aoapps.encoding.EncodingContext, com.aoapps.encoding.MediaType, com.aoapps.encoding.MediaType)
+	 */
+	// Java 9: Make module-private
+	public static MediaEncoder getInstance(EncodingContext encodingContext, MediaType contentType, MediaType containerType) throws IOException {
+		Object[] row = resolved[contentType.ordinal()];
+		int column = containerType.ordinal();
+		Object r = row[column];
+		if(r == NO_ENCODER) return null;
+		if(r instanceof MediaEncoder) return (MediaEncoder)r;
+		MediaEncoder mediaEncoder = MediaEncoder.getInstance(encodingContext, contentType, containerType);
+		if(r == null) {
+			row[column] = (mediaEncoder == null) ? NO_ENCODER : new Candidate(encodingContext, mediaEncoder);
+		} else if(r instanceof Candidate) {
+			Candidate candidate = (Candidate)r;
+			if(candidate.encodingContext.get() != encodingContext) {
+				// Shared when the same instance is returned for a different context
+				row[column] = (mediaEncoder == candidate.mediaEncoder) ? mediaEncoder : CONTEXT_BOUND;
+			}
+		}
+		return mediaEncoder;
+	}
+}
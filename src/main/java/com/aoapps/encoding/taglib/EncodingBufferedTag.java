@@ -1,6 +1,6 @@
 /*
  * ao-encoding-taglib - High performance streaming character encoding in a JSP environment.
- * Copyright (C) 2009, 2010, 2011, 2012, 2013, 2016, 2017, 2019, 2020, 2021  AO Industries, Inc.
+ * Copyright (C) 2009, 2010, 2011, 2012, 2013, 2016, 2017, 2019, 2020, 2021, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -27,7 +27,6 @@ import com.aoapps.encoding.MediaEncoder;
 import com.aoapps.encoding.MediaType;
 import com.aoapps.encoding.MediaValidator;
 import com.aoapps.encoding.MediaWriter;
-import com.aoapps.encoding.servlet.EncodingContextEE;
 import com.aoapps.io.buffer.AutoTempFileWriter;
 import com.aoapps.io.buffer.BufferResult;
 import com.aoapps.io.buffer.BufferWriter;
@@ -37,8 +36,10 @@ import com.aoapps.tempfiles.TempFileContext;
 import com.aoapps.tempfiles.servlet.TempFileContextEE;
 import java.io.IOException;
 import java.io.Writer;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import javax.servlet.ServletContext;
 import javax.servlet.ServletRequest;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -73,16 +74,15 @@ public abstract class EncodingBufferedTag extends SimpleTagSupport {
 	private static final Logger logger = Logger.getLogger(EncodingBufferedTag.class.getName());
 
 	/**
-	 * Creates an instance of the currently preferred {@link BufferWriter}.
-	 * Buffering strategies may change over time as technology develops and
-	 * options become available.
-	 *
-	 * @see  TempFileContext
-	 * @see  AutoTempFileWriter
+	 * The maximum number of characters passed to {@link #doStreamingBody(char[], int, int, java.io.Writer)} per call.
 	 */
-	public static BufferWriter newBufferWriter(TempFileContext tempFileContext, long tempFileThreshold) {
-		//return new SegmentedWriter();
-		BufferWriter bufferWriter = new CharArrayBufferWriter();
+	static final int STREAMING_CHUNK_SIZE = 4 * 1024;
+
+	/**
+	 * Wraps the initial buffer to switch to a temp file at the given threshold,
+	 * unless the threshold is {@link Long#MAX_VALUE}.
+	 */
+	private static BufferWriter autoTempFile(BufferWriter bufferWriter, TempFileContext tempFileContext, long tempFileThreshold) {
 		if(tempFileThreshold != Long.MAX_VALUE) {
 			bufferWriter = new AutoTempFileWriter(
 				bufferWriter,
@@ -93,6 +93,18 @@ public abstract class EncodingBufferedTag extends SimpleTagSupport {
 		return bufferWriter;
 	}
 
+	/**
+	 * Creates an instance of the currently preferred {@link BufferWriter}.
+	 * Buffering strategies may change over time as technology develops and
+	 * options become available.
+	 *
+	 * @see  TempFileContext
+	 * @see  AutoTempFileWriter
+	 */
+	public static BufferWriter newBufferWriter(TempFileContext tempFileContext, long tempFileThreshold) {
+		return autoTempFile(new CharArrayBufferWriter(), tempFileContext, tempFileThreshold);
+	}
+
 	/**
 	 * @see  #newBufferWriter(com.aoapps.tempfiles.TempFileContext, long)
 	 * @see  AutoTempFileWriter#DEFAULT_TEMP_FILE_THRESHOLD
@@ -102,11 +114,92 @@ public abstract class EncodingBufferedTag extends SimpleTagSupport {
 	}
 
 	/**
+	 * Creates an instance of the currently preferred {@link BufferWriter} for the given request.
+	 * When the application's {@link CharChunkPool} is enabled, which it is not by default,
+	 * captures into pooled chunks that are returned to the pool when the request is destroyed,
+	 * and the result must not be used after the request has completed.  When enabled, captures one byte per character
+	 * in a {@link Latin1CaptureWriter} until a wider character is written, after which the
+	 * capture continues in pooled chunks when the pool is enabled.  Once the threshold
+	 * is reached, or the application's {@link CaptureBudget} is exhausted, spills to a
+	 * {@link MappedTempFileWriter} when either it or the budget is enabled.  While the heap is under
+	 * {@linkplain HeapPressure pressure}, when monitored by the application, the threshold is reduced.
+	 *
+	 * @param  compressTempFile  spills to a {@link DeflatedTempFileWriter} instead
+	 *
 	 * @see  #newBufferWriter(com.aoapps.tempfiles.TempFileContext, long)
 	 * @see  TempFileContextEE#get(javax.servlet.ServletRequest)
+	 * @see  CharChunkPool
+	 * @see  HeapPressure
+	 */
+	public static BufferWriter newBufferWriter(ServletRequest request, long tempFileThreshold, boolean compressTempFile) {
+		return wrapCaptureBuffer(request, newCaptureBuffer(request, false), tempFileThreshold, compressTempFile);
+	}
+
+	/**
+	 * Creates the in-heap buffer a capture starts in.
+	 *
+	 * @param  resettable  when {@code true}, the buffer is a {@link ReusableCaptureWriter.Resettable}
+	 *                     whenever possible, allocating its own chunks when the {@link CharChunkPool}
+	 *                     is not enabled
+	 *
+	 * @see  #newBufferWriter(javax.servlet.ServletRequest, long, boolean)
+	 */
+	static BufferWriter newCaptureBuffer(ServletRequest request, boolean resettable) {
+		CharChunkPool pool = CharChunkPool.getInstance(request.getServletContext());
+		Supplier<BufferWriter> wideBuffers;
+		if(pool.isEnabled()) {
+			wideBuffers = () -> new PooledSegmentedWriter(pool, CharChunkPool.getRequestChunks(request));
+		} else if(resettable) {
+			int chunkSize = pool.getChunkSize();
+			wideBuffers = () -> new PooledSegmentedWriter(chunkSize);
+		} else {
+			wideBuffers = CharArrayBufferWriter::new;
+		}
+		return Latin1CaptureWriter.isEnabled(request.getServletContext())
+			? new Latin1CaptureWriter(wideBuffers)
+			: wideBuffers.get();
+	}
+
+	/**
+	 * Wraps the in-heap buffer of a capture to spill to a temp file once the
+	 * threshold is reached.
+	 *
+	 * @see  #newBufferWriter(javax.servlet.ServletRequest, long, boolean)
+	 */
+	static BufferWriter wrapCaptureBuffer(ServletRequest request, BufferWriter captureBuffer, long tempFileThreshold, boolean compressTempFile) {
+		ServletContext servletContext = request.getServletContext();
+		tempFileThreshold = HeapPressure.getInstance(servletContext).adjustThreshold(tempFileThreshold);
+		if(tempFileThreshold != Long.MAX_VALUE) {
+			CaptureBudget captureBudget = CaptureBudget.getInstance(servletContext);
+			CaptureBudget.Reservations reservations = captureBudget.isEnabled() ? captureBudget.getRequestReservations(request) : null;
+			if(compressTempFile) {
+				return new DeflatedTempFileWriter(
+					captureBuffer,
+					SpillingTempFileWriter.SpillFiles.of(TempFileContextEE.get(request)),
+					tempFileThreshold,
+					reservations
+				);
+			}
+			// Also when budgeted, since AutoTempFileWriter only spills at its threshold
+			if(reservations != null || MappedTempFileWriter.isEnabled(servletContext)) {
+				return new MappedTempFileWriter(
+					captureBuffer,
+					SpillingTempFileWriter.SpillFiles.of(TempFileContextEE.get(request)),
+					tempFileThreshold,
+					reservations
+				);
+			}
+			return autoTempFile(captureBuffer, TempFileContextEE.get(request), tempFileThreshold);
+		}
+		// Never spills, so does not need a temp file context
+		return captureBuffer;
+	}
+
+	/**
+	 * @see  #newBufferWriter(javax.servlet.ServletRequest, long, boolean)
 	 */
 	public static BufferWriter newBufferWriter(ServletRequest request, long tempFileThreshold) {
-		return newBufferWriter(TempFileContextEE.get(request), tempFileThreshold);
+		return newBufferWriter(request, tempFileThreshold, false);
 	}
 
 	/**
@@ -133,12 +226,150 @@ public abstract class EncodingBufferedTag extends SimpleTagSupport {
 	 * Gets the number of characters that may be buffered before switching to the
 	 * use of a temp file.
 	 *
+	 * <p>
+	 * When enabled, this is selected from the capture sizes observed for the concrete tag class.
+	 * </p>
+	 *
 	 * @return the threshold or {@link Long#MAX_VALUE} to never use temp files.
 	 *
 	 * @see  AutoTempFileWriter#DEFAULT_TEMP_FILE_THRESHOLD
+	 * @see  AdaptiveTempFileThreshold
 	 */
 	public long getTempFileThreshold() {
-		return AutoTempFileWriter.DEFAULT_TEMP_FILE_THRESHOLD;
+		return AdaptiveTempFileThreshold.getTempFileThreshold(((PageContext)getJspContext()).getServletContext(), getClass());
+	}
+
+	/**
+	 * Checks if captures that spill to a temp file are stored compressed.  Compression
+	 * trades processor time for disk bandwidth and is best for large, repetitive content.
+	 *
+	 * @return  {@code false} by default
+	 *
+	 * @see  DeflatedTempFileWriter
+	 */
+	public boolean isCompressTempFile() {
+		return false;
+	}
+
+	/**
+	 * <p>
+	 * Checks if this tag consumes its body as a stream.  When streaming, the body
+	 * is not captured: it is validated and passed to
+	 * {@link #doStreamingBody(char[], int, int, java.io.Writer)} as it is written,
+	 * followed by {@link #doStreamingEnd(java.io.Writer)}.  The memory used does not
+	 * grow with the size of the body, and output reaches the client sooner.
+	 * </p>
+	 * <p>
+	 * Since the body has not yet been invoked, the {@linkplain #getOutputType() output type}
+	 * is determined before the body and cannot be altered by nested tags.
+	 * {@link #doTag(com.aoapps.io.buffer.BufferResult, java.io.Writer)} is not called
+	 * when there is a body to stream.
+	 * </p>
+	 *
+	 * @return  {@code false} by default
+	 */
+	protected boolean isStreaming() {
+		return false;
+	}
+
+	/**
+	 * Receives the next validated characters of the body when {@linkplain #isStreaming() streaming}.
+	 * The array may be reused, so the characters must not be retained after returning.
+	 * <p>
+	 * This default implementation writes the characters unmodified.
+	 * </p>
+	 *
+	 * @param  out  the output.  If passed-through, this will be a {@link JspWriter}
+	 */
+	protected void doStreamingBody(char[] cbuf, int off, int len, Writer out) throws JspException, IOException {
+		out.write(cbuf, off, len);
+	}
+
+	/**
+	 * Called once the body has been completely streamed.
+	 * <p>
+	 * This default implementation does nothing.
+	 * </p>
+	 *
+	 * @param  out  the output.  If passed-through, this will be a {@link JspWriter}
+	 *
+	 * @see  #isStreaming()
+	 */
+	@SuppressWarnings("NoopMethodInAbstractClass")
+	protected void doStreamingEnd(Writer out) throws JspException, IOException {
+		// Do nothing by default
+	}
+
+	/**
+	 * Passes the validated body to {@link #doStreamingBody(char[], int, int, java.io.Writer)}
+	 * in chunks of at most {@link #STREAMING_CHUNK_SIZE} characters.
+	 */
+	private class StreamingBodyWriter extends Writer {
+
+		private final Writer out;
+
+		/**
+		 * The chunk used for strings and single characters, created on first use.
+		 */
+		private char[] chunk;
+
+		private StreamingBodyWriter(Writer out) {
+			this.out = out;
+		}
+
+		private void doStreamingBody(char[] cbuf, int off, int len) throws IOException {
+			try {
+				EncodingBufferedTag.this.doStreamingBody(cbuf, off, len, out);
+			} catch(JspException e) {
+				throw new IOException(e);
+			}
+		}
+
+		private char[] getChunk() {
+			if(chunk == null) chunk = new char[STREAMING_CHUNK_SIZE];
+			return chunk;
+		}
+
+		@Override
+		public void write(int c) throws IOException {
+			char[] cbuf = getChunk();
+			cbuf[0] = (char)c;
+			doStreamingBody(cbuf, 0, 1);
+		}
+
+		@Override
+		public void write(char[] cbuf, int off, int len) throws IOException {
+			if(off < 0 || len < 0 || off + len > cbuf.length) throw new IndexOutOfBoundsException();
+			while(len > 0) {
+				int count = Math.min(len, STREAMING_CHUNK_SIZE);
+				doStreamingBody(cbuf, off, count);
+				off += count;
+				len -= count;
+			}
+		}
+
+		@Override
+		public void write(String str, int off, int len) throws IOException {
+			if(off < 0 || len < 0 || off + len > str.length()) throw new IndexOutOfBoundsException();
+			char[] cbuf = getChunk();
+			while(len > 0) {
+				int count = Math.min(len, STREAMING_CHUNK_SIZE);
+				str.getChars(off, off + count, cbuf, 0);
+				doStreamingBody(cbuf, 0, count);
+				off += count;
+				len -= count;
+			}
+		}
+
+		@Override
+		public void flush() {
+			// Chunks are passed on as written
+		}
+
+		@Override
+		public void close() {
+			// Nothing to close
+		}
 	}
 
 	/**
@@ -151,42 +382,81 @@ public abstract class EncodingBufferedTag extends SimpleTagSupport {
 	public void doTag() throws JspException, IOException {
 		final PageContext pageContext = (PageContext)getJspContext();
 		final HttpServletRequest request = (HttpServletRequest)pageContext.getRequest();
-		final RequestEncodingContext parentEncodingContext = RequestEncodingContext.getCurrentContext(request);
+		final RequestEncodingContextStack contextStack = RequestEncodingContextStack.getInstance(request);
+		final RequestEncodingContext parentEncodingContext = contextStack.peek();
+		JspFragment body = getJspBody();
+		if(body != null && isStreaming()) {
+			// The output type is determined before the body is invoked, and the body is streamed through to the output
+			final MediaType myContentType = getContentType();
+			doOutput(pageContext, request, contextStack, parentEncodingContext, out -> {
+				MediaValidator captureValidator = MediaValidator.getMediaValidator(myContentType, new StreamingBodyWriter(out));
+				contextStack.push(new RequestEncodingContext(myContentType, captureValidator));
+				try {
+					invoke(body, captureValidator);
+					captureValidator.flush();
+				} finally {
+					// Restore the encoding context that is used for our output
+					contextStack.pop();
+				}
+				doStreamingEnd(out);
+			});
+			return;
+		}
 		// The output type cannot be determined until the body of the tag is invoked, because nested tags may
 		// alter the resulting type.  We invoke the body first to accommodate nested tags.
 
 		final BufferResult capturedBody;
-		JspFragment body = getJspBody();
 		if(body != null) {
 			// Capture the body output while validating
-			BufferWriter captureBuffer = newBufferWriter(request, getTempFileThreshold());
+			long captureStart = System.nanoTime();
+			BufferWriter captureBuffer = newBufferWriter(request, getTempFileThreshold(), isCompressTempFile());
 			try {
 				final MediaType myContentType = getContentType();
 				MediaValidator captureValidator = MediaValidator.getMediaValidator(myContentType, captureBuffer);
-				RequestEncodingContext.setCurrentContext(
-					request,
-					new RequestEncodingContext(myContentType, captureValidator)
-				);
+				contextStack.push(new RequestEncodingContext(myContentType, captureValidator));
 				try {
 					invoke(body, captureValidator);
 					captureValidator.flush();
 				} finally {
 					// Restore previous encoding context that is used for our output
-					RequestEncodingContext.setCurrentContext(request, parentEncodingContext);
+					contextStack.pop();
 				}
 			} finally {
 				captureBuffer.close();
 			}
 			capturedBody = captureBuffer.getResult();
+			AdaptiveTempFileThreshold.record(pageContext.getServletContext(), getClass(), capturedBody.getLength());
+			TaglibStatistics.record(pageContext.getServletContext(), getClass(), captureBuffer, capturedBody, System.nanoTime() - captureStart);
 		} else {
 			capturedBody = EmptyResult.getInstance();
 		}
+		doOutput(pageContext, request, contextStack, parentEncodingContext, out -> doTag(capturedBody, out));
+	}
 
+	/**
+	 * Performs tag output to a writer of the current {@linkplain #getOutputType() output type}.
+	 */
+	@FunctionalInterface
+	private interface OutputAction {
+		void doOutput(Writer out) throws JspException, IOException;
+	}
+
+	/**
+	 * Sets-up the output for the current {@linkplain #getOutputType() output type}, including any
+	 * prefix, encoder, and suffix, then performs the action.
+	 */
+	private void doOutput(
+		PageContext pageContext,
+		HttpServletRequest request,
+		RequestEncodingContextStack contextStack,
+		RequestEncodingContext parentEncodingContext,
+		OutputAction action
+	) throws JspException, IOException {
 		MediaType newOutputType = getOutputType();
 		if(newOutputType == null) {
 			// No output, error if anything written.
 			// prefix skipped
-			doTag(capturedBody, FailOnWriteWriter.getInstance());
+			action.doOutput(FailOnWriteWriter.getInstance());
 			// suffix skipped
 		} else {
 			final HttpServletResponse response = (HttpServletResponse)pageContext.getResponse();
@@ -209,17 +479,14 @@ public abstract class EncodingBufferedTag extends SimpleTagSupport {
 					logger.finer("containerValidator from parentEncodingContext: " + containerValidator);
 				}
 			} else {
-				// Use the content type of the response
-				String responseContentType = response.getContentType();
-				// Default to XHTML: TODO: Is there a better way since can't set content type early in response then reset again...
-				if(responseContentType == null) responseContentType = MediaType.XHTML.getContentType();
-				containerType = MediaType.getMediaTypeForContentType(responseContentType);
+				// Use the content type of the response, resolved once per request
+				containerType = ContainerMediaType.getContainerType(request, response);
 				if(logger.isLoggable(Level.FINER)) {
-					logger.finer("containerType from responseContentType: " + containerType + " from " + responseContentType);
+					logger.finer("containerType from response: " + containerType);
 				}
-				// Need to add validator
-				// TODO: Only validate when in development mode for performance?
-				containerValidator = MediaValidator.getMediaValidator(containerType, out);
+				// Need to add validator, unless trusted by policy
+				containerValidator = ContainerValidation.getContainerValidation(pageContext.getServletContext())
+					.getContainerValidator(containerType, out);
 				if(logger.isLoggable(Level.FINER)) {
 					logger.finer("containerValidator from containerType: " + containerValidator + " from " + containerType);
 				}
@@ -229,8 +496,8 @@ public abstract class EncodingBufferedTag extends SimpleTagSupport {
 			writePrefix(containerType, containerValidator);
 
 			// Find the encoder
-			EncodingContext encodingContext = new EncodingContextEE(pageContext.getServletContext(), request, response);
-			MediaEncoder mediaEncoder = MediaEncoder.getInstance(encodingContext, newOutputType, containerType);
+			EncodingContext encodingContext = EncodingContextCache.getEncodingContext(pageContext.getServletContext(), request, response);
+			MediaEncoder mediaEncoder = EncoderLookup.getInstance(encodingContext, newOutputType, containerType);
 			if(mediaEncoder != null) {
 				if(logger.isLoggable(Level.FINER)) {
 					logger.finer("Using MediaEncoder: " + mediaEncoder);
@@ -238,23 +505,29 @@ public abstract class EncodingBufferedTag extends SimpleTagSupport {
 				logger.finest("Setting encoder options");
 				setMediaEncoderOptions(mediaEncoder);
 				// Encode our output.  The encoder guarantees valid output for our parent.
-				logger.finest("Writing encoder prefix");
-				writeEncoderPrefix(mediaEncoder, out); // TODO: Skip prefix and suffix when empty?  Pass capturedBody so implementation may decide?
+				// When deferred, an empty tag writes neither the encoder prefix nor suffix
+				DeferredPrefixWriter encoderOut = new DeferredPrefixWriter(
+					out,
+					DeferredPrefixWriter.isWrapper(newOutputType, containerType),
+					prefixOut -> {
+						logger.finest("Writing encoder prefix");
+						writeEncoderPrefix(mediaEncoder, prefixOut);
+					}
+				);
 				try {
-					MediaWriter mediaWriter = new MediaWriter(encodingContext, mediaEncoder, out);
-					RequestEncodingContext.setCurrentContext(
-						request,
-						new RequestEncodingContext(newOutputType, mediaWriter)
-					);
+					MediaWriter mediaWriter = new MediaWriter(encodingContext, mediaEncoder, encoderOut);
+					contextStack.push(new RequestEncodingContext(newOutputType, mediaWriter));
 					try {
-						doTag(capturedBody, mediaWriter);
+						action.doOutput(mediaWriter);
 					} finally {
 						// Restore previous encoding context that is used for our output
-						RequestEncodingContext.setCurrentContext(request, parentEncodingContext);
+						contextStack.pop();
 					}
 				} finally {
-					logger.finest("Writing encoder suffix");
-					writeEncoderSuffix(mediaEncoder, out);
+					if(encoderOut.isPrefixWritten()) {
+						logger.finest("Writing encoder suffix");
+						writeEncoderSuffix(mediaEncoder, out);
+					}
 				}
 			} else {
 				// If parentValidMediaInput exists and is validating our output type, no additional validation is required
@@ -265,14 +538,11 @@ public abstract class EncodingBufferedTag extends SimpleTagSupport {
 					if(logger.isLoggable(Level.FINER)) {
 						logger.finer("Passing-through with validating parent: " + parentEncodingContext.validMediaInput);
 					}
-					RequestEncodingContext.setCurrentContext(
-						request,
-						new RequestEncodingContext(newOutputType, parentEncodingContext.validMediaInput)
-					);
+					contextStack.push(parentEncodingContext.passThrough(newOutputType));
 					try {
-						doTag(capturedBody, out);
+						action.doOutput(out);
 					} finally {
-						RequestEncodingContext.setCurrentContext(request, parentEncodingContext);
+						contextStack.pop();
 					}
 				} else {
 					// Not using an encoder and parent doesn't validate our output, validate our own output.
@@ -280,14 +550,11 @@ public abstract class EncodingBufferedTag extends SimpleTagSupport {
 					if(logger.isLoggable(Level.FINER)) {
 						logger.finer("Using MediaValidator: " + validator);
 					}
-					RequestEncodingContext.setCurrentContext(
-						request,
-						new RequestEncodingContext(newOutputType, validator)
-					);
+					contextStack.push(new RequestEncodingContext(newOutputType, validator));
 					try {
-						doTag(capturedBody, validator);
+						action.doOutput(validator);
 					} finally {
-						RequestEncodingContext.setCurrentContext(request, parentEncodingContext);
+						contextStack.pop();
 					}
 				}
 			}
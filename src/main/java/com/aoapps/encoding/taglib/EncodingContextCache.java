@@ -0,0 +1,80 @@
+/*
+ * ao-encoding-taglib - High performance streaming character encoding in a JSP environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-encoding-taglib.
+ *
+ * ao-encoding-taglib is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-encoding-taglib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-encoding-taglib.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.aoapps.encoding.taglib;
+
+import com.aoapps.encoding.EncodingContext;
+import com.aoapps.encoding.servlet.EncodingContextEE;
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Reuses one {@link EncodingContextEE} per request instead of creating one per tag.
+ * <p>
+ * The context is bound to the exact request and response objects it was
+ * created with, since its behavior, such as
+ * {@link HttpServletResponse#encodeURL(java.lang.String)}, depends on any
+ * wrappers in place.  The cached context is only reused when the servlet
+ * context, request, and response are all the same instances; otherwise, as
+ * within includes and forwards with wrapped requests or responses, a new
+ * context replaces the cached one.
+ * </p>
+ *
+ * @author  AO Industries, Inc.
+ */
+// Java 9: Make module-private
+public final class EncodingContextCache {
+
+	private static final String REQUEST_ATTRIBUTE = EncodingContextCache.class.getName();
+
+	/**
+	 * Gets the encoding context for the given request and response, reusing the
+	 * previous context when created for the same objects.
+	 */
+	// Java 9: Make module-private
+	public static EncodingContext getEncodingContext(ServletContext servletContext, HttpServletRequest request, HttpServletResponse response) {
+		EncodingContextCache cached = (EncodingContextCache)request.getAttribute(REQUEST_ATTRIBUTE);
+		if(
+			cached == null
+			|| cached.servletContext != servletContext
+			|| cached.request != request
+			|| cached.response != response
+		) {
+			cached = new EncodingContextCache(servletContext, request, response);
+			request.setAttribute(REQUEST_ATTRIBUTE, cached);
+		}
+		return cached.encodingContext;
+	}
+
+	private final ServletContext servletContext;
+	private final HttpServletRequest request;
+	private final HttpServletResponse response;
+	private final EncodingContext encodingContext;
+
+	private EncodingContextCache(ServletContext servletContext, HttpServletRequest request, HttpServletResponse response) {
+		this.servletContext = servletContext;
+		this.request = request;
+		this.response = response;
+		this.encodingContext = new EncodingContextEE(servletContext, request, response);
+	}
+}
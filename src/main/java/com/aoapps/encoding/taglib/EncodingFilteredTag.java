@@ -1,6 +1,6 @@
 /*
  * ao-encoding-taglib - High performance streaming character encoding in a JSP environment.
- * Copyright (C) 2009, 2010, 2011, 2012, 2013, 2016, 2017, 2019, 2020, 2021  AO Industries, Inc.
+ * Copyright (C) 2009, 2010, 2011, 2012, 2013, 2016, 2017, 2019, 2020, 2021, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -27,7 +27,6 @@ import com.aoapps.encoding.MediaEncoder;
 import com.aoapps.encoding.MediaType;
 import com.aoapps.encoding.MediaValidator;
 import com.aoapps.encoding.MediaWriter;
-import com.aoapps.encoding.servlet.EncodingContextEE;
 import java.io.IOException;
 import java.io.Writer;
 import java.util.logging.Level;
@@ -65,7 +64,8 @@ import javax.servlet.jsp.tagext.SimpleTagSupport;
  * <p>
  * Finally, if no existing {@link RequestEncodingContext} is found, this will
  * validate its own output against the content type of the
- * {@link HttpServletResponse} to make sure it is well-behaved.
+ * {@link HttpServletResponse} to make sure it is well-behaved, unless the
+ * {@link ContainerValidation} policy is {@link ContainerValidation#TRUSTED}.
  * </p>
  *
  * @author  AO Industries, Inc.
@@ -90,7 +90,8 @@ public abstract class EncodingFilteredTag extends SimpleTagSupport {
 	public void doTag() throws JspException, IOException {
 		final PageContext pageContext = (PageContext)getJspContext();
 		final HttpServletRequest request = (HttpServletRequest)pageContext.getRequest();
-		final RequestEncodingContext parentEncodingContext = RequestEncodingContext.getCurrentContext(request);
+		final RequestEncodingContextStack contextStack = RequestEncodingContextStack.getInstance(request);
+		final RequestEncodingContext parentEncodingContext = contextStack.peek();
 		final MediaType newOutputType = getContentType();
 		final HttpServletResponse response = (HttpServletResponse)pageContext.getResponse();
 		final JspWriter out = pageContext.getOut();
@@ -112,17 +113,14 @@ public abstract class EncodingFilteredTag extends SimpleTagSupport {
 				logger.finer("containerValidator from parentEncodingContext: " + containerValidator);
 			}
 		} else {
-			// Use the content type of the response
-			String responseContentType = response.getContentType();
-			// Default to XHTML: TODO: Is there a better way since can't set content type early in response then reset again...
-			if(responseContentType == null) responseContentType = MediaType.XHTML.getContentType();
-			containerType = MediaType.getMediaTypeForContentType(responseContentType);
+			// Use the content type of the response, resolved once per request
+			containerType = ContainerMediaType.getContainerType(request, response);
 			if(logger.isLoggable(Level.FINER)) {
-				logger.finer("containerType from responseContentType: " + containerType + " from " + responseContentType);
+				logger.finer("containerType from response: " + containerType);
 			}
-			// Need to add validator
-			// TODO: Only validate when in development mode for performance?
-			containerValidator = MediaValidator.getMediaValidator(containerType, out);
+			// Need to add validator, unless trusted by policy
+			containerValidator = ContainerValidation.getContainerValidation(pageContext.getServletContext())
+				.getContainerValidator(containerType, out);
 			if(logger.isLoggable(Level.FINER)) {
 				logger.finer("containerValidator from containerType: " + containerValidator + " from " + containerType);
 			}
@@ -132,8 +130,8 @@ public abstract class EncodingFilteredTag extends SimpleTagSupport {
 		writePrefix(containerType, containerValidator);
 
 		// Find the encoder
-		EncodingContext encodingContext = new EncodingContextEE(pageContext.getServletContext(), request, response);
-		MediaEncoder mediaEncoder = MediaEncoder.getInstance(encodingContext, newOutputType, containerType);
+		EncodingContext encodingContext = EncodingContextCache.getEncodingContext(pageContext.getServletContext(), request, response);
+		MediaEncoder mediaEncoder = EncoderLookup.getInstance(encodingContext, newOutputType, containerType);
 		if(mediaEncoder != null) {
 			if(logger.isLoggable(Level.FINER)) {
 				logger.finer("Using MediaEncoder: " + mediaEncoder);
@@ -141,23 +139,29 @@ public abstract class EncodingFilteredTag extends SimpleTagSupport {
 			logger.finest("Setting encoder options");
 			setMediaEncoderOptions(mediaEncoder);
 			// Encode both our output and the content.  The encoder validates our input and guarantees valid output for our parent.
-			logger.finest("Writing encoder prefix");
-			writeEncoderPrefix(mediaEncoder, out);
+			// When deferred, an empty tag writes neither the encoder prefix nor suffix
+			DeferredPrefixWriter encoderOut = new DeferredPrefixWriter(
+				out,
+				DeferredPrefixWriter.isWrapper(newOutputType, containerType),
+				prefixOut -> {
+					logger.finest("Writing encoder prefix");
+					writeEncoderPrefix(mediaEncoder, prefixOut);
+				}
+			);
 			try {
-				MediaWriter mediaWriter = new MediaWriter(encodingContext, mediaEncoder, out);
-				RequestEncodingContext.setCurrentContext(
-					request,
-					new RequestEncodingContext(newOutputType, mediaWriter)
-				);
+				MediaWriter mediaWriter = new MediaWriter(encodingContext, mediaEncoder, encoderOut);
+				contextStack.push(new RequestEncodingContext(newOutputType, mediaWriter));
 				try {
 					doTag(mediaWriter);
 				} finally {
 					// Restore previous encoding context that is used for our output
-					RequestEncodingContext.setCurrentContext(request, parentEncodingContext);
+					contextStack.pop();
 				}
 			} finally {
-				logger.finest("Writing encoder suffix");
-				writeEncoderSuffix(mediaEncoder, out);
+				if(encoderOut.isPrefixWritten()) {
+					logger.finest("Writing encoder suffix");
+					writeEncoderSuffix(mediaEncoder, out);
+				}
 			}
 		} else {
 			// If parentValidMediaInput exists and is validating our output type, no additional validation is required
@@ -168,14 +172,11 @@ public abstract class EncodingFilteredTag extends SimpleTagSupport {
 				if(logger.isLoggable(Level.FINER)) {
 					logger.finer("Passing-through with validating parent: " + parentEncodingContext.validMediaInput);
 				}
-				RequestEncodingContext.setCurrentContext(
-					request,
-					new RequestEncodingContext(newOutputType, parentEncodingContext.validMediaInput)
-				);
+				contextStack.push(parentEncodingContext.passThrough(newOutputType));
 				try {
 					doTag(out);
 				} finally {
-					RequestEncodingContext.setCurrentContext(request, parentEncodingContext);
+					contextStack.pop();
 				}
 			} else {
 				// Not using an encoder and parent doesn't validate our output, validate our own output.
@@ -183,14 +184,11 @@ public abstract class EncodingFilteredTag extends SimpleTagSupport {
 				if(logger.isLoggable(Level.FINER)) {
 					logger.finer("Using MediaValidator: " + validator);
 				}
-				RequestEncodingContext.setCurrentContext(
-					request,
-					new RequestEncodingContext(newOutputType, validator)
-				);
+				contextStack.push(new RequestEncodingContext(newOutputType, validator));
 				try {
 					doTag(validator);
 				} finally {
-					RequestEncodingContext.setCurrentContext(request, parentEncodingContext);
+					contextStack.pop();
 				}
 			}
 		}
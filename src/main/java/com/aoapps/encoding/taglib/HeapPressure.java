@@ -0,0 +1,401 @@
+/*
+ * ao-encoding-taglib - High performance streaming character encoding in a JSP environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-encoding-taglib.
+ *
+ * ao-encoding-taglib is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-encoding-taglib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-encoding-taglib.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.aoapps.encoding.taglib;
+
+import com.aoapps.io.buffer.AutoTempFileWriter;
+import com.aoapps.lang.Strings;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.servlet.ServletContext;
+
+/**
+ * <p>
+ * Reduces the temp file threshold of new captures while the tenured heap is
+ * above a high-water mark, spilling to disk instead of adding to a heap that is
+ * close to a full collection or {@link OutOfMemoryError}.  Captures with a
+ * threshold of {@link Long#MAX_VALUE} never use temp files and are not affected.
+ * </p>
+ * <p>
+ * Usage thresholds are set on each heap {@link MemoryPoolMXBean} that supports
+ * them, which are the tenured pools, and pressure begins on their
+ * {@link MemoryNotificationInfo#MEMORY_THRESHOLD_EXCEEDED} or
+ * {@link MemoryNotificationInfo#MEMORY_COLLECTION_THRESHOLD_EXCEEDED} notification.
+ * There is no notification when usage drops, so while under pressure the usage
+ * after the most recent collection is checked at most every {@link #RECHECK_INTERVAL}
+ * and pressure ends once below the low-water mark.
+ * </p>
+ * <p>
+ * Configured per application by context-params:
+ * </p>
+ * <ul>
+ * <li>{@link #HIGH_WATER_INIT_PARAM} - fraction of the maximum pool size, default <code>0</code>, which disables monitoring</li>
+ * <li>{@link #LOW_WATER_INIT_PARAM} - fraction of the maximum pool size, default 0.70</li>
+ * <li>{@link #REDUCED_THRESHOLD_INIT_PARAM} - temp file threshold in characters while under pressure,
+ *     default one-sixty-fourth of {@link AutoTempFileWriter#DEFAULT_TEMP_FILE_THRESHOLD}</li>
+ * </ul>
+ * <p>
+ * Each application registers its own notification listener when started by
+ * {@link TaglibInitializer}, and removes it when destroyed.  Memory pools are shared
+ * by the whole process, so a threshold already set on a pool, by another application
+ * or other code, is left unchanged and only listened to.  When stopped, each threshold
+ * set is restored to the value seen at start, unless since changed by other code.
+ * The heap is not monitored when the {@code java.management} module is not available.
+ * </p>
+ *
+ * @author  AO Industries, Inc.
+ */
+// Java 9: Make module-private
+public final class HeapPressure {
+
+	private static final Logger logger = Logger.getLogger(HeapPressure.class.getName());
+
+	/**
+	 * The name of the context-param that sets the high-water mark, as a fraction of the maximum pool size.
+	 */
+	public static final String HIGH_WATER_INIT_PARAM = HeapPressure.class.getName() + ".highWater";
+
+	/**
+	 * The name of the context-param that sets the low-water mark, as a fraction of the maximum pool size.
+	 */
+	public static final String LOW_WATER_INIT_PARAM = HeapPressure.class.getName() + ".lowWater";
+
+	/**
+	 * The name of the context-param that sets the temp file threshold in characters while under pressure.
+	 */
+	public static final String REDUCED_THRESHOLD_INIT_PARAM = HeapPressure.class.getName() + ".reducedThreshold";
+
+	/**
+	 * The minimum time between checks for the end of pressure.
+	 */
+	private static final long RECHECK_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+	private static final String APPLICATION_ATTRIBUTE = HeapPressure.class.getName();
+
+	/**
+	 * Used when not enabled, or when the application has not been initialized by {@link TaglibInitializer}.
+	 */
+	private static final HeapPressure DISABLED = new HeapPressure(0, 0, AutoTempFileWriter.DEFAULT_TEMP_FILE_THRESHOLD >> 6);
+
+	private static double getFraction(ServletContext servletContext, String name, double defaultValue) {
+		String value = Strings.trimNullIfEmpty(servletContext.getInitParameter(name));
+		if(value == null) return defaultValue;
+		double d = Double.parseDouble(value);
+		if(!(d >= 0 && d < 1)) throw new IllegalArgumentException(name + " must be in the range [0, 1): " + d);
+		return d;
+	}
+
+	private static long getReducedThreshold(ServletContext servletContext) {
+		String value = Strings.trimNullIfEmpty(servletContext.getInitParameter(REDUCED_THRESHOLD_INIT_PARAM));
+		if(value == null) return AutoTempFileWriter.DEFAULT_TEMP_FILE_THRESHOLD >> 6;
+		long threshold = Long.parseLong(value);
+		if(threshold < 0) throw new IllegalArgumentException(REDUCED_THRESHOLD_INIT_PARAM + " may not be negative: " + threshold);
+		return threshold;
+	}
+
+	/**
+	 * Starts monitoring on application start-up, when enabled.
+	 *
+	 * @see  TaglibInitializer
+	 */
+	static void contextInitialized(ServletContext servletContext) {
+		double highWater = getFraction(servletContext, HIGH_WATER_INIT_PARAM, 0);
+		double lowWater = Math.min(getFraction(servletContext, LOW_WATER_INIT_PARAM, 0.70), highWater);
+		long reducedThreshold = getReducedThreshold(servletContext);
+		if(logger.isLoggable(Level.CONFIG)) {
+			logger.config(HIGH_WATER_INIT_PARAM + "=" + highWater);
+			logger.config(LOW_WATER_INIT_PARAM + "=" + lowWater);
+			logger.config(REDUCED_THRESHOLD_INIT_PARAM + "=" + reducedThreshold);
+		}
+		HeapPressure heapPressure;
+		if(highWater > 0 && ManagementUtils.AVAILABLE) {
+			heapPressure = new HeapPressure(highWater, lowWater, reducedThreshold);
+			heapPressure.monitor = new Monitor(heapPressure);
+			heapPressure.monitor.start();
+		} else {
+			heapPressure = DISABLED;
+		}
+		servletContext.setAttribute(APPLICATION_ATTRIBUTE, heapPressure);
+	}
+
+	/**
+	 * Stops monitoring when the application is destroyed, so no listener remains
+	 * registered with the platform after the application is unloaded.
+	 *
+	 * @see  TaglibInitializer
+	 */
+	static void contextDestroyed(ServletContext servletContext) {
+		HeapPressure heapPressure = getExistingInstance(servletContext);
+		if(heapPressure != null) {
+			servletContext.removeAttribute(APPLICATION_ATTRIBUTE);
+			if(heapPressure.monitor != null) heapPressure.monitor.stop();
+		}
+	}
+
+	/**
+	 * Gets the heap pressure of the given application, without creating it.
+	 *
+	 * @return  the heap pressure or {@code null} when not initialized or the application is destroyed
+	 */
+	static HeapPressure getExistingInstance(ServletContext servletContext) {
+		return (HeapPressure)servletContext.getAttribute(APPLICATION_ATTRIBUTE);
+	}
+
+	/**
+	 * Gets the heap pressure of the given application.  When the application has not been
+	 * initialized by {@link TaglibInitializer}, the heap is not monitored, logging a warning
+	 * when monitoring is configured.
+	 */
+	// Java 9: Make module-private
+	public static HeapPressure getInstance(ServletContext servletContext) {
+		HeapPressure instance = getExistingInstance(servletContext);
+		if(instance == null) {
+			if(getFraction(servletContext, HIGH_WATER_INIT_PARAM, 0) > 0) {
+				logger.warning(
+					HIGH_WATER_INIT_PARAM + " is set, but " + TaglibInitializer.class.getName()
+					+ " is not registered to start and stop monitoring: heap not monitored"
+				);
+			}
+			instance = DISABLED;
+			servletContext.setAttribute(APPLICATION_ATTRIBUTE, instance);
+		}
+		return instance;
+	}
+
+	/**
+	 * Monitors the heap pools for one application, only loaded when the {@code java.management} module is available.
+	 */
+	private static final class Monitor implements NotificationListener {
+
+		/**
+		 * A pool being monitored, with the thresholds seen at start and those set, if any.
+		 */
+		private static final class MonitoredPool {
+
+			private final MemoryPoolMXBean pool;
+			private final boolean usageThresholdSet;
+			private final long seenUsageThreshold;
+			private final long usageThreshold;
+			private final boolean collectionUsageThresholdSet;
+			private final long seenCollectionUsageThreshold;
+			private final long collectionUsageThreshold;
+
+			private MonitoredPool(MemoryPoolMXBean pool, long threshold) {
+				this.pool = pool;
+				seenUsageThreshold = pool.getUsageThreshold();
+				if(seenUsageThreshold == 0) {
+					pool.setUsageThreshold(threshold);
+					usageThresholdSet = true;
+				} else {
+					usageThresholdSet = false;
+				}
+				usageThreshold = pool.getUsageThreshold();
+				if(pool.isCollectionUsageThresholdSupported()) {
+					seenCollectionUsageThreshold = pool.getCollectionUsageThreshold();
+					if(seenCollectionUsageThreshold == 0) {
+						pool.setCollectionUsageThreshold(threshold);
+						collectionUsageThresholdSet = true;
+					} else {
+						collectionUsageThresholdSet = false;
+					}
+					collectionUsageThreshold = pool.getCollectionUsageThreshold();
+				} else {
+					seenCollectionUsageThreshold = 0;
+					collectionUsageThresholdSet = false;
+					collectionUsageThreshold = 0;
+				}
+			}
+
+			/**
+			 * Restores the thresholds seen at start, when still the values set.
+			 */
+			private void restore() {
+				if(pool.isValid()) {
+					if(usageThresholdSet && pool.getUsageThreshold() == usageThreshold) {
+						pool.setUsageThreshold(seenUsageThreshold);
+					}
+					if(collectionUsageThresholdSet && pool.getCollectionUsageThreshold() == collectionUsageThreshold) {
+						pool.setCollectionUsageThreshold(seenCollectionUsageThreshold);
+					}
+				}
+			}
+		}
+
+		private final HeapPressure heapPressure;
+
+		/**
+		 * The pools being monitored, empty when not started.
+		 */
+		private final List<MonitoredPool> pools = new ArrayList<>();
+
+		private volatile long lastCheck;
+
+		private Monitor(HeapPressure heapPressure) {
+			this.heapPressure = heapPressure;
+		}
+
+		@Override
+		public void handleNotification(Notification notification, Object handback) {
+			String type = notification.getType();
+			if(
+				MemoryNotificationInfo.MEMORY_THRESHOLD_EXCEEDED.equals(type)
+				|| MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(type)
+			) {
+				if(!heapPressure.underPressure) {
+					heapPressure.underPressure = true;
+					lastCheck = System.nanoTime();
+					if(logger.isLoggable(Level.INFO)) {
+						logger.info("Heap above high-water mark, reducing capture temp file threshold to " + heapPressure.reducedThreshold);
+					}
+				}
+			}
+		}
+
+		private synchronized void start() {
+			// Synchronized on the class, since the pools are shared with other instances in the same class loader
+			synchronized(Monitor.class) {
+				for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+					if(pool.getType() == MemoryType.HEAP && pool.isValid() && pool.isUsageThresholdSupported()) {
+						long max = pool.getUsage().getMax();
+						if(max > 0) {
+							MonitoredPool monitored = new MonitoredPool(pool, (long)(max * heapPressure.highWater));
+							pools.add(monitored);
+							if(logger.isLoggable(Level.CONFIG)) {
+								logger.config("Monitoring " + pool.getName() + " with usage threshold " + monitored.usageThreshold);
+							}
+						}
+					}
+				}
+			}
+			if(!pools.isEmpty()) {
+				((NotificationEmitter)ManagementFactory.getMemoryMXBean()).addNotificationListener(this, null, null);
+			}
+		}
+
+		private synchronized void stop() {
+			if(!pools.isEmpty()) {
+				try {
+					((NotificationEmitter)ManagementFactory.getMemoryMXBean()).removeNotificationListener(this);
+				} catch(ListenerNotFoundException e) {
+					logger.log(Level.WARNING, null, e);
+				}
+				synchronized(Monitor.class) {
+					// In reverse, so thresholds are restored in the opposite order they were set
+					for(int i = pools.size() - 1; i >= 0; i--) {
+						pools.get(i).restore();
+					}
+				}
+				pools.clear();
+			}
+			heapPressure.underPressure = false;
+		}
+
+		/**
+		 * Checks if pressure has ended, at most once per {@link HeapPressure#RECHECK_INTERVAL}.
+		 */
+		private void recheck() {
+			long now = System.nanoTime();
+			if(now - lastCheck >= RECHECK_INTERVAL) {
+				lastCheck = now;
+				synchronized(this) {
+					for(MonitoredPool monitored : pools) {
+						MemoryPoolMXBean pool = monitored.pool;
+						MemoryUsage usage = pool.isCollectionUsageThresholdSupported() ? pool.getCollectionUsage() : pool.getUsage();
+						if(usage != null && usage.getMax() > 0 && usage.getUsed() >= (long)(usage.getMax() * heapPressure.lowWater)) {
+							// Still under pressure
+							return;
+						}
+					}
+					heapPressure.underPressure = false;
+				}
+				if(logger.isLoggable(Level.INFO)) {
+					logger.info("Heap below low-water mark, restoring capture temp file thresholds");
+				}
+			}
+		}
+	}
+
+	private final double highWater;
+	private final double lowWater;
+	private final long reducedThreshold;
+
+	/**
+	 * The monitor of this application, or {@code null} when not monitoring.
+	 */
+	private Monitor monitor;
+
+	private volatile boolean underPressure;
+
+	private HeapPressure(double highWater, double lowWater, long reducedThreshold) {
+		this.highWater = highWater;
+		this.lowWater = lowWater;
+		this.reducedThreshold = reducedThreshold;
+	}
+
+	/**
+	 * Checks if the heap is monitored.
+	 */
+	public boolean isEnabled() {
+		return monitor != null;
+	}
+
+	/**
+	 * Checks if the heap is currently under pressure.
+	 */
+	public boolean isUnderPressure() {
+		if(underPressure) monitor.recheck();
+		return underPressure;
+	}
+
+	/**
+	 * The temp file threshold used while under pressure.
+	 */
+	public long getReducedThreshold() {
+		return reducedThreshold;
+	}
+
+	/**
+	 * Gets the temp file threshold to use for a new capture.
+	 *
+	 * @return  the given threshold, or the reduced threshold when lower and under pressure.
+	 *          A threshold of {@link Long#MAX_VALUE}, to never use temp files, is not changed.
+	 */
+	public long adjustThreshold(long tempFileThreshold) {
+		return
+			tempFileThreshold != Long.MAX_VALUE
+			&& isUnderPressure()
+				? Math.min(tempFileThreshold, reducedThreshold)
+				: tempFileThreshold;
+	}
+}
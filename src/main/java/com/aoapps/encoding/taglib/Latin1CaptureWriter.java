@@ -0,0 +1,366 @@
+/*
+ * ao-encoding-taglib - High performance streaming character encoding in a JSP environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-encoding-taglib.
+ *
+ * ao-encoding-taglib is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-encoding-taglib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-encoding-taglib.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.aoapps.encoding.taglib;
+
+import com.aoapps.io.buffer.BufferResult;
+import com.aoapps.io.buffer.BufferWriter;
+import com.aoapps.io.buffer.EmptyResult;
+import com.aoapps.lang.Strings;
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.util.Arrays;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.servlet.ServletContext;
+
+/**
+ * <p>
+ * Captures one byte per character while every character is below 256, which
+ * halves the memory of the typical ASCII capture of JSON, JavaScript, or SQL.
+ * On the first wider character, the bytes captured so far are replayed into a
+ * new UTF-16 {@link BufferWriter} and all further writes go to it.
+ * </p>
+ * <p>
+ * Bytes are stored in chunks of {@link #CHUNK_SIZE}, with only the first chunk
+ * grown from a small initial size, so larger captures are never copied to grow.
+ * The byte chunks are allocated by each writer and are not taken from the
+ * {@link CharChunkPool}, but the UTF-16 writer captures into chunks from the pool
+ * when enabled.
+ * </p>
+ * <p>
+ * When {@linkplain #reset() reset}, the byte chunks are kept, and the UTF-16 writer
+ * is kept for the next inflation when it is itself {@link ReusableCaptureWriter.Resettable},
+ * so iterating tags reuse both.
+ * </p>
+ * <p>
+ * Enabled by setting the context-param {@link #INIT_PARAM} to <code>true</code>.
+ * </p>
+ * <p>
+ * This class is not thread safe.
+ * </p>
+ *
+ * @author  AO Industries, Inc.
+ */
+// Java 9: Make module-private
+public final class Latin1CaptureWriter extends BufferWriter implements ReusableCaptureWriter.Resettable {
+
+	private static final Logger logger = Logger.getLogger(Latin1CaptureWriter.class.getName());
+
+	/**
+	 * The name of the context-param that enables Latin-1 captures.
+	 */
+	public static final String INIT_PARAM = Latin1CaptureWriter.class.getName();
+
+	private static final String APPLICATION_ATTRIBUTE = Latin1CaptureWriter.class.getName();
+
+	/**
+	 * Checks if Latin-1 captures are enabled for the given application.
+	 */
+	public static boolean isEnabled(ServletContext servletContext) {
+		Boolean enabled = (Boolean)servletContext.getAttribute(APPLICATION_ATTRIBUTE);
+		if(enabled == null) {
+			enabled = Boolean.parseBoolean(Strings.trimNullIfEmpty(servletContext.getInitParameter(INIT_PARAM)));
+			if(logger.isLoggable(Level.CONFIG)) {
+				logger.config(INIT_PARAM + "=" + enabled);
+			}
+			servletContext.setAttribute(APPLICATION_ATTRIBUTE, enabled);
+		}
+		return enabled;
+	}
+
+	/**
+	 * The size of each full chunk.
+	 */
+	static final int CHUNK_SIZE = 4096;
+
+	/**
+	 * The initial size of the first chunk.
+	 */
+	private static final int INITIAL_SIZE = 64;
+
+	private final Supplier<? extends BufferWriter> inflated;
+
+	/**
+	 * The chunks allocated, which are kept for reuse when {@linkplain #reset() reset}.
+	 */
+	private byte[][] chunks = new byte[4][];
+	private int numChunks;
+
+	/**
+	 * The index of the current chunk, {@code -1} before the first write.
+	 */
+	private int chunkIndex = -1;
+
+	/**
+	 * The current chunk, or {@code null} before the first write.
+	 */
+	private byte[] current;
+
+	/**
+	 * The number of bytes used in the current chunk.
+	 */
+	private int currentLen;
+
+	private long length;
+
+	/**
+	 * The writer all writes go to once a character of 256 or higher has been written.
+	 * {@link #length} continues to count all characters.
+	 */
+	private BufferWriter wide;
+
+	/**
+	 * A reset UTF-16 writer from a previous capture, used by the next inflation.
+	 */
+	private BufferWriter spareWide;
+
+	private boolean isClosed;
+	private BufferResult result;
+
+	/**
+	 * @param  inflated  creates the writer used once any character of 256 or higher is written
+	 */
+	// Java 9: Make module-private
+	public Latin1CaptureWriter(Supplier<? extends BufferWriter> inflated) {
+		this.inflated = inflated;
+	}
+
+	/**
+	 * Ensures there is room for at least one more byte.
+	 */
+	private void ensureSpace() {
+		if(current == null) {
+			if(numChunks == 0) chunks[numChunks++] = new byte[INITIAL_SIZE];
+			chunkIndex = 0;
+			current = chunks[0];
+			currentLen = 0;
+		} else if(currentLen == current.length) {
+			if(current.length < CHUNK_SIZE) {
+				// Only the first chunk grows
+				assert chunkIndex == 0;
+				current = Arrays.copyOf(current, Math.min(current.length << 1, CHUNK_SIZE));
+				chunks[0] = current;
+			} else {
+				if(++chunkIndex == numChunks) {
+					if(numChunks == chunks.length) chunks = Arrays.copyOf(chunks, numChunks << 1);
+					chunks[numChunks++] = new byte[CHUNK_SIZE];
+				}
+				current = chunks[chunkIndex];
+				currentLen = 0;
+			}
+		}
+	}
+
+	/**
+	 * Replays the captured bytes into a UTF-16 writer, which receives all further writes.
+	 * The byte chunks are kept for reuse when {@linkplain #reset() reset}.
+	 */
+	private void inflate() throws IOException {
+		if(logger.isLoggable(Level.FINER)) {
+			logger.finer("Inflating after " + length + " Latin-1 characters");
+		}
+		BufferWriter w;
+		if(spareWide != null) {
+			w = spareWide;
+			spareWide = null;
+		} else {
+			w = inflated.get();
+		}
+		char[] transfer = new char[(int)Math.min(CHUNK_SIZE, Math.max(1, length))];
+		for(int i = 0; i <= chunkIndex; i++) {
+			byte[] chunk = chunks[i];
+			int chunkLen = (i == chunkIndex) ? currentLen : chunk.length;
+			for(int j = 0; j < chunkLen; j++) transfer[j] = (char)(chunk[j] & 0xFF);
+			w.write(transfer, 0, chunkLen);
+		}
+		wide = w;
+	}
+
+	/**
+	 * Reopens for another capture, reusing the byte chunks already allocated and,
+	 * when resettable, the UTF-16 writer.
+	 * The previous {@linkplain #getResult() result} is invalid once reset.
+	 */
+	@Override
+	public void reset() {
+		if(wide instanceof ReusableCaptureWriter.Resettable) {
+			((ReusableCaptureWriter.Resettable)wide).reset();
+			spareWide = wide;
+		}
+		wide = null;
+		chunkIndex = -1;
+		current = null;
+		currentLen = 0;
+		length = 0;
+		isClosed = false;
+		result = null;
+	}
+
+	@Override
+	public void write(int c) throws IOException {
+		if(isClosed) throw new ClosedChannelException();
+		if(wide == null) {
+			char ch = (char)c;
+			if(ch < 256) {
+				ensureSpace();
+				current[currentLen++] = (byte)ch;
+				length++;
+				return;
+			}
+			inflate();
+		}
+		wide.write(c);
+		length++;
+	}
+
+	@Override
+	public void write(char[] cbuf) throws IOException {
+		write(cbuf, 0, cbuf.length);
+	}
+
+	@Override
+	public void write(char[] cbuf, int off, int len) throws IOException {
+		if(isClosed) throw new ClosedChannelException();
+		if(off < 0 || len < 0 || off + len > cbuf.length) throw new IndexOutOfBoundsException();
+		int end = off + len;
+		while(wide == null && off < end) {
+			ensureSpace();
+			int count = Math.min(current.length - currentLen, end - off);
+			for(int i = 0; i < count; i++) {
+				char ch = cbuf[off + i];
+				if(ch >= 256) {
+					currentLen += i;
+					length += i;
+					off += i;
+					inflate();
+					break;
+				}
+				current[currentLen + i] = (byte)ch;
+			}
+			if(wide == null) {
+				currentLen += count;
+				length += count;
+				off += count;
+			}
+		}
+		if(off < end) {
+			wide.write(cbuf, off, end - off);
+			length += end - off;
+		}
+	}
+
+	@Override
+	public void write(String str) throws IOException {
+		write(str, 0, str.length());
+	}
+
+	@Override
+	public void write(String str, int off, int len) throws IOException {
+		if(isClosed) throw new ClosedChannelException();
+		if(off < 0 || len < 0 || off + len > str.length()) throw new IndexOutOfBoundsException();
+		int end = off + len;
+		while(wide == null && off < end) {
+			ensureSpace();
+			int count = Math.min(current.length - currentLen, end - off);
+			for(int i = 0; i < count; i++) {
+				char ch = str.charAt(off + i);
+				if(ch >= 256) {
+					currentLen += i;
+					length += i;
+					off += i;
+					inflate();
+					break;
+				}
+				current[currentLen + i] = (byte)ch;
+			}
+			if(wide == null) {
+				currentLen += count;
+				length += count;
+				off += count;
+			}
+		}
+		if(off < end) {
+			wide.write(str, off, end - off);
+			length += end - off;
+		}
+	}
+
+	@Override
+	public Latin1CaptureWriter append(CharSequence csq) throws IOException {
+		if(csq == null) csq = "null";
+		return append(csq, 0, csq.length());
+	}
+
+	@Override
+	public Latin1CaptureWriter append(CharSequence csq, int start, int end) throws IOException {
+		if(csq == null) csq = "null";
+		if(start < 0 || start > end || end > csq.length()) throw new IndexOutOfBoundsException();
+		if(csq instanceof String) {
+			write((String)csq, start, end - start);
+		} else {
+			for(int i = start; i < end; i++) write(csq.charAt(i));
+		}
+		return this;
+	}
+
+	@Override
+	public Latin1CaptureWriter append(char c) throws IOException {
+		write(c);
+		return this;
+	}
+
+	@Override
+	public void flush() throws IOException {
+		if(wide != null) wide.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		isClosed = true;
+		if(wide != null) wide.close();
+	}
+
+	@Override
+	public long getLength() {
+		return length;
+	}
+
+	@Override
+	public String toString() {
+		return (wide != null)
+			? "Latin1CaptureWriter(" + wide + ")"
+			: "Latin1CaptureWriter(length=" + length + ")";
+	}
+
+	@Override
+	public BufferResult getResult() throws IllegalStateException, IOException {
+		if(!isClosed) throw new IllegalStateException();
+		if(result == null) {
+			if(wide != null) result = wide.getResult();
+			else if(length == 0) result = EmptyResult.getInstance();
+			else result = new Latin1Result(chunks, 0, length);
+		}
+		return result;
+	}
+}
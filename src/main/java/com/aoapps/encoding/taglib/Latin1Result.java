@@ -0,0 +1,166 @@
+/*
+ * ao-encoding-taglib - High performance streaming character encoding in a JSP environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-encoding-taglib.
+ *
+ * ao-encoding-taglib is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-encoding-taglib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-encoding-taglib.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.aoapps.encoding.taglib;
+
+import com.aoapps.io.buffer.BufferResult;
+import com.aoapps.io.buffer.EmptyResult;
+import com.aoapps.lang.Strings;
+import com.aoapps.lang.io.Encoder;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The result of a {@link Latin1CaptureWriter} that has not been inflated, a
+ * range of its byte chunks.  Characters are widened through a transfer buffer
+ * on write-out.  Trimming shares the chunks.
+ *
+ * @author  AO Industries, Inc.
+ */
+final class Latin1Result implements BufferResult {
+
+	private static final int CHUNK_SIZE = Latin1CaptureWriter.CHUNK_SIZE;
+
+	private final byte[][] chunks;
+	private final long start;
+	private final long end;
+
+	private String toStringCache;
+
+	Latin1Result(byte[][] chunks, long start, long end) {
+		assert start < end;
+		this.chunks = chunks;
+		this.start = start;
+		this.end = end;
+	}
+
+	private char charAt(long pos) {
+		return (char)(chunks[(int)(pos / CHUNK_SIZE)][(int)(pos % CHUNK_SIZE)] & 0xFF);
+	}
+
+	@Override
+	public long getLength() {
+		return end - start;
+	}
+
+	@Override
+	public boolean isFastToString() {
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		if(toStringCache == null) {
+			long length = end - start;
+			if(length > Integer.MAX_VALUE) throw new IllegalStateException("Too large for String: " + length);
+			int firstOff = (int)(start % CHUNK_SIZE);
+			if(firstOff + length <= CHUNK_SIZE) {
+				// Within a single chunk
+				toStringCache = new String(chunks[(int)(start / CHUNK_SIZE)], firstOff, (int)length, StandardCharsets.ISO_8859_1);
+			} else {
+				byte[] bytes = new byte[(int)length];
+				long pos = start;
+				int copied = 0;
+				while(copied < length) {
+					int off = (int)(pos % CHUNK_SIZE);
+					int count = (int)Math.min(CHUNK_SIZE - off, length - copied);
+					System.arraycopy(chunks[(int)(pos / CHUNK_SIZE)], off, bytes, copied, count);
+					pos += count;
+					copied += count;
+				}
+				toStringCache = new String(bytes, StandardCharsets.ISO_8859_1);
+			}
+		}
+		return toStringCache;
+	}
+
+	private void writeRange(Encoder encoder, Writer out, long off, long len) throws IOException {
+		if(off < 0 || len < 0 || off + len > (end - start)) throw new IndexOutOfBoundsException();
+		if(len > 0) {
+			char[] transfer = new char[(int)Math.min(CHUNK_SIZE, len)];
+			long pos = start + off;
+			while(len > 0) {
+				int chunkOff = (int)(pos % CHUNK_SIZE);
+				int count = (int)Math.min(CHUNK_SIZE - chunkOff, len);
+				byte[] chunk = chunks[(int)(pos / CHUNK_SIZE)];
+				for(int i = 0; i < count; i++) transfer[i] = (char)(chunk[chunkOff + i] & 0xFF);
+				if(encoder == null) {
+					out.write(transfer, 0, count);
+				} else {
+					encoder.write(transfer, 0, count, out);
+				}
+				pos += count;
+				len -= count;
+			}
+		}
+	}
+
+	@Override
+	public void writeTo(Writer out) throws IOException {
+		writeRange(null, out, 0, end - start);
+	}
+
+	@Override
+	public void writeTo(Writer out, long off, long len) throws IOException {
+		writeRange(null, out, off, len);
+	}
+
+	@Override
+	public void writeTo(Encoder encoder, Writer out) throws IOException {
+		writeRange(encoder, out, 0, end - start);
+	}
+
+	@Override
+	public void writeTo(Encoder encoder, Writer out, long off, long len) throws IOException {
+		writeRange(encoder, out, off, len);
+	}
+
+	private BufferResult range(long newStart, long newEnd) {
+		if(newStart == start && newEnd == end) return this;
+		if(newStart == newEnd) return EmptyResult.getInstance();
+		return new Latin1Result(chunks, newStart, newEnd);
+	}
+
+	@Override
+	public BufferResult trimStart() {
+		long newStart = start;
+		while(newStart < end && Strings.isWhitespace(charAt(newStart))) newStart++;
+		return range(newStart, end);
+	}
+
+	@Override
+	public BufferResult trimEnd() {
+		long newEnd = end;
+		while(newEnd > start && Strings.isWhitespace(charAt(newEnd - 1))) newEnd--;
+		return range(start, newEnd);
+	}
+
+	@Override
+	public BufferResult trim() {
+		long newStart = start;
+		while(newStart < end && Strings.isWhitespace(charAt(newStart))) newStart++;
+		long newEnd = end;
+		while(newEnd > newStart && Strings.isWhitespace(charAt(newEnd - 1))) newEnd--;
+		return range(newStart, newEnd);
+	}
+}
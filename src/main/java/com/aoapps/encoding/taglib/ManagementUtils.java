@@ -0,0 +1,61 @@
+/*
+ * ao-encoding-taglib - High performance streaming character encoding in a JSP environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-encoding-taglib.
+ *
+ * ao-encoding-taglib is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-encoding-taglib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-encoding-taglib.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.aoapps.encoding.taglib;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Checks for the optional {@code java.management} module.  Classes that use it
+ * keep their use in nested classes, which are only loaded when available.
+ *
+ * @author  AO Industries, Inc.
+ */
+final class ManagementUtils {
+
+	private static final Logger logger = Logger.getLogger(ManagementUtils.class.getName());
+
+	/**
+	 * Is the {@code java.management} module available?
+	 */
+	static final boolean AVAILABLE;
+	static {
+		boolean available;
+		try {
+			Class.forName("java.lang.management.ManagementFactory");
+			available = true;
+		} catch(ClassNotFoundException | LinkageError e) {
+			available = false;
+			if(logger.isLoggable(Level.CONFIG)) {
+				logger.log(Level.CONFIG, "java.management not available, heap pressure not monitored and capture statistics not registered", e);
+			}
+		}
+		AVAILABLE = available;
+	}
+
+	/**
+	 * Make no instances.
+	 */
+	private ManagementUtils() {
+	}
+}
@@ -0,0 +1,252 @@
+/*
+ * ao-encoding-taglib - High performance streaming character encoding in a JSP environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-encoding-taglib.
+ *
+ * ao-encoding-taglib is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-encoding-taglib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-encoding-taglib.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.aoapps.encoding.taglib;
+
+import com.aoapps.io.buffer.BufferResult;
+import com.aoapps.io.buffer.EmptyResult;
+import com.aoapps.lang.Strings;
+import com.aoapps.lang.io.Encoder;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The result of a {@link MappedTempFileWriter} that has spilled to a temp file,
+ * a range of its characters.  The file is memory-mapped once, in windows of
+ * up to {@link #MAX_MAP_CHARS} characters, and the mapping is shared by the
+ * result and every result trimmed from it.  Write-outs transfer the mapped
+ * characters in chunks of {@link #TRANSFER_CHARS} characters.
+ * <p>
+ * The temp file is deleted at the end of the request,
+ * so the result is only valid for the request.
+ * </p>
+ *
+ * @author  AO Industries, Inc.
+ */
+final class MappedTempFileResult implements BufferResult {
+
+	/**
+	 * The maximum number of characters mapped at once.
+	 */
+	private static final int MAX_MAP_CHARS = 32 * 1024 * 1024;
+
+	/**
+	 * The number of characters passed to the writer or encoder per call.
+	 * {@link Writer} and {@link Encoder} only accept {@code char[]} or {@link String},
+	 * so the mapped characters are copied through a buffer of this size.
+	 */
+	private static final int TRANSFER_CHARS = 32 * 1024;
+
+	/**
+	 * The read-only mapping of a temp file, in windows of {@link #MAX_MAP_CHARS}
+	 * characters, each mapped on first access.
+	 */
+	private static final class Mapping {
+
+		private final Path tempFile;
+		private final long length;
+		private final CharBuffer[] windows;
+
+		private Mapping(Path tempFile, long length) {
+			this.tempFile = tempFile;
+			this.length = length;
+			long count = (length + MAX_MAP_CHARS - 1) / MAX_MAP_CHARS;
+			if(count > Integer.MAX_VALUE) throw new IllegalArgumentException("Too large to map: " + length);
+			this.windows = new CharBuffer[(int)count];
+		}
+
+		/**
+		 * Gets the window at the given index, mapping it on first access.  The returned buffer
+		 * is a duplicate, so the caller may freely change its position and limit.
+		 */
+		private CharBuffer getWindow(int index) throws IOException {
+			CharBuffer window;
+			synchronized(windows) {
+				window = windows[index];
+				if(window == null) {
+					long from = (long)index * MAX_MAP_CHARS;
+					long to = Math.min(length, from + MAX_MAP_CHARS);
+					try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.READ)) {
+						window = channel
+							.map(FileChannel.MapMode.READ_ONLY, from << 1, (to - from) << 1)
+							.order(MappedTempFileWriter.BYTE_ORDER)
+							.asCharBuffer();
+					}
+					windows[index] = window;
+				}
+			}
+			return window.duplicate();
+		}
+
+		/**
+		 * Gets the characters of the window containing {@code pos}, from {@code pos} up to
+		 * {@code to} or the end of the window, whichever is first.
+		 */
+		private CharBuffer slice(long pos, long to) throws IOException {
+			int index = (int)(pos / MAX_MAP_CHARS);
+			long windowStart = (long)index * MAX_MAP_CHARS;
+			CharBuffer window = getWindow(index);
+			window.limit((int)(Math.min(to, windowStart + window.capacity()) - windowStart));
+			window.position((int)(pos - windowStart));
+			return window;
+		}
+	}
+
+	private final Mapping mapping;
+	private final long start;
+	private final long end;
+
+	MappedTempFileResult(Path tempFile, long start, long end) {
+		this(new Mapping(tempFile, end), start, end);
+	}
+
+	private MappedTempFileResult(Mapping mapping, long start, long end) {
+		assert start < end;
+		assert end <= mapping.length;
+		this.mapping = mapping;
+		this.start = start;
+		this.end = end;
+	}
+
+	@Override
+	public long getLength() {
+		return end - start;
+	}
+
+	@Override
+	public boolean isFastToString() {
+		return false;
+	}
+
+	@Override
+	public String toString() {
+		long length = end - start;
+		if(length > Integer.MAX_VALUE) throw new IllegalStateException("Too large for String: " + length);
+		char[] chars = new char[(int)length];
+		try {
+			int copied = 0;
+			for(long pos = start; pos < end; ) {
+				CharBuffer window = mapping.slice(pos, end);
+				int count = window.remaining();
+				window.get(chars, copied, count);
+				copied += count;
+				pos += count;
+			}
+		} catch(IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return new String(chars);
+	}
+
+	private void writeRange(Encoder encoder, Writer out, long off, long len) throws IOException {
+		if(off < 0 || len < 0 || off + len > (end - start)) throw new IndexOutOfBoundsException();
+		if(len > 0) {
+			char[] transfer = new char[(int)Math.min(TRANSFER_CHARS, len)];
+			long rangeEnd = start + off + len;
+			for(long pos = start + off; pos < rangeEnd; ) {
+				CharBuffer window = mapping.slice(pos, rangeEnd);
+				pos += window.remaining();
+				while(window.hasRemaining()) {
+					int count = Math.min(transfer.length, window.remaining());
+					window.get(transfer, 0, count);
+					if(encoder == null) {
+						out.write(transfer, 0, count);
+					} else {
+						encoder.write(transfer, 0, count, out);
+					}
+				}
+			}
+		}
+	}
+
+	@Override
+	public void writeTo(Writer out) throws IOException {
+		writeRange(null, out, 0, end - start);
+	}
+
+	@Override
+	public void writeTo(Writer out, long off, long len) throws IOException {
+		writeRange(null, out, off, len);
+	}
+
+	@Override
+	public void writeTo(Encoder encoder, Writer out) throws IOException {
+		writeRange(encoder, out, 0, end - start);
+	}
+
+	@Override
+	public void writeTo(Encoder encoder, Writer out, long off, long len) throws IOException {
+		writeRange(encoder, out, off, len);
+	}
+
+	private BufferResult range(long newStart, long newEnd) {
+		if(newStart == start && newEnd == end) return this;
+		if(newStart == newEnd) return EmptyResult.getInstance();
+		return new MappedTempFileResult(mapping, newStart, newEnd);
+	}
+
+	private long skipWhitespaceForward(long from, long to) throws IOException {
+		for(long pos = from; pos < to; ) {
+			long windowStart = pos / MAX_MAP_CHARS * MAX_MAP_CHARS;
+			CharBuffer window = mapping.slice(pos, to);
+			while(window.hasRemaining()) {
+				if(!Strings.isWhitespace(window.get())) return windowStart + window.position() - 1;
+			}
+			pos = windowStart + window.limit();
+		}
+		return to;
+	}
+
+	private long skipWhitespaceBackward(long from, long to) throws IOException {
+		for(long pos = to; pos > from; ) {
+			long windowStart = (pos - 1) / MAX_MAP_CHARS * MAX_MAP_CHARS;
+			long sliceStart = Math.max(from, windowStart);
+			CharBuffer window = mapping.slice(sliceStart, pos);
+			for(int i = window.limit() - 1; i >= window.position(); i--) {
+				if(!Strings.isWhitespace(window.get(i))) return windowStart + i + 1;
+			}
+			pos = sliceStart;
+		}
+		return from;
+	}
+
+	@Override
+	public BufferResult trimStart() throws IOException {
+		return range(skipWhitespaceForward(start, end), end);
+	}
+
+	@Override
+	public BufferResult trimEnd() throws IOException {
+		return range(start, skipWhitespaceBackward(start, end));
+	}
+
+	@Override
+	public BufferResult trim() throws IOException {
+		long newStart = skipWhitespaceForward(start, end);
+		return range(newStart, skipWhitespaceBackward(newStart, end));
+	}
+}
@@ -0,0 +1,200 @@
+/*
+ * ao-encoding-taglib - High performance streaming character encoding in a JSP environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-encoding-taglib.
+ *
+ * ao-encoding-taglib is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-encoding-taglib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-encoding-taglib.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.aoapps.encoding.taglib;
+
+import com.aoapps.io.buffer.BufferResult;
+import com.aoapps.io.buffer.BufferWriter;
+import com.aoapps.lang.Strings;
+import com.aoapps.tempfiles.TempFileContext;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.servlet.ServletContext;
+
+/**
+ * <p>
+ * Buffers in an initial {@link BufferWriter} until the threshold is reached,
+ * then spills to a temp file written through a {@link FileChannel}.  Characters
+ * are stored as native-order UTF-16, so the file is never encoded or decoded,
+ * and the {@linkplain #getResult() result} is replayed from a memory-mapping of
+ * the file.
+ * </p>
+ * <p>
+ * This is an alternative to {@link com.aoapps.io.buffer.AutoTempFileWriter},
+ * which reads temp files back through stream I/O.  It is used for captures
+ * only when the context-param {@link #INIT_PARAM} is <code>true</code> or the
+ * {@link CaptureBudget} is enabled, since only this writer may spill early.
+ * </p>
+ * <p>
+ * It is disabled by default, since the temp file of a result belongs to the
+ * request that created it, so the result must not be used after the request
+ * has completed.
+ * </p>
+ * <p>
+ * This class is not thread safe.
+ * </p>
+ *
+ * @author  AO Industries, Inc.
+ */
+// Java 9: Make module-private
+public final class MappedTempFileWriter extends SpillingTempFileWriter {
+
+	private static final Logger logger = Logger.getLogger(MappedTempFileWriter.class.getName());
+
+	/**
+	 * The name of the context-param that enables memory-mapped temp files, <code>false</code> by default.
+	 */
+	public static final String INIT_PARAM = MappedTempFileWriter.class.getName();
+
+	private static final String APPLICATION_ATTRIBUTE = MappedTempFileWriter.class.getName();
+
+	/**
+	 * Checks if memory-mapped temp files are enabled for the given application.
+	 */
+	public static boolean isEnabled(ServletContext servletContext) {
+		Boolean enabled = (Boolean)servletContext.getAttribute(APPLICATION_ATTRIBUTE);
+		if(enabled == null) {
+			String value = Strings.trimNullIfEmpty(servletContext.getInitParameter(INIT_PARAM));
+			enabled = Boolean.parseBoolean(value);
+			if(logger.isLoggable(Level.CONFIG)) {
+				logger.config(INIT_PARAM + "=" + enabled);
+			}
+			servletContext.setAttribute(APPLICATION_ATTRIBUTE, enabled);
+		}
+		return enabled;
+	}
+
+	/**
+	 * The number of bytes buffered before each write to the channel.
+	 */
+	private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * The byte order used in temp files.
+	 */
+	static final ByteOrder BYTE_ORDER = ByteOrder.nativeOrder();
+
+	private FileChannel channel;
+	private ByteBuffer byteBuffer;
+	private CharBuffer charBuffer;
+	private long tempFileBytes;
+
+	// Java 9: Make module-private
+	public MappedTempFileWriter(BufferWriter initialBuffer, TempFileContext tempFileContext, long tempFileThreshold) {
+		this(initialBuffer, SpillFiles.of(tempFileContext), tempFileThreshold, null);
+	}
+
+	/**
+	 * @param  reservations  the {@link CaptureBudget} reservations of the request,
+	 *                       or {@code null} to not participate in the budget
+	 *
+	 * @see  CaptureBudget#getRequestReservations(javax.servlet.ServletRequest)
+	 */
+	MappedTempFileWriter(BufferWriter initialBuffer, SpillFiles spillFiles, long tempFileThreshold, CaptureBudget.Reservations reservations) {
+		super(initialBuffer, spillFiles, tempFileThreshold, reservations);
+	}
+
+	@Override
+	String getTempFilePrefix() {
+		return "MappedTempFileWriter_";
+	}
+
+	@Override
+	void openSpill(Path tempFile) throws IOException {
+		channel = FileChannel.open(
+			tempFile,
+			StandardOpenOption.WRITE,
+			StandardOpenOption.TRUNCATE_EXISTING
+		);
+		byteBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE).order(BYTE_ORDER);
+		charBuffer = byteBuffer.asCharBuffer();
+	}
+
+	/**
+	 * Writes the buffered characters to the channel.
+	 */
+	private void drain() throws IOException {
+		int chars = charBuffer.position();
+		if(chars > 0) {
+			byteBuffer.position(0).limit(chars << 1);
+			while(byteBuffer.hasRemaining()) tempFileBytes += channel.write(byteBuffer);
+			byteBuffer.clear();
+			charBuffer.clear();
+		}
+	}
+
+	@Override
+	void spilledWrite(char c) throws IOException {
+		if(!charBuffer.hasRemaining()) drain();
+		charBuffer.put(c);
+	}
+
+	@Override
+	void spilledWrite(char[] cbuf, int off, int len) throws IOException {
+		while(len > 0) {
+			if(!charBuffer.hasRemaining()) drain();
+			int count = Math.min(charBuffer.remaining(), len);
+			charBuffer.put(cbuf, off, count);
+			off += count;
+			len -= count;
+		}
+	}
+
+	@Override
+	void spilledWrite(String str, int off, int len) throws IOException {
+		int end = off + len;
+		while(off < end) {
+			if(!charBuffer.hasRemaining()) drain();
+			int count = Math.min(charBuffer.remaining(), end - off);
+			charBuffer.put(str, off, off + count);
+			off += count;
+		}
+	}
+
+	@Override
+	void closeSpill() throws IOException {
+		try {
+			drain();
+		} finally {
+			channel.close();
+		}
+		byteBuffer = null;
+		charBuffer = null;
+	}
+
+	@Override
+	long getTempFileBytes() {
+		return tempFileBytes;
+	}
+
+	@Override
+	BufferResult newSpilledResult(Path tempFile, long length) {
+		return new MappedTempFileResult(tempFile, 0, length);
+	}
+}
@@ -1,6 +1,6 @@
 /*
  * ao-encoding-taglib - High performance streaming character encoding in a JSP environment.
- * Copyright (C) 2013, 2016, 2017, 2018, 2020, 2021  AO Industries, Inc.
+ * Copyright (C) 2013, 2016, 2017, 2018, 2020, 2021, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -23,7 +23,9 @@
 package com.aoapps.encoding.taglib;
 
 import com.aoapps.collections.MinimalList;
+import com.aoapps.lang.i18n.Resources;
 import java.util.List;
+import java.util.ResourceBundle;
 import javax.servlet.jsp.tagext.TagData;
 import javax.servlet.jsp.tagext.TagExtraInfo;
 import javax.servlet.jsp.tagext.ValidationMessage;
@@ -33,10 +35,21 @@ import javax.servlet.jsp.tagext.ValidationMessage;
  */
 public class OutTagTEI extends TagExtraInfo {
 
+	private static final Resources RESOURCES = Resources.getResources(ResourceBundle::getBundle, OutTagTEI.class);
+
 	@Override
 	public ValidationMessage[] validate(TagData data) {
 		List<ValidationMessage> messages = MinimalList.emptyList();
 		messages = TeiUtils.validateMediaType(data, messages);
+		if((data.getAttribute("value") == null) == (data.getAttribute("items") == null)) {
+			messages = MinimalList.add(
+				messages,
+				new ValidationMessage(
+					data.getId(),
+					RESOURCES.getMessage("valueOrItems")
+				)
+			);
+		}
 		return messages.isEmpty() ? null : messages.toArray(new ValidationMessage[messages.size()]);
 	}
 }
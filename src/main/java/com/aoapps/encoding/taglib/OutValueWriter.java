@@ -0,0 +1,412 @@
+/*
+ * ao-encoding-taglib - High performance streaming character encoding in a JSP environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-encoding-taglib.
+ *
+ * ao-encoding-taglib is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-encoding-taglib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-encoding-taglib.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.aoapps.encoding.taglib;
+
+import com.aoapps.lang.Coercion;
+import com.aoapps.lang.io.Writable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.stream.BaseStream;
+
+/**
+ * <p>
+ * Writes the values of {@link OutTag}, with direct paths for the most common types
+ * that avoid the intermediate {@link String} and type dispatch of
+ * {@link Coercion#write(java.lang.Object, java.io.Writer)}.  The output is the same
+ * as {@link Coercion}, except a {@link Reader} is streamed instead of written by its
+ * {@link Reader#toString()}.
+ * </p>
+ * <p>
+ * Large values of <code>char[]</code>, {@link Reader}, and {@link Writable} that is not
+ * {@linkplain Writable#isFastToString() fast toString} are written in chunks, never
+ * as a single {@link String}, so memory use does not depend on the size of the value.
+ * Chunks end before a trailing high surrogate, so encoders never see a surrogate pair
+ * split between writes.
+ * </p>
+ *
+ * @author  AO Industries, Inc.
+ */
+// Java 9: Make module-private
+public final class OutValueWriter {
+
+	/**
+	 * The number of characters in the longest decimal long, {@link Long#MIN_VALUE}.
+	 */
+	private static final int MAX_LONG_CHARS = 20;
+
+	/**
+	 * The number of characters copied from a {@link CharSequence} or {@link Reader},
+	 * or written from a <code>char[]</code>, at a time.
+	 */
+	private static final int BUFFER_SIZE = 1024;
+
+	/**
+	 * The buffer of each thread, {@code null} while taken, so writes nested through the output
+	 * never share a buffer.
+	 */
+	private static final ThreadLocal<char[]> buffers = new ThreadLocal<>();
+
+	private static char[] takeBuffer() {
+		char[] buffer = buffers.get();
+		if(buffer == null) return new char[BUFFER_SIZE];
+		buffers.set(null);
+		return buffer;
+	}
+
+	private static void returnBuffer(char[] buffer) {
+		buffers.set(buffer);
+	}
+
+	/**
+	 * Gets the number of characters to write at a time, ending before a high surrogate
+	 * when more characters follow.
+	 */
+	private static int getChunkSize(int remaining, CharSequence csq, int off) {
+		if(remaining <= BUFFER_SIZE) return remaining;
+		return Character.isHighSurrogate(csq.charAt(off + BUFFER_SIZE - 1)) ? (BUFFER_SIZE - 1) : BUFFER_SIZE;
+	}
+
+	/**
+	 * Enum classes with the default {@link Enum#toString()}, which is their {@linkplain Enum#name() name}.
+	 * Others may localize or otherwise compute their text, so must not be cached.
+	 */
+	private static final ClassValue<Boolean> isNameToString = new ClassValue<Boolean>() {
+		@Override
+		protected Boolean computeValue(Class<?> type) {
+			try {
+				return type.getMethod("toString").getDeclaringClass() == Enum.class;
+			} catch(NoSuchMethodException e) {
+				return false;
+			}
+		}
+	};
+
+	/**
+	 * Gets the constant text of an enum, when it is known to be its name.
+	 *
+	 * @return  the name or {@code null} when not known to be the result of {@link Enum#toString()}
+	 */
+	private static String getEnumName(Object value) {
+		if(
+			value instanceof Enum
+			&& !(value instanceof Writable)
+			&& isNameToString.get(value.getClass())
+		) {
+			return ((Enum<?>)value).name();
+		}
+		return null;
+	}
+
+	/**
+	 * Writes a long in decimal without an intermediate {@link String}, rendered into the buffer of this thread.
+	 */
+	private static void writeLong(long value, Writer out) throws IOException {
+		char[] buffer = takeBuffer();
+		try {
+			writeLong(value, buffer, out);
+		} finally {
+			returnBuffer(buffer);
+		}
+	}
+
+	/**
+	 * Writes a long in decimal, rendered into the first {@link #MAX_LONG_CHARS} characters of the given buffer.
+	 */
+	private static void writeLong(long value, char[] buffer, Writer out) throws IOException {
+		int pos = MAX_LONG_CHARS;
+		boolean negative = value < 0;
+		// Accumulate in the negative range, which includes Long.MIN_VALUE
+		if(!negative) value = -value;
+		do {
+			buffer[--pos] = (char)('0' - (value % 10));
+			value /= 10;
+		} while(value != 0);
+		if(negative) buffer[--pos] = '-';
+		out.write(buffer, pos, MAX_LONG_CHARS - pos);
+	}
+
+	/**
+	 * Writes a character sequence in bulk without an intermediate {@link String}.
+	 */
+	private static void writeChars(CharSequence csq, int length, Writer out) throws IOException {
+		char[] buffer = takeBuffer();
+		try {
+			for(int off = 0; off < length; ) {
+				int count = getChunkSize(length - off, csq, off);
+				if(csq instanceof StringBuilder) {
+					((StringBuilder)csq).getChars(off, off + count, buffer, 0);
+				} else {
+					((StringBuffer)csq).getChars(off, off + count, buffer, 0);
+				}
+				out.write(buffer, 0, count);
+				off += count;
+			}
+		} finally {
+			returnBuffer(buffer);
+		}
+	}
+
+	/**
+	 * Writes a <code>char[]</code> in slices, so encoders work on bounded runs of characters.
+	 */
+	private static void writeSlices(char[] chars, Writer out) throws IOException {
+		int length = chars.length;
+		for(int off = 0; off < length; ) {
+			int count = length - off;
+			if(count > BUFFER_SIZE) {
+				count = Character.isHighSurrogate(chars[off + BUFFER_SIZE - 1]) ? (BUFFER_SIZE - 1) : BUFFER_SIZE;
+			}
+			out.write(chars, off, count);
+			off += count;
+		}
+	}
+
+	/**
+	 * Drains a reader through a reused buffer.  The reader is not closed.
+	 */
+	private static void writeReader(Reader in, Writer out) throws IOException {
+		char[] buffer = takeBuffer();
+		try {
+			// The number of characters carried over from the previous read
+			int start = 0;
+			int count;
+			while((count = in.read(buffer, start, BUFFER_SIZE - start)) != -1) {
+				int end = start + count;
+				if(end > 0 && Character.isHighSurrogate(buffer[end - 1])) {
+					// Held back until its low surrogate is read
+					if(end > 1) out.write(buffer, 0, end - 1);
+					buffer[0] = buffer[end - 1];
+					start = 1;
+				} else {
+					out.write(buffer, 0, end);
+					start = 0;
+				}
+			}
+			if(start != 0) out.write(buffer, 0, start);
+		} finally {
+			returnBuffer(buffer);
+		}
+	}
+
+	/**
+	 * Writes a value the same as {@link Coercion#write(java.lang.Object, java.io.Writer)}.
+	 */
+	public static void write(Object value, Writer out) throws IOException {
+		if(value instanceof String) {
+			out.write((String)value);
+		} else if(
+			value instanceof Integer
+			|| value instanceof Long
+			|| value instanceof Short
+			|| value instanceof Byte
+		) {
+			writeLong(((Number)value).longValue(), out);
+		} else if(value instanceof Boolean) {
+			out.write((Boolean)value ? "true" : "false");
+		} else if(value instanceof StringBuilder) {
+			writeChars((StringBuilder)value, ((StringBuilder)value).length(), out);
+		} else if(value instanceof StringBuffer) {
+			// Synchronized on the buffer so its length remains consistent while copied
+			StringBuffer sb = (StringBuffer)value;
+			synchronized(sb) {
+				writeChars(sb, sb.length(), out);
+			}
+		} else if(value instanceof char[]) {
+			writeSlices((char[])value, out);
+		} else if(value instanceof Reader) {
+			writeReader((Reader)value, out);
+		} else if(value instanceof Writable && !((Writable)value).isFastToString()) {
+			((Writable)value).writeTo(out);
+		} else {
+			String name = getEnumName(value);
+			if(name != null) {
+				out.write(name);
+			} else {
+				Coercion.write(value, out);
+			}
+		}
+	}
+
+	/**
+	 * Writes each of the items, with the separator between them.  Each of the items of an {@link Iterable},
+	 * {@link Iterator}, {@link Enumeration}, {@link BaseStream}, or array is written, while any other
+	 * object is written as a single item.
+	 * {@code null} items are skipped, along with their separator.
+	 * A stream is closed once written.
+	 *
+	 * @param  separator  written between items, or {@code null} for no separator
+	 */
+	public static void writeItems(Object items, Object separator, Writer out) throws IOException {
+		if(items instanceof Iterable) {
+			writeItems(((Iterable<?>)items).iterator(), separator, out);
+		} else if(items instanceof Iterator) {
+			writeItems((Iterator<?>)items, separator, out);
+		} else if(items instanceof Enumeration) {
+			writeItems(asIterator((Enumeration<?>)items), separator, out);
+		} else if(items instanceof BaseStream) {
+			// Closed once written, releasing any resources, such as the lines of a file
+			try(BaseStream<?, ?> stream = (BaseStream<?, ?>)items) {
+				writeItems(stream.iterator(), separator, out);
+			}
+		} else if(items instanceof Object[]) {
+			writeItems(Arrays.asList((Object[])items).iterator(), separator, out);
+		} else if(items.getClass().isArray()) {
+			writeElements(items, separator, out);
+		} else {
+			write(items, out);
+		}
+	}
+
+	private static void writeItems(Iterator<?> iter, Object separator, Writer out) throws IOException {
+		boolean first = true;
+		while(iter.hasNext()) {
+			Object item = iter.next();
+			if(item != null) {
+				if(first) {
+					first = false;
+				} else if(separator != null) {
+					write(separator, out);
+				}
+				write(item, out);
+			}
+		}
+	}
+
+	/**
+	 * Adapts an enumeration without copying its elements.
+	 */
+	private static <E> Iterator<E> asIterator(Enumeration<E> e) {
+		return new Iterator<E>() {
+			@Override
+			public boolean hasNext() {
+				return e.hasMoreElements();
+			}
+
+			@Override
+			public E next() {
+				return e.nextElement();
+			}
+		};
+	}
+
+	/**
+	 * Writes each element of a primitive array the same as its boxed value, without boxing.
+	 *
+	 * @param  separator  written between elements, or {@code null} for no separator
+	 *
+	 * @throws  IllegalArgumentException  when not a primitive array
+	 */
+	static void writeElements(Object array, Object separator, Writer out) throws IOException {
+		if(array instanceof int[]) {
+			int[] elements = (int[])array;
+			char[] buffer = takeBuffer();
+			try {
+				for(int i = 0; i < elements.length; i++) {
+					if(i > 0 && separator != null) write(separator, out);
+					writeLong(elements[i], buffer, out);
+				}
+			} finally {
+				returnBuffer(buffer);
+			}
+		} else if(array instanceof long[]) {
+			long[] elements = (long[])array;
+			char[] buffer = takeBuffer();
+			try {
+				for(int i = 0; i < elements.length; i++) {
+					if(i > 0 && separator != null) write(separator, out);
+					writeLong(elements[i], buffer, out);
+				}
+			} finally {
+				returnBuffer(buffer);
+			}
+		} else if(array instanceof char[]) {
+			char[] elements = (char[])array;
+			for(int i = 0; i < elements.length; i++) {
+				if(i > 0 && separator != null) write(separator, out);
+				out.write(elements[i]);
+			}
+		} else if(array instanceof byte[]) {
+			byte[] elements = (byte[])array;
+			char[] buffer = takeBuffer();
+			try {
+				for(int i = 0; i < elements.length; i++) {
+					if(i > 0 && separator != null) write(separator, out);
+					writeLong(elements[i], buffer, out);
+				}
+			} finally {
+				returnBuffer(buffer);
+			}
+		} else if(array instanceof short[]) {
+			short[] elements = (short[])array;
+			char[] buffer = takeBuffer();
+			try {
+				for(int i = 0; i < elements.length; i++) {
+					if(i > 0 && separator != null) write(separator, out);
+					writeLong(elements[i], buffer, out);
+				}
+			} finally {
+				returnBuffer(buffer);
+			}
+		} else if(array instanceof boolean[]) {
+			boolean[] elements = (boolean[])array;
+			for(int i = 0; i < elements.length; i++) {
+				if(i > 0 && separator != null) write(separator, out);
+				out.write(elements[i] ? "true" : "false");
+			}
+		} else if(array instanceof double[]) {
+			double[] elements = (double[])array;
+			for(int i = 0; i < elements.length; i++) {
+				if(i > 0 && separator != null) write(separator, out);
+				out.write(Double.toString(elements[i]));
+			}
+		} else if(array instanceof float[]) {
+			float[] elements = (float[])array;
+			for(int i = 0; i < elements.length; i++) {
+				if(i > 0 && separator != null) write(separator, out);
+				out.write(Float.toString(elements[i]));
+			}
+		} else {
+			throw new IllegalArgumentException("Not a primitive array: " + array.getClass().getName());
+		}
+	}
+
+	/**
+	 * Converts a value to a {@link String} the same as {@link Coercion#toString(java.lang.Object)}.
+	 */
+	public static String toString(Object value) {
+		if(value instanceof String) return (String)value;
+		if(value instanceof Boolean) return (Boolean)value ? "true" : "false";
+		String name = getEnumName(value);
+		return (name != null) ? name : Coercion.toString(value);
+	}
+
+	/**
+	 * Make no instances.
+	 */
+	private OutValueWriter() {
+	}
+}
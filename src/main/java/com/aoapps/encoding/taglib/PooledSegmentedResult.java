@@ -0,0 +1,160 @@
+/*
+ * ao-encoding-taglib - High performance streaming character encoding in a JSP environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-encoding-taglib.
+ *
+ * ao-encoding-taglib is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-encoding-taglib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-encoding-taglib.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.aoapps.encoding.taglib;
+
+import com.aoapps.io.buffer.BufferResult;
+import com.aoapps.io.buffer.EmptyResult;
+import com.aoapps.lang.Strings;
+import com.aoapps.lang.io.Encoder;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * The result of a {@link PooledSegmentedWriter}, a range of its chunks.  Trimming
+ * shares the chunks.  The result is only valid until the request is destroyed.
+ *
+ * @author  AO Industries, Inc.
+ */
+final class PooledSegmentedResult implements BufferResult {
+
+	private final char[][] chunks;
+	private final int chunkSize;
+	private final long start;
+	private final long end;
+
+	private String toStringCache;
+
+	PooledSegmentedResult(char[][] chunks, int chunkSize, long start, long end) {
+		assert start < end;
+		this.chunks = chunks;
+		this.chunkSize = chunkSize;
+		this.start = start;
+		this.end = end;
+	}
+
+	private char charAt(long pos) {
+		return chunks[(int)(pos / chunkSize)][(int)(pos % chunkSize)];
+	}
+
+	@Override
+	public long getLength() {
+		return end - start;
+	}
+
+	/**
+	 * {@link #toString()} copies every chunk into a new string.
+	 */
+	@Override
+	public boolean isFastToString() {
+		return false;
+	}
+
+	@Override
+	public String toString() {
+		if(toStringCache == null) {
+			long length = end - start;
+			if(length > Integer.MAX_VALUE) throw new IllegalStateException("Too large for String: " + length);
+			char[] chars = new char[(int)length];
+			long pos = start;
+			int copied = 0;
+			while(copied < length) {
+				int off = (int)(pos % chunkSize);
+				int count = (int)Math.min(chunkSize - off, length - copied);
+				System.arraycopy(chunks[(int)(pos / chunkSize)], off, chars, copied, count);
+				pos += count;
+				copied += count;
+			}
+			toStringCache = new String(chars);
+		}
+		return toStringCache;
+	}
+
+	/**
+	 * Writes each chunk of the range in a single call.
+	 */
+	private void writeRange(Encoder encoder, Writer out, long off, long len) throws IOException {
+		if(off < 0 || len < 0 || off + len > (end - start)) throw new IndexOutOfBoundsException();
+		long pos = start + off;
+		while(len > 0) {
+			int chunkOff = (int)(pos % chunkSize);
+			int count = (int)Math.min(chunkSize - chunkOff, len);
+			char[] chunk = chunks[(int)(pos / chunkSize)];
+			if(encoder == null) {
+				out.write(chunk, chunkOff, count);
+			} else {
+				encoder.write(chunk, chunkOff, count, out);
+			}
+			pos += count;
+			len -= count;
+		}
+	}
+
+	@Override
+	public void writeTo(Writer out) throws IOException {
+		writeRange(null, out, 0, end - start);
+	}
+
+	@Override
+	public void writeTo(Writer out, long off, long len) throws IOException {
+		writeRange(null, out, off, len);
+	}
+
+	@Override
+	public void writeTo(Encoder encoder, Writer out) throws IOException {
+		writeRange(encoder, out, 0, end - start);
+	}
+
+	@Override
+	public void writeTo(Encoder encoder, Writer out, long off, long len) throws IOException {
+		writeRange(encoder, out, off, len);
+	}
+
+	private BufferResult range(long newStart, long newEnd) {
+		if(newStart == start && newEnd == end) return this;
+		if(newStart == newEnd) return EmptyResult.getInstance();
+		return new PooledSegmentedResult(chunks, chunkSize, newStart, newEnd);
+	}
+
+	@Override
+	public BufferResult trimStart() {
+		long newStart = start;
+		while(newStart < end && Strings.isWhitespace(charAt(newStart))) newStart++;
+		return range(newStart, end);
+	}
+
+	@Override
+	public BufferResult trimEnd() {
+		long newEnd = end;
+		while(newEnd > start && Strings.isWhitespace(charAt(newEnd - 1))) newEnd--;
+		return range(start, newEnd);
+	}
+
+	@Override
+	public BufferResult trim() {
+		long newStart = start;
+		while(newStart < end && Strings.isWhitespace(charAt(newStart))) newStart++;
+		long newEnd = end;
+		while(newEnd > newStart && Strings.isWhitespace(charAt(newEnd - 1))) newEnd--;
+		return range(newStart, newEnd);
+	}
+}
@@ -0,0 +1,234 @@
+/*
+ * ao-encoding-taglib - High performance streaming character encoding in a JSP environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-encoding-taglib.
+ *
+ * ao-encoding-taglib is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-encoding-taglib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-encoding-taglib.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.aoapps.encoding.taglib;
+
+import com.aoapps.io.buffer.BufferResult;
+import com.aoapps.io.buffer.BufferWriter;
+import com.aoapps.io.buffer.EmptyResult;
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Captures into fixed-size chunks, avoiding the growth and copying of a
+ * doubling buffer.  When taken from a {@link CharChunkPool}, the chunks are
+ * returned to the pool when the request is destroyed, which also invalidates the
+ * {@linkplain #getResult() result}.  Otherwise, the chunks are allocated as
+ * needed and are only kept for reuse when {@linkplain #reset() reset}.
+ * <p>
+ * This class is not thread safe.
+ * </p>
+ *
+ * @author  AO Industries, Inc.
+ */
+// Java 9: Make module-private
+public final class PooledSegmentedWriter extends BufferWriter implements ReusableCaptureWriter.Resettable {
+
+	/**
+	 * The pool chunks are taken from, or {@code null} to allocate chunks.
+	 */
+	private final CharChunkPool pool;
+
+	/**
+	 * The chunks to be returned to the pool, or {@code null} when not pooled.
+	 */
+	private final List<char[]> requestChunks;
+	private final int chunkSize;
+
+	/**
+	 * The chunks taken from the pool or allocated, which are kept for reuse when {@linkplain #reset() reset}.
+	 */
+	private char[][] chunks = new char[4][];
+	private int numChunks;
+
+	/**
+	 * The index of the current chunk, {@code -1} before the first write.
+	 */
+	private int chunkIndex = -1;
+
+	/**
+	 * The current chunk, or {@code null} before the first write.
+	 */
+	private char[] current;
+
+	/**
+	 * The number of characters used in the last chunk.
+	 */
+	private int currentLen;
+
+	private long length;
+	private boolean isClosed;
+	private BufferResult result;
+
+	/**
+	 * @param  requestChunks  the chunks to be returned to the pool when the request is destroyed
+	 */
+	PooledSegmentedWriter(CharChunkPool pool, List<char[]> requestChunks) {
+		this.pool = pool;
+		this.requestChunks = requestChunks;
+		this.chunkSize = pool.getChunkSize();
+	}
+
+	/**
+	 * Allocates chunks of the given size instead of taking them from a pool.
+	 */
+	PooledSegmentedWriter(int chunkSize) {
+		this.pool = null;
+		this.requestChunks = null;
+		this.chunkSize = chunkSize;
+	}
+
+	private void nextChunk() {
+		char[] chunk;
+		if(++chunkIndex < numChunks) {
+			chunk = chunks[chunkIndex];
+		} else {
+			if(pool == null) {
+				chunk = new char[chunkSize];
+			} else {
+				chunk = pool.take();
+				requestChunks.add(chunk);
+			}
+			if(numChunks == chunks.length) chunks = Arrays.copyOf(chunks, numChunks << 1);
+			chunks[numChunks++] = chunk;
+		}
+		current = chunk;
+		currentLen = 0;
+	}
+
+	/**
+	 * Reopens for another capture, reusing the chunks already taken.
+	 * The previous {@linkplain #getResult() result} is invalid once reset.
+	 */
+	@Override
+	public void reset() {
+		chunkIndex = -1;
+		current = null;
+		currentLen = 0;
+		length = 0;
+		isClosed = false;
+		result = null;
+	}
+
+	@Override
+	public void write(int c) throws IOException {
+		if(isClosed) throw new ClosedChannelException();
+		if(current == null || currentLen == chunkSize) nextChunk();
+		current[currentLen++] = (char)c;
+		length++;
+	}
+
+	@Override
+	public void write(char[] cbuf) throws IOException {
+		write(cbuf, 0, cbuf.length);
+	}
+
+	@Override
+	public void write(char[] cbuf, int off, int len) throws IOException {
+		if(isClosed) throw new ClosedChannelException();
+		if(off < 0 || len < 0 || off + len > cbuf.length) throw new IndexOutOfBoundsException();
+		while(len > 0) {
+			if(current == null || currentLen == chunkSize) nextChunk();
+			int count = Math.min(chunkSize - currentLen, len);
+			System.arraycopy(cbuf, off, current, currentLen, count);
+			currentLen += count;
+			length += count;
+			off += count;
+			len -= count;
+		}
+	}
+
+	@Override
+	public void write(String str) throws IOException {
+		write(str, 0, str.length());
+	}
+
+	@Override
+	public void write(String str, int off, int len) throws IOException {
+		if(isClosed) throw new ClosedChannelException();
+		if(off < 0 || len < 0 || off + len > str.length()) throw new IndexOutOfBoundsException();
+		while(len > 0) {
+			if(current == null || currentLen == chunkSize) nextChunk();
+			int count = Math.min(chunkSize - currentLen, len);
+			str.getChars(off, off + count, current, currentLen);
+			currentLen += count;
+			length += count;
+			off += count;
+			len -= count;
+		}
+	}
+
+	@Override
+	public PooledSegmentedWriter append(CharSequence csq) throws IOException {
+		if(csq == null) csq = "null";
+		return append(csq, 0, csq.length());
+	}
+
+	@Override
+	public PooledSegmentedWriter append(CharSequence csq, int start, int end) throws IOException {
+		if(csq == null) csq = "null";
+		if(csq instanceof String) {
+			write((String)csq, start, end - start);
+		} else {
+			if(start < 0 || start > end || end > csq.length()) throw new IndexOutOfBoundsException();
+			for(int i = start; i < end; i++) write(csq.charAt(i));
+		}
+		return this;
+	}
+
+	@Override
+	public PooledSegmentedWriter append(char c) throws IOException {
+		write(c);
+		return this;
+	}
+
+	@Override
+	public void flush() {
+		// Nothing to flush
+	}
+
+	@Override
+	public void close() {
+		isClosed = true;
+	}
+
+	@Override
+	public long getLength() {
+		return length;
+	}
+
+	@Override
+	public String toString() {
+		return "PooledSegmentedWriter(length=" + length + ", chunks=" + numChunks + ")";
+	}
+
+	@Override
+	public BufferResult getResult() throws IllegalStateException {
+		if(!isClosed) throw new IllegalStateException();
+		if(result == null) {
+			result = (length == 0) ? EmptyResult.getInstance() : new PooledSegmentedResult(chunks, chunkSize, 0, length);
+		}
+		return result;
+	}
+}
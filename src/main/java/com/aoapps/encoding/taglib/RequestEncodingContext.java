@@ -29,7 +29,8 @@ import javax.servlet.ServletRequest;
 
 /**
  * Since the parent tag is not available from included JSP pages, the current
- * content type and validator is maintained as a request attribute.
+ * content type and validator is maintained in a per-request
+ * {@link RequestEncodingContextStack}.
  * These are updated for each of the nested tag levels.
  *
  * @author  AO Industries, Inc.
@@ -41,16 +42,29 @@ import javax.servlet.ServletRequest;
 // Java 9: Make module-private
 public class RequestEncodingContext {
 
-	private static final String CURRENT_CONTEXT_REQUEST_ATTRIBUTE = RequestEncodingContext.class.getName() + ".currentContext";
-
+	/**
+	 * Gets the context on the top of the request's {@link RequestEncodingContextStack}.
+	 */
 	// Java 9: Make module-private
 	public static RequestEncodingContext getCurrentContext(ServletRequest request) {
-		return (RequestEncodingContext)request.getAttribute(CURRENT_CONTEXT_REQUEST_ATTRIBUTE);
+		RequestEncodingContextStack stack = RequestEncodingContextStack.getInstanceIfExists(request);
+		return stack == null ? null : stack.peek();
 	}
 
+	/**
+	 * Replaces the context on the top of the request's {@link RequestEncodingContextStack}.
+	 * Tags that can bracket their body should prefer
+	 * {@link RequestEncodingContextStack#push(com.aoapps.encoding.taglib.RequestEncodingContext)}
+	 * and {@link RequestEncodingContextStack#pop()}.
+	 */
 	// Java 9: Make module-private
 	public static void setCurrentContext(ServletRequest request, RequestEncodingContext context) {
-		request.setAttribute(CURRENT_CONTEXT_REQUEST_ATTRIBUTE, context);
+		if(context == null) {
+			RequestEncodingContextStack stack = RequestEncodingContextStack.getInstanceIfExists(request);
+			if(stack != null) stack.set(null);
+		} else {
+			RequestEncodingContextStack.getInstance(request).set(context);
+		}
 	}
 
 	/**
@@ -95,4 +109,28 @@ public class RequestEncodingContext {
 		this.contentType = NullArgumentException.checkNotNull(contentType, "contentType");
 		this.validMediaInput = NullArgumentException.checkNotNull(validMediaInput, "validMediaInput");
 	}
+
+	private static final int NUM_MEDIA_TYPES = MediaType.values().length;
+
+	/**
+	 * Pass-through contexts sharing this validator, indexed by {@link MediaType#ordinal()}.
+	 * Created on first use.  Races are benign since contexts are immutable.
+	 */
+	private RequestEncodingContext[] passThroughs;
+
+	/**
+	 * Gets a context of the given content type that shares this context's validator,
+	 * used when a nested tag passes-through to a parent that is already validating
+	 * its type.  Instances are reused instead of allocated per tag.
+	 */
+	// Java 9: Make module-private
+	public RequestEncodingContext passThrough(MediaType newContentType) {
+		if(newContentType == contentType) return this;
+		RequestEncodingContext[] cache = passThroughs;
+		if(cache == null) passThroughs = cache = new RequestEncodingContext[NUM_MEDIA_TYPES];
+		int ordinal = newContentType.ordinal();
+		RequestEncodingContext passThrough = cache[ordinal];
+		if(passThrough == null) cache[ordinal] = passThrough = new RequestEncodingContext(newContentType, validMediaInput);
+		return passThrough;
+	}
 }
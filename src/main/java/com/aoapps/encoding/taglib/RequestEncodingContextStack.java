@@ -0,0 +1,123 @@
+/*
+ * ao-encoding-taglib - High performance streaming character encoding in a JSP environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-encoding-taglib.
+ *
+ * ao-encoding-taglib is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-encoding-taglib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-encoding-taglib.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.aoapps.encoding.taglib;
+
+import java.util.Arrays;
+import javax.servlet.ServletRequest;
+
+/**
+ * The per-request stack of {@link RequestEncodingContext}.  The stack is stored
+ * in a single request attribute that is set once per request, after which tags
+ * push and pop their contexts without further request attribute updates.
+ * <p>
+ * The {@link RequestEncodingContext#getCurrentContext(javax.servlet.ServletRequest)}
+ * and {@link RequestEncodingContext#setCurrentContext(javax.servlet.ServletRequest, com.aoapps.encoding.taglib.RequestEncodingContext)}
+ * accessors operate on the top of this stack.
+ * </p>
+ * <p>
+ * This class is not thread-safe, as it is used only by the thread processing
+ * the request.
+ * </p>
+ *
+ * @author  AO Industries, Inc.
+ */
+// Java 9: Make module-private
+public final class RequestEncodingContextStack {
+
+	private static final String REQUEST_ATTRIBUTE = RequestEncodingContextStack.class.getName();
+
+	/**
+	 * The initial capacity, which covers typical nesting without growth.
+	 */
+	private static final int INITIAL_CAPACITY = 8;
+
+	/**
+	 * Gets the stack for the given request, creating it when first needed.
+	 */
+	// Java 9: Make module-private
+	public static RequestEncodingContextStack getInstance(ServletRequest request) {
+		RequestEncodingContextStack stack = (RequestEncodingContextStack)request.getAttribute(REQUEST_ATTRIBUTE);
+		if(stack == null) {
+			stack = new RequestEncodingContextStack();
+			request.setAttribute(REQUEST_ATTRIBUTE, stack);
+		}
+		return stack;
+	}
+
+	/**
+	 * Gets the stack for the given request, without creating it.
+	 *
+	 * @return  The stack or {@code null} when no context has been set on the request
+	 */
+	static RequestEncodingContextStack getInstanceIfExists(ServletRequest request) {
+		return (RequestEncodingContextStack)request.getAttribute(REQUEST_ATTRIBUTE);
+	}
+
+	private RequestEncodingContext[] contexts = new RequestEncodingContext[INITIAL_CAPACITY];
+	private int size;
+
+	private RequestEncodingContextStack() {
+	}
+
+	/**
+	 * Gets the current context.
+	 *
+	 * @return  The context on the top of the stack or {@code null} when empty
+	 */
+	// Java 9: Make module-private
+	public RequestEncodingContext peek() {
+		return size == 0 ? null : contexts[size - 1];
+	}
+
+	/**
+	 * Pushes a new current context.  Each push must be matched by a call to
+	 * {@link #pop()}, typically in a {@code finally} block.
+	 */
+	// Java 9: Make module-private
+	public void push(RequestEncodingContext context) {
+		if(size == contexts.length) contexts = Arrays.copyOf(contexts, size << 1);
+		contexts[size++] = context;
+	}
+
+	/**
+	 * Restores the context that was current before the matching {@link #push(com.aoapps.encoding.taglib.RequestEncodingContext)}.
+	 */
+	// Java 9: Make module-private
+	public void pop() {
+		if(size == 0) throw new IllegalStateException("RequestEncodingContextStack is empty");
+		contexts[--size] = null;
+	}
+
+	/**
+	 * Replaces the current context, consistent with the former behavior of a
+	 * request attribute.  Setting {@code null} on an empty stack has no effect.
+	 */
+	// Java 9: Make module-private
+	public void set(RequestEncodingContext context) {
+		if(size == 0) {
+			if(context != null) push(context);
+		} else {
+			contexts[size - 1] = context;
+		}
+	}
+}
@@ -0,0 +1,183 @@
+/*
+ * ao-encoding-taglib - High performance streaming character encoding in a JSP environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-encoding-taglib.
+ *
+ * ao-encoding-taglib is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-encoding-taglib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-encoding-taglib.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.aoapps.encoding.taglib;
+
+import com.aoapps.io.buffer.BufferResult;
+import com.aoapps.io.buffer.BufferWriter;
+import java.io.IOException;
+import javax.servlet.ServletRequest;
+
+/**
+ * <p>
+ * A capture buffer that may be {@linkplain #reset() reset} and written again,
+ * so iterating tags can keep the same buffer, and the validator and encoding
+ * context that wrap it, for every evaluation of their body.
+ * </p>
+ * <p>
+ * Each capture starts in an in-heap buffer, wrapped to spill to a temp file as
+ * {@linkplain EncodingBufferedTag#newBufferWriter(javax.servlet.ServletRequest, long, boolean) configured}.
+ * When reset, the in-heap buffer is reset through {@link Resettable}, keeping
+ * its chunks for the next capture, and is wrapped anew.  The in-heap buffer
+ * allocates its own chunks when the {@link CharChunkPool} is not enabled.
+ * </p>
+ * <p>
+ * This class is not thread safe.
+ * </p>
+ *
+ * @author  AO Industries, Inc.
+ */
+// Java 9: Make module-private
+public final class ReusableCaptureWriter extends BufferWriter {
+
+	/**
+	 * An in-heap capture buffer that may be reopened for another capture.
+	 */
+	// Java 9: Make module-private
+	public static interface Resettable {
+
+		/**
+		 * Reopens for another capture, keeping any storage already allocated.
+		 * The previous {@linkplain BufferWriter#getResult() result} is invalid once reset.
+		 */
+		void reset();
+	}
+
+	private final ServletRequest request;
+	private final long tempFileThreshold;
+	private final boolean compressTempFile;
+
+	/**
+	 * The in-heap buffer of the current capture.
+	 */
+	private BufferWriter captureBuffer;
+
+	/**
+	 * The current capture buffer, wrapped to spill to a temp file.
+	 */
+	private BufferWriter buffer;
+
+	/**
+	 * @see  EncodingBufferedTag#newBufferWriter(javax.servlet.ServletRequest, long, boolean)
+	 */
+	// Java 9: Make module-private
+	public ReusableCaptureWriter(ServletRequest request, long tempFileThreshold, boolean compressTempFile) {
+		this.request = request;
+		this.tempFileThreshold = tempFileThreshold;
+		this.compressTempFile = compressTempFile;
+		this.captureBuffer = EncodingBufferedTag.newCaptureBuffer(request, true);
+		this.buffer = EncodingBufferedTag.wrapCaptureBuffer(request, captureBuffer, tempFileThreshold, compressTempFile);
+	}
+
+	/**
+	 * Gets the buffer of the current capture.
+	 */
+	BufferWriter getBuffer() {
+		return buffer;
+	}
+
+	/**
+	 * Prepares for the next capture.  The {@linkplain #getResult() result} of the
+	 * previous capture is invalid once reset.
+	 */
+	// Java 9: Make module-private
+	public void reset() {
+		if(buffer instanceof SpillingTempFileWriter) {
+			// The previous result is no longer used
+			((SpillingTempFileWriter)buffer).discard();
+		}
+		if(captureBuffer instanceof Resettable) {
+			((Resettable)captureBuffer).reset();
+		} else {
+			captureBuffer = EncodingBufferedTag.newCaptureBuffer(request, true);
+		}
+		buffer = EncodingBufferedTag.wrapCaptureBuffer(request, captureBuffer, tempFileThreshold, compressTempFile);
+	}
+
+	@Override
+	public void write(int c) throws IOException {
+		buffer.write(c);
+	}
+
+	@Override
+	public void write(char[] cbuf) throws IOException {
+		buffer.write(cbuf);
+	}
+
+	@Override
+	public void write(char[] cbuf, int off, int len) throws IOException {
+		buffer.write(cbuf, off, len);
+	}
+
+	@Override
+	public void write(String str) throws IOException {
+		buffer.write(str);
+	}
+
+	@Override
+	public void write(String str, int off, int len) throws IOException {
+		buffer.write(str, off, len);
+	}
+
+	@Override
+	public ReusableCaptureWriter append(CharSequence csq) throws IOException {
+		buffer.append(csq);
+		return this;
+	}
+
+	@Override
+	public ReusableCaptureWriter append(CharSequence csq, int start, int end) throws IOException {
+		buffer.append(csq, start, end);
+		return this;
+	}
+
+	@Override
+	public ReusableCaptureWriter append(char c) throws IOException {
+		buffer.append(c);
+		return this;
+	}
+
+	@Override
+	public void flush() throws IOException {
+		buffer.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		buffer.close();
+	}
+
+	@Override
+	public long getLength() {
+		return buffer.getLength();
+	}
+
+	@Override
+	public String toString() {
+		return "ReusableCaptureWriter(" + buffer + ")";
+	}
+
+	@Override
+	public BufferResult getResult() throws IllegalStateException, IOException {
+		return buffer.getResult();
+	}
+}
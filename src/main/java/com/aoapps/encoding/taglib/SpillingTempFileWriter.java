@@ -0,0 +1,320 @@
+/*
+ * ao-encoding-taglib - High performance streaming character encoding in a JSP environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-encoding-taglib.
+ *
+ * ao-encoding-taglib is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-encoding-taglib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-encoding-taglib.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.aoapps.encoding.taglib;
+
+import com.aoapps.io.buffer.BufferResult;
+import com.aoapps.io.buffer.BufferWriter;
+import com.aoapps.io.buffer.EmptyResult;
+import com.aoapps.tempfiles.TempFileContext;
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.file.Path;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Buffers in an initial {@link BufferWriter} until the threshold is reached or
+ * the {@link CaptureBudget} is exhausted, then spills to a temp file in the
+ * format of the implementation.
+ * <p>
+ * This class is not thread safe.
+ * </p>
+ *
+ * @author  AO Industries, Inc.
+ */
+abstract class SpillingTempFileWriter extends BufferWriter {
+
+	private static final Logger logger = Logger.getLogger(SpillingTempFileWriter.class.getName());
+
+	/**
+	 * Creates the temp file when spilled.
+	 */
+	@FunctionalInterface
+	interface SpillFiles {
+
+		/**
+		 * Creates a new, empty temp file that remains until the end of the request.
+		 */
+		Path createSpillFile(String prefix) throws IOException;
+
+		/**
+		 * Creates temp files in the given context.
+		 */
+		static SpillFiles of(TempFileContext tempFileContext) {
+			return prefix -> tempFileContext.createTempFile(prefix).getFile().toPath();
+		}
+	}
+
+	private final SpillFiles spillFiles;
+	private final long tempFileThreshold;
+
+	/**
+	 * The initial buffer, {@code null} once spilled.
+	 */
+	private BufferWriter initialBuffer;
+
+	private Path tempFile;
+
+	/**
+	 * The {@link CaptureBudget} reservations of the request, or {@code null} when not budgeted.
+	 */
+	private final CaptureBudget.Reservations reservations;
+
+	/**
+	 * The characters of {@link CaptureBudget} reserved by this capture while not spilled.
+	 */
+	private long reserved;
+
+	private long length;
+	private boolean isClosed;
+	private BufferResult result;
+
+	/**
+	 * @param  reservations  the {@link CaptureBudget} reservations of the request,
+	 *                       or {@code null} to not participate in the budget
+	 *
+	 * @see  CaptureBudget#getRequestReservations(javax.servlet.ServletRequest)
+	 */
+	SpillingTempFileWriter(BufferWriter initialBuffer, SpillFiles spillFiles, long tempFileThreshold, CaptureBudget.Reservations reservations) {
+		this.initialBuffer = initialBuffer;
+		this.spillFiles = spillFiles;
+		this.tempFileThreshold = tempFileThreshold;
+		this.reservations = reservations;
+	}
+
+	/**
+	 * The prefix of temp file names.
+	 */
+	abstract String getTempFilePrefix();
+
+	/**
+	 * Opens the newly created temp file for writing.
+	 */
+	abstract void openSpill(Path tempFile) throws IOException;
+
+	abstract void spilledWrite(char c) throws IOException;
+
+	abstract void spilledWrite(char[] cbuf, int off, int len) throws IOException;
+
+	abstract void spilledWrite(String str, int off, int len) throws IOException;
+
+	/**
+	 * Completes and closes the temp file.
+	 */
+	abstract void closeSpill() throws IOException;
+
+	/**
+	 * Gets the number of bytes written to the temp file so far, counted as written.
+	 */
+	abstract long getTempFileBytes();
+
+	/**
+	 * Gets the result for the closed temp file.
+	 */
+	abstract BufferResult newSpilledResult(Path tempFile, long length) throws IOException;
+
+	/**
+	 * Reserves budget, in blocks, to buffer the given total number of characters.
+	 *
+	 * @return  {@code false} when over budget
+	 */
+	private boolean reserve(long total) {
+		if(total <= reserved) return true;
+		long needed = total - reserved;
+		long blocks = (needed + CaptureBudget.RESERVE_BLOCK - 1) / CaptureBudget.RESERVE_BLOCK;
+		long chars = blocks * CaptureBudget.RESERVE_BLOCK;
+		if(!reservations.tryReserve(chars)) return false;
+		reserved += chars;
+		return true;
+	}
+
+	/**
+	 * Returns any budget reserved by this capture.
+	 */
+	private void releaseReserved() {
+		if(reserved != 0) {
+			reservations.release(reserved);
+			reserved = 0;
+		}
+	}
+
+	/**
+	 * Spills when the given number of additional characters would reach the threshold
+	 * or exceed the {@link CaptureBudget}.
+	 */
+	private void checkSpill(long additional) throws IOException {
+		if(initialBuffer == null) return;
+		long total = length + additional;
+		boolean spill;
+		if(total >= tempFileThreshold) {
+			spill = true;
+		} else if(reservations != null && !reserve(total)) {
+			reservations.spilled();
+			if(logger.isLoggable(Level.FINE)) {
+				logger.fine("Capture budget exhausted, spilling " + length + " characters");
+			}
+			spill = true;
+		} else {
+			spill = false;
+		}
+		if(spill) {
+			// Return the budget, since the capture will no longer be buffered in memory
+			releaseReserved();
+			tempFile = spillFiles.createSpillFile(getTempFilePrefix());
+			if(logger.isLoggable(Level.FINE)) {
+				logger.fine("Switching to temp file: " + tempFile);
+			}
+			openSpill(tempFile);
+			BufferWriter initial = initialBuffer;
+			initialBuffer = null;
+			initial.close();
+			// Replaying the initial buffer through this writer counts its length again
+			length = 0;
+			initial.getResult().writeTo(this);
+		}
+	}
+
+	@Override
+	public void write(int c) throws IOException {
+		if(isClosed) throw new ClosedChannelException();
+		checkSpill(1);
+		if(initialBuffer != null) initialBuffer.write(c);
+		else spilledWrite((char)c);
+		length++;
+	}
+
+	@Override
+	public void write(char[] cbuf) throws IOException {
+		write(cbuf, 0, cbuf.length);
+	}
+
+	@Override
+	public void write(char[] cbuf, int off, int len) throws IOException {
+		if(isClosed) throw new ClosedChannelException();
+		if(off < 0 || len < 0 || off + len > cbuf.length) throw new IndexOutOfBoundsException();
+		checkSpill(len);
+		if(initialBuffer != null) initialBuffer.write(cbuf, off, len);
+		else spilledWrite(cbuf, off, len);
+		length += len;
+	}
+
+	@Override
+	public void write(String str) throws IOException {
+		write(str, 0, str.length());
+	}
+
+	@Override
+	public void write(String str, int off, int len) throws IOException {
+		if(isClosed) throw new ClosedChannelException();
+		if(off < 0 || len < 0 || off + len > str.length()) throw new IndexOutOfBoundsException();
+		checkSpill(len);
+		if(initialBuffer != null) initialBuffer.write(str, off, len);
+		else spilledWrite(str, off, len);
+		length += len;
+	}
+
+	@Override
+	public SpillingTempFileWriter append(CharSequence csq) throws IOException {
+		if(csq == null) csq = "null";
+		return append(csq, 0, csq.length());
+	}
+
+	@Override
+	public SpillingTempFileWriter append(CharSequence csq, int start, int end) throws IOException {
+		if(csq == null) csq = "null";
+		if(start < 0 || start > end || end > csq.length()) throw new IndexOutOfBoundsException();
+		if(csq instanceof String) {
+			write((String)csq, start, end - start);
+		} else {
+			write(csq.subSequence(start, end).toString());
+		}
+		return this;
+	}
+
+	@Override
+	public SpillingTempFileWriter append(char c) throws IOException {
+		write(c);
+		return this;
+	}
+
+	@Override
+	public void flush() throws IOException {
+		if(initialBuffer != null) initialBuffer.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if(!isClosed) {
+			isClosed = true;
+			// The budget stays reserved while the result is in the heap
+			if(initialBuffer != null) {
+				initialBuffer.close();
+			} else {
+				closeSpill();
+			}
+		}
+	}
+
+	/**
+	 * Returns the {@link CaptureBudget} reserved by this capture, once its
+	 * {@linkplain #getResult() result} is no longer used.  Otherwise, the
+	 * reservation is returned when the request is destroyed.
+	 */
+	final void discard() {
+		releaseReserved();
+	}
+
+	/**
+	 * Gets the number of bytes written to the temp file.
+	 *
+	 * @return  the number of bytes or {@code -1} when not spilled
+	 */
+	final long getSpilledBytes() {
+		return (tempFile == null) ? -1 : getTempFileBytes();
+	}
+
+	@Override
+	public long getLength() {
+		return length;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "(length=" + length + ", tempFile=" + tempFile + ")";
+	}
+
+	@Override
+	public BufferResult getResult() throws IllegalStateException, IOException {
+		if(!isClosed) throw new IllegalStateException();
+		if(result == null) {
+			if(initialBuffer != null) {
+				result = initialBuffer.getResult();
+			} else if(length == 0) {
+				result = EmptyResult.getInstance();
+			} else {
+				result = newSpilledResult(tempFile, length);
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,133 @@
+/*
+ * ao-encoding-taglib - High performance streaming character encoding in a JSP environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-encoding-taglib.
+ *
+ * ao-encoding-taglib is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-encoding-taglib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-encoding-taglib.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.aoapps.encoding.taglib;
+
+/**
+ * A snapshot of the capture statistics of one tag class.
+ * <p>
+ * Histograms are in power-of-two buckets: bucket 0 is zero, and bucket n is
+ * values in [2<sup>n-1</sup>, 2<sup>n</sup>).
+ * </p>
+ *
+ * @author  AO Industries, Inc.
+ *
+ * @see  TaglibStatisticsMXBean#getTagStatistics()
+ */
+// Java 9: Make module-private
+public final class TagCaptureStatistics {
+
+	private final long captures;
+	private final long capturedChars;
+	private final long maxChars;
+	private final long[] lengthHistogram;
+	private final long captureNanos;
+	private final long[] durationHistogram;
+	private final long spills;
+	private final long spilledChars;
+	private final long spilledBytes;
+
+	TagCaptureStatistics(
+		long captures,
+		long capturedChars,
+		long maxChars,
+		long[] lengthHistogram,
+		long captureNanos,
+		long[] durationHistogram,
+		long spills,
+		long spilledChars,
+		long spilledBytes
+	) {
+		this.captures = captures;
+		this.capturedChars = capturedChars;
+		this.maxChars = maxChars;
+		this.lengthHistogram = lengthHistogram;
+		this.captureNanos = captureNanos;
+		this.durationHistogram = durationHistogram;
+		this.spills = spills;
+		this.spilledChars = spilledChars;
+		this.spilledBytes = spilledBytes;
+	}
+
+	/**
+	 * The number of captures.
+	 */
+	public long getCaptures() {
+		return captures;
+	}
+
+	/**
+	 * The total number of characters captured.
+	 */
+	public long getCapturedChars() {
+		return capturedChars;
+	}
+
+	/**
+	 * The length of the largest capture.
+	 */
+	public long getMaxChars() {
+		return maxChars;
+	}
+
+	/**
+	 * The number of captures by length in characters.
+	 */
+	public long[] getLengthHistogram() {
+		return lengthHistogram.clone();
+	}
+
+	/**
+	 * The total time spent capturing, in nanoseconds.
+	 */
+	public long getCaptureNanos() {
+		return captureNanos;
+	}
+
+	/**
+	 * The number of captures by duration in microseconds.
+	 */
+	public long[] getDurationHistogram() {
+		return durationHistogram.clone();
+	}
+
+	/**
+	 * The number of captures that spilled to a temp file.
+	 */
+	public long getSpills() {
+		return spills;
+	}
+
+	/**
+	 * The total number of characters of captures that spilled to a temp file.
+	 */
+	public long getSpilledChars() {
+		return spilledChars;
+	}
+
+	/**
+	 * The total size of temp files written by captures.
+	 */
+	public long getSpilledBytes() {
+		return spilledBytes;
+	}
+}
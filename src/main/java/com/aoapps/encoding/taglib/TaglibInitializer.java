@@ -0,0 +1,87 @@
+/*
+ * ao-encoding-taglib - High performance streaming character encoding in a JSP environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-encoding-taglib.
+ *
+ * ao-encoding-taglib is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-encoding-taglib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-encoding-taglib.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.aoapps.encoding.taglib;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletRequestEvent;
+import javax.servlet.ServletRequestListener;
+import javax.servlet.annotation.WebListener;
+
+/**
+ * <p>
+ * Starts the per-application components of the encoding tags on application start-up,
+ * stops them when the application is destroyed, and releases the resources of the
+ * captures of each request when the request is destroyed.
+ * </p>
+ * <p>
+ * Only components that are enabled are created on start-up:
+ * </p>
+ * <ul>
+ * <li>{@link ContainerValidation} reads its context-param, failing early on an unexpected value.</li>
+ * <li>{@link CharChunkPool} is created when pooling is enabled.</li>
+ * <li>{@link HeapPressure} monitors the heap when its high-water mark is set.</li>
+ * <li>{@link TaglibStatistics} are registered when enabled.</li>
+ * <li>{@link CaptureBudget} reads its context-param, since its reservations are returned when each request is destroyed.</li>
+ * </ul>
+ *
+ * @author  AO Industries, Inc.
+ */
+@WebListener("Starts the enabled components of the encoding tags and releases the resources of captures at the end of each request.")
+public class TaglibInitializer implements ServletContextListener, ServletRequestListener {
+
+	@Override
+	public void contextInitialized(ServletContextEvent event) {
+		ServletContext servletContext = event.getServletContext();
+		ContainerValidation.contextInitialized(servletContext);
+		CaptureBudget.contextInitialized(servletContext);
+		CharChunkPool.contextInitialized(servletContext);
+		HeapPressure.contextInitialized(servletContext);
+		TaglibStatistics.contextInitialized(servletContext);
+	}
+
+	@Override
+	public void contextDestroyed(ServletContextEvent event) {
+		ServletContext servletContext = event.getServletContext();
+		TaglibStatistics.contextDestroyed(servletContext);
+		HeapPressure.contextDestroyed(servletContext);
+		CharChunkPool.contextDestroyed(servletContext);
+		CaptureBudget.contextDestroyed(servletContext);
+		ContainerValidation.contextDestroyed(servletContext);
+	}
+
+	@Override
+	public void requestInitialized(ServletRequestEvent event) {
+		// Nothing to do
+	}
+
+	@Override
+	public void requestDestroyed(ServletRequestEvent event) {
+		ServletContext servletContext = event.getServletContext();
+		ServletRequest request = event.getServletRequest();
+		CaptureBudget.requestDestroyed(request);
+		CharChunkPool.requestDestroyed(servletContext, request);
+	}
+}
@@ -0,0 +1,371 @@
+/*
+ * ao-encoding-taglib - High performance streaming character encoding in a JSP environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-encoding-taglib.
+ *
+ * ao-encoding-taglib is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-encoding-taglib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-encoding-taglib.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.aoapps.encoding.taglib;
+
+import com.aoapps.io.buffer.BufferResult;
+import com.aoapps.io.buffer.BufferWriter;
+import com.aoapps.io.buffer.TempFileResult;
+import com.aoapps.lang.Strings;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.servlet.ServletContext;
+
+/**
+ * <p>
+ * The statistics of this tag library for an application.  Records the captures
+ * of buffered tags for each concrete tag class: their lengths, durations, and
+ * spills to temp files.  Counters are striped, so concurrent captures do not
+ * contend.  The numbers of the chunk pool, spill file pool, capture budget,
+ * adaptive thresholds, and heap pressure are read from those components when
+ * requested.  Disabled unless the context-param {@link #INIT_PARAM} is
+ * <code>true</code>.
+ * </p>
+ * <p>
+ * Registered with the platform {@link MBeanServer} for each application as
+ * <code>com.aoapps.encoding.taglib:type=TaglibStatistics,context=<i>contextPath</i></code>.
+ * Not registered when the {@code java.management} module is not available.
+ * </p>
+ *
+ * @author  AO Industries, Inc.
+ */
+// Java 9: Make module-private
+public final class TaglibStatistics implements TaglibStatisticsMXBean {
+
+	private static final Logger logger = Logger.getLogger(TaglibStatistics.class.getName());
+
+	/**
+	 * The name of the context-param that enables statistics, <code>false</code> by default.
+	 */
+	public static final String INIT_PARAM = TaglibStatistics.class.getName();
+
+	private static final String APPLICATION_ATTRIBUTE = TaglibStatistics.class.getName();
+
+	/**
+	 * The number of histogram buckets, enough for any non-negative long.
+	 */
+	private static final int BUCKETS = Long.SIZE;
+
+	/**
+	 * Registers the statistics on application start-up, when enabled.
+	 *
+	 * @see  TaglibInitializer
+	 */
+	static void contextInitialized(ServletContext servletContext) {
+		TaglibStatistics instance = getInstance(servletContext);
+		if(instance != null) instance.register();
+	}
+
+	/**
+	 * Unregisters the statistics when the application is destroyed.
+	 *
+	 * @see  TaglibInitializer
+	 */
+	static void contextDestroyed(ServletContext servletContext) {
+		Object instance = servletContext.getAttribute(APPLICATION_ATTRIBUTE);
+		servletContext.removeAttribute(APPLICATION_ATTRIBUTE);
+		if(instance instanceof TaglibStatistics) ((TaglibStatistics)instance).unregister();
+	}
+
+	/**
+	 * Gets the statistics for the given application.
+	 *
+	 * @return  the statistics or {@code null} when not enabled
+	 */
+	private static TaglibStatistics getInstance(ServletContext servletContext) {
+		Object instance = servletContext.getAttribute(APPLICATION_ATTRIBUTE);
+		if(instance == null) {
+			synchronized(TaglibStatistics.class) {
+				instance = servletContext.getAttribute(APPLICATION_ATTRIBUTE);
+				if(instance == null) {
+					String value = Strings.trimNullIfEmpty(servletContext.getInitParameter(INIT_PARAM));
+					boolean enabled = Boolean.parseBoolean(value);
+					if(logger.isLoggable(Level.CONFIG)) {
+						logger.config(INIT_PARAM + "=" + enabled);
+					}
+					instance = enabled ? new TaglibStatistics(servletContext) : Boolean.FALSE;
+					servletContext.setAttribute(APPLICATION_ATTRIBUTE, instance);
+				}
+			}
+		}
+		return (instance instanceof TaglibStatistics) ? (TaglibStatistics)instance : null;
+	}
+
+	/**
+	 * Checks if statistics are enabled for the given application.
+	 */
+	public static boolean isEnabled(ServletContext servletContext) {
+		return getInstance(servletContext) != null;
+	}
+
+	private static int bucket(long value) {
+		return Long.SIZE - Long.numberOfLeadingZeros(value);
+	}
+
+	private static long[] sum(LongAdder[] adders) {
+		long[] sums = new long[adders.length];
+		for(int i = 0; i < adders.length; i++) sums[i] = adders[i].sum();
+		return sums;
+	}
+
+	/**
+	 * The statistics of one tag class.
+	 */
+	private static final class Counters {
+
+		private final LongAdder captures = new LongAdder();
+		private final LongAdder capturedChars = new LongAdder();
+		private final LongAccumulator maxChars = new LongAccumulator(Math::max, 0);
+		private final LongAdder[] lengthHistogram = new LongAdder[BUCKETS];
+		private final LongAdder captureNanos = new LongAdder();
+		private final LongAdder[] durationHistogram = new LongAdder[BUCKETS];
+		private final LongAdder spills = new LongAdder();
+		private final LongAdder spilledChars = new LongAdder();
+		private final LongAdder spilledBytes = new LongAdder();
+
+		private Counters() {
+			for(int i = 0; i < BUCKETS; i++) {
+				lengthHistogram[i] = new LongAdder();
+				durationHistogram[i] = new LongAdder();
+			}
+		}
+
+		private void record(long length, long nanos, long spillBytes) {
+			captures.increment();
+			capturedChars.add(length);
+			maxChars.accumulate(length);
+			lengthHistogram[bucket(length)].increment();
+			captureNanos.add(nanos);
+			durationHistogram[bucket(TimeUnit.NANOSECONDS.toMicros(nanos))].increment();
+			if(spillBytes != -1) {
+				spills.increment();
+				spilledChars.add(length);
+				spilledBytes.add(spillBytes);
+			}
+		}
+
+		private TagCaptureStatistics snapshot() {
+			return new TagCaptureStatistics(
+				captures.sum(),
+				capturedChars.sum(),
+				maxChars.get(),
+				sum(lengthHistogram),
+				captureNanos.sum(),
+				sum(durationHistogram),
+				spills.sum(),
+				spilledChars.sum(),
+				spilledBytes.sum()
+			);
+		}
+	}
+
+	/**
+	 * Gets the size of the temp file a capture spilled to, as counted while written.
+	 *
+	 * @return  the number of bytes or {@code -1} when not spilled
+	 */
+	private static long getSpilledBytes(BufferWriter captureBuffer, BufferResult capturedBody) {
+		if(captureBuffer instanceof ReusableCaptureWriter) {
+			captureBuffer = ((ReusableCaptureWriter)captureBuffer).getBuffer();
+		}
+		if(captureBuffer instanceof SpillingTempFileWriter) {
+			return ((SpillingTempFileWriter)captureBuffer).getSpilledBytes();
+		}
+		if(capturedBody instanceof TempFileResult) {
+			// AutoTempFileWriter stores two bytes per character
+			return capturedBody.getLength() << 1;
+		}
+		return -1;
+	}
+
+	/**
+	 * Records a capture by the given tag class.
+	 *
+	 * @param  captureBuffer  the closed buffer the body was captured into
+	 * @param  capturedBody   the result of the buffer
+	 * @param  captureNanos   the time spent capturing
+	 */
+	public static void record(
+		ServletContext servletContext,
+		Class<?> tagClass,
+		BufferWriter captureBuffer,
+		BufferResult capturedBody,
+		long captureNanos
+	) {
+		TaglibStatistics instance = getInstance(servletContext);
+		if(instance != null) {
+			Counters counters = instance.counters.get(tagClass);
+			if(counters == null) counters = instance.counters.computeIfAbsent(tagClass, c -> new Counters());
+			counters.record(capturedBody.getLength(), captureNanos, getSpilledBytes(captureBuffer, capturedBody));
+		}
+	}
+
+	private final ServletContext servletContext;
+
+	/**
+	 * Counters are kept per application, so tag classes are not retained after the application is destroyed.
+	 */
+	private final ConcurrentMap<Class<?>, Counters> counters = new ConcurrentHashMap<>();
+
+	/**
+	 * The registration with the platform {@link MBeanServer}, {@code null} when not registered.
+	 */
+	private Object objectName;
+
+	private TaglibStatistics(ServletContext servletContext) {
+		this.servletContext = servletContext;
+	}
+
+	/**
+	 * Registers with the platform {@link MBeanServer}, only loaded when the
+	 * {@code java.management} module is available.
+	 */
+	private static final class Registration {
+
+		/**
+		 * @return  the name registered or {@code null} when unable to register
+		 */
+		private static ObjectName register(TaglibStatistics instance) {
+			try {
+				ObjectName name = new ObjectName(
+					"com.aoapps.encoding.taglib:type=TaglibStatistics,context="
+					+ ObjectName.quote(instance.servletContext.getContextPath())
+				);
+				ManagementFactory.getPlatformMBeanServer().registerMBean(instance, name);
+				if(logger.isLoggable(Level.CONFIG)) {
+					logger.config("Registered " + name);
+				}
+				return name;
+			} catch(JMException e) {
+				logger.log(Level.WARNING, "Unable to register taglib statistics", e);
+				return null;
+			}
+		}
+
+		private static void unregister(ObjectName name) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+			} catch(JMException e) {
+				logger.log(Level.WARNING, "Unable to unregister taglib statistics", e);
+			}
+		}
+
+		/**
+		 * Make no instances.
+		 */
+		private Registration() {
+		}
+	}
+
+	private synchronized void register() {
+		if(objectName == null && ManagementUtils.AVAILABLE) {
+			objectName = Registration.register(this);
+		}
+	}
+
+	private synchronized void unregister() {
+		if(objectName != null) {
+			Registration.unregister((ObjectName)objectName);
+			objectName = null;
+		}
+	}
+
+	@Override
+	public SortedMap<String, TagCaptureStatistics> getTagStatistics() {
+		SortedMap<String, TagCaptureStatistics> stats = new TreeMap<>();
+		for(Map.Entry<Class<?>, Counters> entry : counters.entrySet()) {
+			stats.put(entry.getKey().getName(), entry.getValue().snapshot());
+		}
+		return Collections.unmodifiableSortedMap(stats);
+	}
+
+	@Override
+	public void reset() {
+		counters.clear();
+	}
+
+	@Override
+	public Map<String, Long> getTempFileThresholds() {
+		return AdaptiveTempFileThreshold.getThresholds(servletContext);
+	}
+
+	@Override
+	public long getChunkPoolHits() {
+		CharChunkPool pool = CharChunkPool.getExistingInstance(servletContext);
+		return (pool == null) ? 0 : pool.getHits();
+	}
+
+	@Override
+	public long getChunkPoolMisses() {
+		CharChunkPool pool = CharChunkPool.getExistingInstance(servletContext);
+		return (pool == null) ? 0 : pool.getMisses();
+	}
+
+	@Override
+	public long getChunkPoolDiscarded() {
+		CharChunkPool pool = CharChunkPool.getExistingInstance(servletContext);
+		return (pool == null) ? 0 : pool.getDiscarded();
+	}
+
+	@Override
+	public int getChunkPoolAvailable() {
+		CharChunkPool pool = CharChunkPool.getExistingInstance(servletContext);
+		return (pool == null) ? 0 : pool.getAvailable();
+	}
+
+	@Override
+	public long getCaptureBudgetMaxChars() {
+		CaptureBudget budget = CaptureBudget.getExistingInstance(servletContext);
+		return (budget == null) ? 0 : budget.getMaxChars();
+	}
+
+	@Override
+	public long getCaptureBudgetUsedChars() {
+		CaptureBudget budget = CaptureBudget.getExistingInstance(servletContext);
+		return (budget == null) ? 0 : budget.getUsedChars();
+	}
+
+	@Override
+	public long getCaptureBudgetSpills() {
+		CaptureBudget budget = CaptureBudget.getExistingInstance(servletContext);
+		return (budget == null) ? 0 : budget.getSpills();
+	}
+
+	@Override
+	public boolean isHeapUnderPressure() {
+		HeapPressure heapPressure = HeapPressure.getExistingInstance(servletContext);
+		return heapPressure != null && heapPressure.isUnderPressure();
+	}
+}
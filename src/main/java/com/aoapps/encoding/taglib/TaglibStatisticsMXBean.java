@@ -0,0 +1,90 @@
+/*
+ * ao-encoding-taglib - High performance streaming character encoding in a JSP environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-encoding-taglib.
+ *
+ * ao-encoding-taglib is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-encoding-taglib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-encoding-taglib.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.aoapps.encoding.taglib;
+
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * The management interface of {@link TaglibStatistics}, registered for each application.
+ *
+ * @author  AO Industries, Inc.
+ */
+// Java 9: Make module-private
+public interface TaglibStatisticsMXBean {
+
+	/**
+	 * Gets the statistics of each tag class with recorded captures, by class name.
+	 */
+	SortedMap<String, TagCaptureStatistics> getTagStatistics();
+
+	/**
+	 * Discards all recorded statistics.
+	 */
+	void reset();
+
+	/**
+	 * @see  AdaptiveTempFileThreshold#getThresholds(javax.servlet.ServletContext)
+	 */
+	Map<String, Long> getTempFileThresholds();
+
+	/**
+	 * @see  CharChunkPool#getHits()
+	 */
+	long getChunkPoolHits();
+
+	/**
+	 * @see  CharChunkPool#getMisses()
+	 */
+	long getChunkPoolMisses();
+
+	/**
+	 * @see  CharChunkPool#getDiscarded()
+	 */
+	long getChunkPoolDiscarded();
+
+	/**
+	 * @see  CharChunkPool#getAvailable()
+	 */
+	int getChunkPoolAvailable();
+
+	/**
+	 * @see  CaptureBudget#getMaxChars()
+	 */
+	long getCaptureBudgetMaxChars();
+
+	/**
+	 * @see  CaptureBudget#getUsedChars()
+	 */
+	long getCaptureBudgetUsedChars();
+
+	/**
+	 * @see  CaptureBudget#getSpills()
+	 */
+	long getCaptureBudgetSpills();
+
+	/**
+	 * @see  HeapPressure#isUnderPressure()
+	 */
+	boolean isHeapUnderPressure();
+}
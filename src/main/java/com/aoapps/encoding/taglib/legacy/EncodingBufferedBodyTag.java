@@ -1,6 +1,6 @@
 /*
  * ao-encoding-taglib - High performance streaming character encoding in a JSP environment.
- * Copyright (C) 2020, 2021  AO Industries, Inc.
+ * Copyright (C) 2020, 2021, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -27,10 +27,17 @@ import com.aoapps.encoding.MediaEncoder;
 import com.aoapps.encoding.MediaType;
 import com.aoapps.encoding.MediaValidator;
 import com.aoapps.encoding.MediaWriter;
-import com.aoapps.encoding.servlet.EncodingContextEE;
-import com.aoapps.encoding.taglib.EncodingBufferedTag;
+import com.aoapps.encoding.taglib.AdaptiveTempFileThreshold;
+import com.aoapps.encoding.taglib.ContainerMediaType;
+import com.aoapps.encoding.taglib.ContainerValidation;
+import com.aoapps.encoding.taglib.DeferredPrefixWriter;
+import com.aoapps.encoding.taglib.DeflatedTempFileWriter;
+import com.aoapps.encoding.taglib.EncoderLookup;
+import com.aoapps.encoding.taglib.EncodingContextCache;
 import com.aoapps.encoding.taglib.FailOnWriteWriter;
 import com.aoapps.encoding.taglib.RequestEncodingContext;
+import com.aoapps.encoding.taglib.ReusableCaptureWriter;
+import com.aoapps.encoding.taglib.TaglibStatistics;
 import com.aoapps.io.buffer.AutoTempFileWriter;
 import com.aoapps.io.buffer.BufferResult;
 import com.aoapps.io.buffer.BufferWriter;
@@ -101,12 +108,29 @@ public abstract class EncodingBufferedBodyTag extends BodyTagSupport implements
 	 * Gets the number of characters that may be buffered before switching to the
 	 * use of a temp file.
 	 *
+	 * <p>
+	 * When enabled, this is selected from the capture sizes observed for the concrete tag class.
+	 * </p>
+	 *
 	 * @return the threshold or {@link Long#MAX_VALUE} to never use temp files.
 	 *
 	 * @see  AutoTempFileWriter#DEFAULT_TEMP_FILE_THRESHOLD
+	 * @see  AdaptiveTempFileThreshold
 	 */
 	public long getTempFileThreshold() {
-		return AutoTempFileWriter.DEFAULT_TEMP_FILE_THRESHOLD;
+		return AdaptiveTempFileThreshold.getTempFileThreshold(pageContext.getServletContext(), getClass());
+	}
+
+	/**
+	 * Checks if captures that spill to a temp file are stored compressed.  Compression
+	 * trades processor time for disk bandwidth and is best for large, repetitive content.
+	 *
+	 * @return  {@code false} by default
+	 *
+	 * @see  DeflatedTempFileWriter
+	 */
+	public boolean isCompressTempFile() {
+		return false;
 	}
 
 	private static final long serialVersionUID = 1L;
@@ -119,11 +143,15 @@ public abstract class EncodingBufferedBodyTag extends BodyTagSupport implements
 	// Set in updateValidatingOut
 	private transient MediaType validatingOutputType;
 	private transient MediaEncoder mediaEncoder;
+	private transient DeferredPrefixWriter encoderOut;
 	private transient RequestEncodingContext validatingOutEncodingContext;
 	private transient Writer validatingOut;
-	// Set in initCapture
-	private transient BufferWriter captureBuffer;
+	// Set in initCapture, reused for each body evaluation
+	private transient ReusableCaptureWriter captureBuffer;
+	private transient MediaType captureContentType;
 	private transient MediaValidator captureValidator;
+	private transient RequestEncodingContext captureEncodingContext;
+	private transient long captureStart;
 	private transient boolean bodyUnbuffered;
 	// Set in doAfterBody, provided to doEndTag
 	private transient BufferResult capturedBody;
@@ -135,10 +163,14 @@ public abstract class EncodingBufferedBodyTag extends BodyTagSupport implements
 		writePrefixSuffix = false;
 		validatingOutputType = null;
 		mediaEncoder = null;
+		encoderOut = null;
 		validatingOutEncodingContext = null;
 		validatingOut = null;
 		captureBuffer = null;
+		captureContentType = null;
 		captureValidator = null;
+		captureEncodingContext = null;
+		captureStart = 0;
 		bodyUnbuffered = false;
 		capturedBody = EmptyResult.getInstance();
 	}
@@ -173,17 +205,14 @@ public abstract class EncodingBufferedBodyTag extends BodyTagSupport implements
 				}
 			} else {
 				final ServletResponse response = pageContext.getResponse();
-				// Use the content type of the response
-				String responseContentType = response.getContentType();
-				// Default to XHTML: TODO: Is there a better way since can't set content type early in response then reset again...
-				if(responseContentType == null) responseContentType = MediaType.XHTML.getContentType();
-				containerType = MediaType.getMediaTypeForContentType(responseContentType);
+				// Use the content type of the response, resolved once per request
+				containerType = ContainerMediaType.getContainerType(request, response);
 				if(logger.isLoggable(Level.FINER)) {
-					logger.finer("containerType from responseContentType: " + containerType + " from " + responseContentType);
+					logger.finer("containerType from response: " + containerType);
 				}
-				// Need to add validator
-				// TODO: Only validate when in development mode for performance?
-				containerValidator = MediaValidator.getMediaValidator(containerType, out);
+				// Need to add validator, unless trusted by policy
+				containerValidator = ContainerValidation.getContainerValidation(pageContext.getServletContext())
+					.getContainerValidator(containerType, out);
 				if(logger.isLoggable(Level.FINER)) {
 					logger.finer("containerValidator from containerType: " + containerValidator + " from " + containerType);
 				}
@@ -209,6 +238,7 @@ public abstract class EncodingBufferedBodyTag extends BodyTagSupport implements
 	private void updateValidatingOut(JspWriter out, MediaType newOutputType) throws JspException, IOException {
 		if(validatingOut == null || newOutputType != validatingOutputType) {
 			final MediaEncoder newMediaEncoder;
+			DeferredPrefixWriter newEncoderOut = null;
 			final RequestEncodingContext newValidatingOutEncodingContext;
 			final Writer newValidatingOut;
 			if(newOutputType == null) {
@@ -222,8 +252,8 @@ public abstract class EncodingBufferedBodyTag extends BodyTagSupport implements
 				final HttpServletRequest request = (HttpServletRequest)pageContext.getRequest();
 				final HttpServletResponse response = (HttpServletResponse)pageContext.getResponse();
 				// Find the encoder
-				EncodingContext encodingContext = new EncodingContextEE(pageContext.getServletContext(), request, response);
-				newMediaEncoder = MediaEncoder.getInstance(encodingContext, newOutputType, containerType);
+				EncodingContext encodingContext = EncodingContextCache.getEncodingContext(pageContext.getServletContext(), request, response);
+				newMediaEncoder = EncoderLookup.getInstance(encodingContext, newOutputType, containerType);
 				if(newMediaEncoder != null) {
 					if(logger.isLoggable(Level.FINER)) {
 						logger.finer("Using MediaEncoder: " + newMediaEncoder);
@@ -231,9 +261,16 @@ public abstract class EncodingBufferedBodyTag extends BodyTagSupport implements
 					logger.finest("Setting encoder options");
 					setMediaEncoderOptions(newMediaEncoder);
 					// Encode our output.  The encoder guarantees valid output for our parent.
-					logger.finest("Writing encoder prefix");
-					writeEncoderPrefix(newMediaEncoder, out); // TODO: Skip prefix and suffix when empty?
-					MediaWriter mediaWriter = new MediaWriter(encodingContext, newMediaEncoder, out);
+					// When deferred, an empty tag writes neither the encoder prefix nor suffix
+					newEncoderOut = new DeferredPrefixWriter(
+						out,
+						DeferredPrefixWriter.isWrapper(newOutputType, containerType),
+						prefixOut -> {
+							logger.finest("Writing encoder prefix");
+							writeEncoderPrefix(newMediaEncoder, prefixOut);
+						}
+					);
+					MediaWriter mediaWriter = new MediaWriter(encodingContext, newMediaEncoder, newEncoderOut);
 					newValidatingOutEncodingContext = new RequestEncodingContext(newOutputType, mediaWriter);
 					newValidatingOut = mediaWriter;
 				} else {
@@ -245,7 +282,7 @@ public abstract class EncodingBufferedBodyTag extends BodyTagSupport implements
 						if(logger.isLoggable(Level.FINER)) {
 							logger.finer("Passing-through with validating parent: " + parentEncodingContext.validMediaInput);
 						}
-						newValidatingOutEncodingContext = new RequestEncodingContext(newOutputType, parentEncodingContext.validMediaInput);
+						newValidatingOutEncodingContext = parentEncodingContext.passThrough(newOutputType);
 						newValidatingOut = out;
 					} else {
 						// Not using an encoder and parent doesn't validate our output, validate our own output.
@@ -269,6 +306,7 @@ public abstract class EncodingBufferedBodyTag extends BodyTagSupport implements
 			}
 			validatingOutputType = newOutputType;
 			mediaEncoder = newMediaEncoder;
+			encoderOut = newEncoderOut;
 			validatingOutEncodingContext = newValidatingOutEncodingContext;
 			validatingOut = newValidatingOut;
 		}
@@ -297,25 +335,34 @@ public abstract class EncodingBufferedBodyTag extends BodyTagSupport implements
 	}
 
 	/**
-	 * Replaces the captureBuffer, preparing for the next invocation of doBody, attempts to
+	 * Creates or resets the captureBuffer, preparing for the next invocation of doBody, attempts to
 	 * {@linkplain BodyTagUtils#unbuffer(javax.servlet.jsp.tagext.BodyContent, java.io.Writer) unbuffer} with direct
 	 * access to the current {@link #captureValidator}.
 	 * <p>
 	 * Sets {@link #bodyUnbuffered} to {@code true} when successfully directly performing capture.
 	 * Otherwise, {@link #bodyUnbuffered} is {@code false} when the body content continues to use default buffering.
 	 * </p>
+	 * <p>
+	 * The captureBuffer is reused for each {@link #EVAL_BODY_AGAIN}, which invalidates the previously captured body.
+	 * {@link #captureValidator} and its encoding context are also reused, unless {@link #getContentType()}
+	 * has changed since the previous evaluation.
+	 * </p>
 	 */
 	private void initCapture() throws JspTagException, UnsupportedEncodingException {
-		assert captureBuffer == null;
-		assert captureValidator == null;
 		ServletRequest request = pageContext.getRequest();
-		captureBuffer = EncodingBufferedTag.newBufferWriter(request, getTempFileThreshold());
+		if(captureBuffer == null) {
+			captureBuffer = new ReusableCaptureWriter(request, getTempFileThreshold(), isCompressTempFile());
+		} else {
+			captureBuffer.reset();
+		}
 		final MediaType myContentType = getContentType();
-		captureValidator = MediaValidator.getMediaValidator(myContentType, captureBuffer);
-		RequestEncodingContext.setCurrentContext(
-			request,
-			new RequestEncodingContext(myContentType, captureValidator)
-		);
+		if(myContentType != captureContentType) {
+			captureValidator = MediaValidator.getMediaValidator(myContentType, captureBuffer);
+			captureEncodingContext = new RequestEncodingContext(myContentType, captureValidator);
+			captureContentType = myContentType;
+		}
+		RequestEncodingContext.setCurrentContext(request, captureEncodingContext);
+		captureStart = System.nanoTime();
 		bodyUnbuffered = BodyTagUtils.unbuffer(bodyContent, captureValidator);
 	}
 
@@ -364,8 +411,8 @@ public abstract class EncodingBufferedBodyTag extends BodyTagSupport implements
 			captureValidator.flush();
 			captureBuffer.close();
 			capturedBody = captureBuffer.getResult();
-			captureBuffer = null;
-			captureValidator = null;
+			AdaptiveTempFileThreshold.record(pageContext.getServletContext(), getClass(), capturedBody.getLength());
+			TaglibStatistics.record(pageContext.getServletContext(), getClass(), captureBuffer, capturedBody, System.nanoTime() - captureStart);
 			updateValidatingOut(bodyContent.getEnclosingWriter(), getOutputType());
 			RequestEncodingContext.setCurrentContext(pageContext.getRequest(), validatingOutEncodingContext);
 			int afterBodyReturn = BodyTagUtils.checkAfterBodyReturn(doAfterBody(capturedBody, validatingOut));
@@ -383,6 +430,8 @@ public abstract class EncodingBufferedBodyTag extends BodyTagSupport implements
 	 * type, this version of {@link #doAfterBody()} is called.
 	 *
 	 * @param  capturedBody  The buffered result of the most recent body invocation.
+	 *                       When {@link #EVAL_BODY_AGAIN} is returned, this is only valid until this method returns,
+	 *                       since the capture buffer is reused for the next invocation.
 	 *
 	 * @param  out  the output.  If passed-through, this will be a {@link JspWriter}
 	 *
@@ -404,7 +453,7 @@ public abstract class EncodingBufferedBodyTag extends BodyTagSupport implements
 			updateValidatingOut(pageContext.getOut(), getOutputType());
 			RequestEncodingContext.setCurrentContext(pageContext.getRequest(), validatingOutEncodingContext);
 			int endTagReturn = BodyTagUtils.checkEndTagReturn(doEndTag(capturedBody, validatingOut));
-			if(mediaEncoder != null) {
+			if(mediaEncoder != null && encoderOut.isPrefixWritten()) {
 				logger.finest("Writing encoder suffix");
 				writeEncoderSuffix(mediaEncoder, pageContext.getOut());
 			}
@@ -1,6 +1,6 @@
 /*
  * ao-encoding-taglib - High performance streaming character encoding in a JSP environment.
- * Copyright (C) 2020, 2021  AO Industries, Inc.
+ * Copyright (C) 2020, 2021, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -27,7 +27,11 @@ import com.aoapps.encoding.MediaEncoder;
 import com.aoapps.encoding.MediaType;
 import com.aoapps.encoding.MediaValidator;
 import com.aoapps.encoding.MediaWriter;
-import com.aoapps.encoding.servlet.EncodingContextEE;
+import com.aoapps.encoding.taglib.ContainerMediaType;
+import com.aoapps.encoding.taglib.ContainerValidation;
+import com.aoapps.encoding.taglib.DeferredPrefixWriter;
+import com.aoapps.encoding.taglib.EncoderLookup;
+import com.aoapps.encoding.taglib.EncodingContextCache;
 import com.aoapps.encoding.taglib.FailOnWriteWriter;
 import com.aoapps.encoding.taglib.RequestEncodingContext;
 import com.aoapps.lang.i18n.Resources;
@@ -85,6 +89,7 @@ public abstract class EncodingNullBodyTag extends BodyTagSupport implements TryC
 	// Set in updateValidatingOut
 	private transient MediaType validatingOutputType;
 	private transient MediaEncoder mediaEncoder;
+	private transient DeferredPrefixWriter encoderOut;
 	private transient RequestEncodingContext validatingOutEncodingContext;
 	private transient Writer validatingOut;
 	// Set in initDiscard
@@ -97,6 +102,7 @@ public abstract class EncodingNullBodyTag extends BodyTagSupport implements TryC
 		writePrefixSuffix = false;
 		validatingOutputType = null;
 		mediaEncoder = null;
+		encoderOut = null;
 		validatingOutEncodingContext = null;
 		validatingOut = null;
 		bodyUnbuffered = false;
@@ -132,17 +138,14 @@ public abstract class EncodingNullBodyTag extends BodyTagSupport implements TryC
 				}
 			} else {
 				final ServletResponse response = pageContext.getResponse();
-				// Use the content type of the response
-				String responseContentType = response.getContentType();
-				// Default to XHTML: TODO: Is there a better way since can't set content type early in response then reset again...
-				if(responseContentType == null) responseContentType = MediaType.XHTML.getContentType();
-				containerType = MediaType.getMediaTypeForContentType(responseContentType);
+				// Use the content type of the response, resolved once per request
+				containerType = ContainerMediaType.getContainerType(request, response);
 				if(logger.isLoggable(Level.FINER)) {
-					logger.finer("containerType from responseContentType: " + containerType + " from " + responseContentType);
+					logger.finer("containerType from response: " + containerType);
 				}
-				// Need to add validator
-				// TODO: Only validate when in development mode for performance?
-				containerValidator = MediaValidator.getMediaValidator(containerType, out);
+				// Need to add validator, unless trusted by policy
+				containerValidator = ContainerValidation.getContainerValidation(pageContext.getServletContext())
+					.getContainerValidator(containerType, out);
 				if(logger.isLoggable(Level.FINER)) {
 					logger.finer("containerValidator from containerType: " + containerValidator + " from " + containerType);
 				}
@@ -168,6 +171,7 @@ public abstract class EncodingNullBodyTag extends BodyTagSupport implements TryC
 	private void updateValidatingOut(JspWriter out, MediaType newOutputType) throws JspException, IOException {
 		if(validatingOut == null || newOutputType != validatingOutputType) {
 			final MediaEncoder newMediaEncoder;
+			DeferredPrefixWriter newEncoderOut = null;
 			final RequestEncodingContext newValidatingOutEncodingContext;
 			final Writer newValidatingOut;
 			if(newOutputType == null) {
@@ -181,8 +185,8 @@ public abstract class EncodingNullBodyTag extends BodyTagSupport implements TryC
 				final HttpServletRequest request = (HttpServletRequest)pageContext.getRequest();
 				final HttpServletResponse response = (HttpServletResponse)pageContext.getResponse();
 				// Find the encoder
-				EncodingContext encodingContext = new EncodingContextEE(pageContext.getServletContext(), request, response);
-				newMediaEncoder = MediaEncoder.getInstance(encodingContext, newOutputType, containerType);
+				EncodingContext encodingContext = EncodingContextCache.getEncodingContext(pageContext.getServletContext(), request, response);
+				newMediaEncoder = EncoderLookup.getInstance(encodingContext, newOutputType, containerType);
 				if(newMediaEncoder != null) {
 					if(logger.isLoggable(Level.FINER)) {
 						logger.finer("Using MediaEncoder: " + newMediaEncoder);
@@ -190,9 +194,16 @@ public abstract class EncodingNullBodyTag extends BodyTagSupport implements TryC
 					logger.finest("Setting encoder options");
 					setMediaEncoderOptions(newMediaEncoder);
 					// Encode our output.  The encoder guarantees valid output for our parent.
-					logger.finest("Writing encoder prefix");
-					writeEncoderPrefix(newMediaEncoder, out); // TODO: Skip prefix and suffix when empty?
-					MediaWriter mediaWriter = new MediaWriter(encodingContext, newMediaEncoder, out);
+					// When deferred, an empty tag writes neither the encoder prefix nor suffix
+					newEncoderOut = new DeferredPrefixWriter(
+						out,
+						DeferredPrefixWriter.isWrapper(newOutputType, containerType),
+						prefixOut -> {
+							logger.finest("Writing encoder prefix");
+							writeEncoderPrefix(newMediaEncoder, prefixOut);
+						}
+					);
+					MediaWriter mediaWriter = new MediaWriter(encodingContext, newMediaEncoder, newEncoderOut);
 					newValidatingOutEncodingContext = new RequestEncodingContext(newOutputType, mediaWriter);
 					newValidatingOut = mediaWriter;
 				} else {
@@ -204,7 +215,7 @@ public abstract class EncodingNullBodyTag extends BodyTagSupport implements TryC
 						if(logger.isLoggable(Level.FINER)) {
 							logger.finer("Passing-through with validating parent: " + parentEncodingContext.validMediaInput);
 						}
-						newValidatingOutEncodingContext = new RequestEncodingContext(newOutputType, parentEncodingContext.validMediaInput);
+						newValidatingOutEncodingContext = parentEncodingContext.passThrough(newOutputType);
 						newValidatingOut = out;
 					} else {
 						// Not using an encoder and parent doesn't validate our output, validate our own output.
@@ -228,6 +239,7 @@ public abstract class EncodingNullBodyTag extends BodyTagSupport implements TryC
 			}
 			validatingOutputType = newOutputType;
 			mediaEncoder = newMediaEncoder;
+			encoderOut = newEncoderOut;
 			validatingOutEncodingContext = newValidatingOutEncodingContext;
 			validatingOut = newValidatingOut;
 		}
@@ -347,7 +359,7 @@ public abstract class EncodingNullBodyTag extends BodyTagSupport implements TryC
 			updateValidatingOut(pageContext.getOut(), getOutputType());
 			RequestEncodingContext.setCurrentContext(pageContext.getRequest(), validatingOutEncodingContext);
 			int endTagReturn = BodyTagUtils.checkEndTagReturn(doEndTag(validatingOut));
-			if(mediaEncoder != null) {
+			if(mediaEncoder != null && encoderOut.isPrefixWritten()) {
 				logger.finest("Writing encoder suffix");
 				writeEncoderSuffix(mediaEncoder, pageContext.getOut());
 			}
@@ -1,6 +1,6 @@
 /*
  * ao-encoding-taglib - High performance streaming character encoding in a JSP environment.
- * Copyright (C) 2013, 2015, 2016, 2017, 2019, 2020, 2021  AO Industries, Inc.
+ * Copyright (C) 2013, 2015, 2016, 2017, 2019, 2020, 2021, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -23,13 +23,14 @@
 package com.aoapps.encoding.taglib.legacy;
 
 import com.aoapps.encoding.MediaType;
+import com.aoapps.encoding.taglib.OutValueWriter;
 import com.aoapps.hodgepodge.i18n.BundleLookupMarkup;
 import com.aoapps.hodgepodge.i18n.BundleLookupThreadContext;
 import com.aoapps.hodgepodge.i18n.MarkupType;
-import com.aoapps.lang.Coercion;
 import com.aoapps.lang.Strings;
 import com.aoapps.lang.io.Writable;
 import java.io.IOException;
+import java.io.Reader;
 import java.io.UnsupportedEncodingException;
 import java.io.Writer;
 import javax.el.ELContext;
@@ -60,25 +61,71 @@ public class OutTag extends EncodingNullBodyTag {
 		this.value = value;
 	}
 
+	private Object items;
+	/**
+	 * Sets the items to write in place of the value, through the same encoder, with the separator between them.
+	 *
+	 * @see  OutValueWriter#writeItems(java.lang.Object, java.lang.Object, java.io.Writer)
+	 */
+	public void setItems(Object items) {
+		this.items = items;
+	}
+
+	private Object separator;
+	public void setSeparator(Object separator) {
+		this.separator = separator;
+	}
+
 	private ValueExpression def;
 	private boolean defValueSet;
 	private Object defValue;
+	/**
+	 * Sets the default, which is only evaluated when written in place of a {@code null} value.
+	 * <p>
+	 * The value of unescaped literal text, coerced to {@link Object} or {@link String}, is the text itself.
+	 * It is taken from the expression here, without evaluation, so constant defaults cost nothing to render.
+	 * </p>
+	 */
 	public void setDefault(ValueExpression def) {
 		this.def = def;
-		this.defValueSet = false;
-		this.defValue = null;
+		String literal;
+		Class<?> expectedType;
+		if(
+			def != null
+			&& def.isLiteralText()
+			&& (
+				(expectedType = def.getExpectedType()) == null
+				|| expectedType == Object.class
+				|| expectedType == String.class
+			)
+			// Escapes are only removed by evaluation
+			&& (literal = def.getExpressionString()) != null
+			&& literal.indexOf('\\') == -1
+		) {
+			defValue = literal;
+			defValueSet = true;
+		} else {
+			defValueSet = false;
+			defValue = null;
+		}
 	}
 
-	private Object getDefault() {
+	private ELContext getELContext() {
 /* BodyTag only: */
-		ELContext elContext = pageContext.getELContext();
+		return pageContext.getELContext();
 /**/
 /* SimpleTag only:
-		ELContext elContext = getJspContext().getELContext();
+		return getJspContext().getELContext();
 /**/
+	}
+
+	/**
+	 * Evaluates the default once, when first needed.
+	 */
+	private Object getDefault() {
 		if(def == null) return null;
 		if(defValueSet) return defValue;
-		Object _value = def.getValue(elContext);
+		Object _value = def.getValue(getELContext());
 		defValue = _value;
 		defValueSet = true;
 		return _value;
@@ -117,6 +164,8 @@ public class OutTag extends EncodingNullBodyTag {
 
 	private void init() {
 		value = null;
+		items = null;
+		separator = null;
 		def = null;
 		defValueSet = false;
 		defValue = null;
@@ -128,7 +177,8 @@ public class OutTag extends EncodingNullBodyTag {
 
 	@Override
 	protected void writePrefix(MediaType containerType, Writer out) throws JspException, IOException {
-		Object effectiveValue = (value != null) ? value : getDefault();
+		// Items are not looked-up in bundles
+		Object effectiveValue = (items != null) ? null : (value != null) ? value : getDefault();
 		if(effectiveValue != null) {
 			markupType = containerType.getMarkupType();
 			BundleLookupThreadContext threadContext;
@@ -144,8 +194,10 @@ public class OutTag extends EncodingNullBodyTag {
 				// Other types that will not be converted to String for bundle lookups
 				&& !(value instanceof char[])
 				&& !(value instanceof Node)
+				// Streamed, and may only be read once
+				&& !(effectiveValue instanceof Reader)
 			) {
-				toStringResult = Coercion.toString(effectiveValue);
+				toStringResult = OutValueWriter.toString(effectiveValue);
 				// Look for any message markup
 				lookupMarkup = threadContext.getLookupMarkup(toStringResult);
 				if(lookupMarkup != null) lookupMarkup.appendPrefixTo(markupType, out);
@@ -160,14 +212,16 @@ public class OutTag extends EncodingNullBodyTag {
 /* SimpleTag only:
 	protected void doTag(Writer out) throws JspException, IOException {
 /**/
-		if(toStringResult != null) {
-			out.write(toStringResult);
+		if(items != null) {
+			OutValueWriter.writeItems(items, separator, out);
+		} else if(toStringResult != null) {
+			OutValueWriter.write(toStringResult, out);
 		} else if(value != null) {
-			Coercion.write(value, out);
+			OutValueWriter.write(value, out);
 		} else {
 			Object _default = getDefault();
 			if(_default != null) {
-				Coercion.write(_default, out);
+				OutValueWriter.write(_default, out);
 			}
 		}
 /* BodyTag only: */
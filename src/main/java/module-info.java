@@ -1,6 +1,6 @@
 /*
  * ao-encoding-taglib - High performance streaming character encoding in a JSP environment.
- * Copyright (C) 2021  AO Industries, Inc.
+ * Copyright (C) 2021, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -40,5 +40,6 @@ module com.aoapps.encoding.taglib {
 	requires javax.servlet.jsp.api; // <groupId>javax.servlet.jsp</groupId><artifactId>javax.servlet.jsp-api</artifactId>
 	// Java SE
 	requires java.logging;
+	requires static java.management; // Optional: heap pressure and capture statistics
 	requires java.xml;
 }
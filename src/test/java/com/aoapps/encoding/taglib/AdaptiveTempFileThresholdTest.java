@@ -0,0 +1,109 @@
+/*
+ * ao-encoding-taglib - High performance streaming character encoding in a JSP environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-encoding-taglib.
+ *
+ * ao-encoding-taglib is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-encoding-taglib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-encoding-taglib.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.aoapps.encoding.taglib;
+
+import com.aoapps.encoding.taglib.mock.ServletMocks;
+import com.aoapps.io.buffer.AutoTempFileWriter;
+import java.util.Collections;
+import javax.servlet.ServletContext;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ * Tests the thresholds chosen by {@link AdaptiveTempFileThreshold}.
+ *
+ * @author  AO Industries, Inc.
+ */
+public class AdaptiveTempFileThresholdTest {
+
+	private static final long DEFAULT = AutoTempFileWriter.DEFAULT_TEMP_FILE_THRESHOLD;
+
+	private static ServletContext newServletContext() {
+		return ServletMocks.newServletContext(Collections.singletonMap(AdaptiveTempFileThreshold.INIT_PARAM, "true"));
+	}
+
+	private static void record(ServletContext servletContext, long size, int count) {
+		for(int i = 0; i < count; i++) {
+			AdaptiveTempFileThreshold.record(servletContext, AdaptiveTempFileThresholdTest.class, size);
+		}
+	}
+
+	private static long getThreshold(ServletContext servletContext) {
+		return AdaptiveTempFileThreshold.getTempFileThreshold(servletContext, AdaptiveTempFileThresholdTest.class);
+	}
+
+	@Test
+	public void testDisabled() {
+		ServletContext servletContext = ServletMocks.newServletContext();
+		record(servletContext, 10, 128);
+		assertEquals(DEFAULT, getThreshold(servletContext));
+		assertEquals(Collections.emptySortedMap(), AdaptiveTempFileThreshold.getThresholds(servletContext));
+	}
+
+	@Test
+	public void testDefaultUntilEnoughSamples() {
+		ServletContext servletContext = newServletContext();
+		assertEquals(DEFAULT, getThreshold(servletContext));
+		record(servletContext, 10, 127);
+		assertEquals(DEFAULT, getThreshold(servletContext));
+	}
+
+	@Test
+	public void testSmallNeverSpills() {
+		ServletContext servletContext = newServletContext();
+		record(servletContext, AdaptiveTempFileThreshold.SMALL_LIMIT - 1, 128);
+		assertEquals(Long.MAX_VALUE, getThreshold(servletContext));
+		assertEquals(
+			Collections.singletonMap(AdaptiveTempFileThresholdTest.class.getName(), Long.MAX_VALUE),
+			AdaptiveTempFileThreshold.getThresholds(servletContext)
+		);
+	}
+
+	@Test
+	public void testLargerCaptureRestoresDefault() {
+		ServletContext servletContext = newServletContext();
+		record(servletContext, 10, 128);
+		assertEquals(Long.MAX_VALUE, getThreshold(servletContext));
+		record(servletContext, AdaptiveTempFileThreshold.SMALL_LIMIT, 1);
+		assertEquals(DEFAULT, getThreshold(servletContext));
+		// Stays at the default once a larger capture has been seen
+		record(servletContext, 10, 127);
+		assertEquals(DEFAULT, getThreshold(servletContext));
+	}
+
+	@Test
+	public void testLargeSpillsEarly() {
+		ServletContext servletContext = newServletContext();
+		record(servletContext, 2 * AdaptiveTempFileThreshold.LARGE_LIMIT, 128);
+		assertEquals(AdaptiveTempFileThreshold.EARLY_THRESHOLD, getThreshold(servletContext));
+	}
+
+	@Test
+	public void testMixedUsesDefault() {
+		ServletContext servletContext = newServletContext();
+		record(servletContext, 10, 64);
+		record(servletContext, AdaptiveTempFileThreshold.LARGE_LIMIT, 63);
+		record(servletContext, AdaptiveTempFileThreshold.SMALL_LIMIT, 1);
+		assertEquals(DEFAULT, getThreshold(servletContext));
+	}
+}
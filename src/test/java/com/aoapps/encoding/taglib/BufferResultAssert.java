@@ -0,0 +1,183 @@
+/*
+ * ao-encoding-taglib - High performance streaming character encoding in a JSP environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-encoding-taglib.
+ *
+ * ao-encoding-taglib is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-encoding-taglib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-encoding-taglib.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.aoapps.encoding.taglib;
+
+import com.aoapps.io.buffer.BufferResult;
+import com.aoapps.lang.Strings;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Asserts that a {@link BufferResult} round-trips its characters through every
+ * form of write-out, range, and trim.
+ *
+ * @author  AO Industries, Inc.
+ */
+final class BufferResultAssert {
+
+	/**
+	 * Builds a test string of the given length, with whitespace at both ends and
+	 * characters of the given maximum value throughout.
+	 */
+	static String sample(int length, char maxChar) {
+		StringBuilder sb = new StringBuilder(length);
+		for(int i = 0; i < length; i++) {
+			char ch;
+			if(i < 3 || i >= length - 3) {
+				ch = (i % 2) == 0 ? ' ' : '\n';
+			} else if((i % 97) == 0) {
+				ch = maxChar;
+			} else if((i % 13) == 0) {
+				ch = ' ';
+			} else {
+				ch = (char)('a' + (i % 26));
+			}
+			sb.append(ch);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Writes the value through every write and append method of the writer, in
+	 * pieces of varying size.
+	 */
+	static void writeMixed(Writer out, String value) throws IOException {
+		int pos = 0;
+		int step = 0;
+		while(pos < value.length()) {
+			int len = Math.min(value.length() - pos, 1 + (step * 251) % 1500);
+			switch(step % 5) {
+				case 0 :
+					out.write(value.charAt(pos));
+					len = 1;
+					break;
+				case 1 :
+					out.write(value.toCharArray(), pos, len);
+					break;
+				case 2 :
+					out.write(value, pos, len);
+					break;
+				case 3 :
+					out.append(value, pos, pos + len);
+					break;
+				default :
+					out.append(new StringBuilder(value.substring(pos, pos + len)));
+			}
+			pos += len;
+			step++;
+		}
+	}
+
+	private static String trimStart(String value) {
+		int start = 0;
+		while(start < value.length() && Strings.isWhitespace(value.charAt(start))) start++;
+		return value.substring(start);
+	}
+
+	private static String trimEnd(String value) {
+		int end = value.length();
+		while(end > 0 && Strings.isWhitespace(value.charAt(end - 1))) end--;
+		return value.substring(0, end);
+	}
+
+	private static String writeTo(BufferResult result) throws IOException {
+		StringWriter out = new StringWriter();
+		result.writeTo(out);
+		return out.toString();
+	}
+
+	private static String writeTo(BufferResult result, long off, long len) throws IOException {
+		StringWriter out = new StringWriter();
+		result.writeTo(out, off, len);
+		return out.toString();
+	}
+
+	/**
+	 * Asserts the length, {@link BufferResult#toString()}, and write-outs of whole and partial ranges.
+	 */
+	static void assertRoundTrip(String expected, BufferResult result) throws IOException {
+		int length = expected.length();
+		assertEquals(length, result.getLength());
+		assertEquals(expected, result.toString());
+		assertEquals(expected, writeTo(result));
+		int[] offsets = {0, 1, length / 3, length / 2, length - 1, length};
+		for(int off : offsets) {
+			if(off < 0 || off > length) continue;
+			int remaining = length - off;
+			int[] lengths = {0, Math.min(1, remaining), remaining / 2, remaining};
+			for(int len : lengths) {
+				assertEquals(
+					"off=" + off + ", len=" + len,
+					expected.substring(off, off + len),
+					writeTo(result, off, len)
+				);
+			}
+		}
+		try {
+			writeTo(result, 0, length + 1L);
+			fail("Expected IndexOutOfBoundsException");
+		} catch(IndexOutOfBoundsException e) {
+			// Expected
+		}
+		try {
+			writeTo(result, -1, 1);
+			fail("Expected IndexOutOfBoundsException");
+		} catch(IndexOutOfBoundsException e) {
+			// Expected
+		}
+	}
+
+	/**
+	 * Asserts the round-trip of the result and of each of its trimmed results.
+	 */
+	static void assertResult(String expected, BufferResult result) throws IOException {
+		assertRoundTrip(expected, result);
+		String trimmedStart = trimStart(expected);
+		String trimmedEnd = trimEnd(expected);
+		String trimmed = trimEnd(trimmedStart);
+		assertTrimmed(trimmedStart, result.trimStart());
+		assertTrimmed(trimmedEnd, result.trimEnd());
+		assertTrimmed(trimmed, result.trim());
+		// Trimming a trimmed range
+		assertTrimmed(trimmed, result.trimStart().trimEnd());
+		assertTrimmed(trimmed, result.trimEnd().trimStart());
+	}
+
+	private static void assertTrimmed(String expected, BufferResult trimmed) throws IOException {
+		if(expected.isEmpty()) {
+			assertEquals(0, trimmed.getLength());
+			assertEquals("", trimmed.toString());
+		} else {
+			assertRoundTrip(expected, trimmed);
+		}
+	}
+
+	/**
+	 * Make no instances.
+	 */
+	private BufferResultAssert() {
+	}
+}
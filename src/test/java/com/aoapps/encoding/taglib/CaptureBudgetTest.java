@@ -0,0 +1,269 @@
+/*
+ * ao-encoding-taglib - High performance streaming character encoding in a JSP environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-encoding-taglib.
+ *
+ * ao-encoding-taglib is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-encoding-taglib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-encoding-taglib.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.aoapps.encoding.taglib;
+
+import static com.aoapps.encoding.taglib.BufferResultAssert.assertResult;
+import static com.aoapps.encoding.taglib.BufferResultAssert.sample;
+import static com.aoapps.encoding.taglib.BufferResultAssert.writeMixed;
+import com.aoapps.encoding.taglib.mock.ServletMocks;
+import com.aoapps.io.buffer.CharArrayBufferWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletRequest;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link CaptureBudget} and its enforcement by {@link SpillingTempFileWriter}.
+ *
+ * @author  AO Industries, Inc.
+ */
+public class CaptureBudgetTest {
+
+	private static final long BLOCK = CaptureBudget.RESERVE_BLOCK;
+
+	private static final long MAX_CHARS = 16 * BLOCK;
+
+	private static ServletContext newServletContext(long maxChars) {
+		return ServletMocks.newServletContext(
+			Collections.singletonMap(CaptureBudget.MAX_CHARS_INIT_PARAM, Long.toString(maxChars))
+		);
+	}
+
+	private final TempSpillFiles spillFiles = new TempSpillFiles();
+	private ServletContext servletContext;
+	private CaptureBudget budget;
+	private ServletRequest request;
+	private CaptureBudget.Reservations reservations;
+
+	@Before
+	public void newRequest() {
+		servletContext = newServletContext(MAX_CHARS);
+		CaptureBudget.contextInitialized(servletContext);
+		budget = CaptureBudget.getInstance(servletContext);
+		assertTrue(budget.isEnabled());
+		assertEquals(MAX_CHARS, budget.getMaxChars());
+		assertEquals(0, budget.getUsedChars());
+		request = ServletMocks.newServletRequest(servletContext);
+		reservations = budget.getRequestReservations(request);
+	}
+
+	@After
+	public void destroyRequest() {
+		try {
+			CaptureBudget.requestDestroyed(request);
+			assertEquals(0, budget.getUsedChars());
+			CaptureBudget.contextDestroyed(servletContext);
+		} finally {
+			spillFiles.close();
+		}
+	}
+
+	private MappedTempFileWriter newWriter(long tempFileThreshold) {
+		return new MappedTempFileWriter(new CharArrayBufferWriter(), spillFiles, tempFileThreshold, reservations);
+	}
+
+	@Test
+	public void testReserveAndRelease() {
+		assertTrue(budget.tryReserve(BLOCK));
+		assertEquals(BLOCK, budget.getUsedChars());
+		assertFalse(budget.tryReserve(MAX_CHARS));
+		assertEquals(BLOCK, budget.getUsedChars());
+		assertTrue(budget.tryReserve(MAX_CHARS - BLOCK));
+		assertEquals(MAX_CHARS, budget.getUsedChars());
+		budget.release(MAX_CHARS);
+		assertEquals(0, budget.getUsedChars());
+	}
+
+	@Test
+	public void testConcurrentReserveNeverOvershoots() throws InterruptedException {
+		AtomicBoolean overshoot = new AtomicBoolean();
+		List<Thread> threads = new ArrayList<>();
+		for(int t = 0; t < 4; t++) {
+			threads.add(new Thread(() -> {
+				for(int i = 0; i < 10000; i++) {
+					if(budget.tryReserve(3 * BLOCK)) {
+						if(budget.getUsedChars() > MAX_CHARS) overshoot.set(true);
+						budget.release(3 * BLOCK);
+					} else if(budget.getUsedChars() > MAX_CHARS) {
+						overshoot.set(true);
+					}
+				}
+			}));
+		}
+		for(Thread thread : threads) thread.start();
+		for(Thread thread : threads) thread.join();
+		assertFalse(overshoot.get());
+		assertEquals(0, budget.getUsedChars());
+	}
+
+	@Test
+	public void testPerApplication() {
+		ServletContext other = newServletContext(2 * MAX_CHARS);
+		CaptureBudget.contextInitialized(other);
+		try {
+			CaptureBudget otherBudget = CaptureBudget.getInstance(other);
+			assertNotSame(budget, otherBudget);
+			assertEquals(2 * MAX_CHARS, otherBudget.getMaxChars());
+			assertTrue(budget.tryReserve(MAX_CHARS));
+			assertEquals(0, otherBudget.getUsedChars());
+			assertTrue(otherBudget.tryReserve(MAX_CHARS));
+			budget.release(MAX_CHARS);
+			otherBudget.release(MAX_CHARS);
+		} finally {
+			CaptureBudget.contextDestroyed(other);
+		}
+		assertNull(CaptureBudget.getExistingInstance(other));
+	}
+
+	@Test
+	public void testDisabledByDefault() {
+		ServletContext other = ServletMocks.newServletContext();
+		CaptureBudget.contextInitialized(other);
+		try {
+			CaptureBudget otherBudget = CaptureBudget.getInstance(other);
+			assertFalse(otherBudget.isEnabled());
+			assertEquals(0, otherBudget.getMaxChars());
+		} finally {
+			CaptureBudget.contextDestroyed(other);
+		}
+	}
+
+	/**
+	 * The budget is not used, instead of failing the request, when {@link TaglibInitializer} is not registered.
+	 */
+	@Test
+	public void testNotUsedWithoutInitializer() {
+		ServletContext other = newServletContext(MAX_CHARS);
+		CaptureBudget otherBudget = CaptureBudget.getInstance(other);
+		assertFalse(otherBudget.isEnabled());
+		assertEquals(0, otherBudget.getMaxChars());
+		// Only warns once
+		assertSame(otherBudget, CaptureBudget.getExistingInstance(other));
+		assertSame(otherBudget, CaptureBudget.getInstance(other));
+	}
+
+	@Test
+	public void testReservationsPerRequest() {
+		assertSame(reservations, budget.getRequestReservations(request));
+		ServletRequest other = ServletMocks.newServletRequest(servletContext);
+		assertNotSame(reservations, budget.getRequestReservations(other));
+		CaptureBudget.requestDestroyed(other);
+	}
+
+	@Test
+	public void testReservedInBlocks() throws IOException {
+		MappedTempFileWriter writer = newWriter(Long.MAX_VALUE - 1);
+		writer.write('x');
+		assertEquals(BLOCK, budget.getUsedChars());
+		writeMixed(writer, sample((int)BLOCK - 1, 'z'));
+		assertEquals(BLOCK, budget.getUsedChars());
+		writer.write('y');
+		assertEquals(2 * BLOCK, budget.getUsedChars());
+	}
+
+	@Test
+	public void testHeldUntilRequestDestroyed() throws IOException {
+		String value = sample(5000, '\u20ac');
+		MappedTempFileWriter writer = newWriter(Long.MAX_VALUE - 1);
+		writeMixed(writer, value);
+		writer.close();
+		// The result is still in the heap
+		assertEquals(2 * BLOCK, budget.getUsedChars());
+		assertResult(value, writer.getResult());
+		CaptureBudget.requestDestroyed(request);
+		assertEquals(0, budget.getUsedChars());
+		assertNotSame(reservations, budget.getRequestReservations(request));
+	}
+
+	@Test
+	public void testDiscard() throws IOException {
+		MappedTempFileWriter writer = newWriter(Long.MAX_VALUE - 1);
+		writer.write("Discarded");
+		writer.close();
+		assertEquals(BLOCK, budget.getUsedChars());
+		writer.discard();
+		assertEquals(0, budget.getUsedChars());
+		// Only released once
+		writer.discard();
+		assertEquals(0, budget.getUsedChars());
+		// Nothing left to return with the request
+		CaptureBudget.requestDestroyed(request);
+		assertEquals(0, budget.getUsedChars());
+	}
+
+	@Test
+	public void testThresholdSpillReleases() throws IOException {
+		String value = sample(6000, 'z');
+		MappedTempFileWriter writer = newWriter(5000);
+		writeMixed(writer, value.substring(0, 4000));
+		assertEquals(BLOCK, budget.getUsedChars());
+		writeMixed(writer, value.substring(4000));
+		assertEquals(0, budget.getUsedChars());
+		writer.close();
+		assertEquals(2L * value.length(), writer.getSpilledBytes());
+		assertResult(value, writer.getResult());
+	}
+
+	@Test
+	public void testBudgetExhaustedSpills() throws IOException {
+		// Reserves the entire budget
+		String large = sample((int)(MAX_CHARS - 100), 'z');
+		MappedTempFileWriter largeWriter = newWriter(Long.MAX_VALUE - 1);
+		writeMixed(largeWriter, large);
+		assertEquals(MAX_CHARS, budget.getUsedChars());
+		assertEquals(-1, largeWriter.getSpilledBytes());
+
+		// Spills immediately, well below its threshold
+		String small = sample(10, '\u00ff');
+		MappedTempFileWriter smallWriter = newWriter(Long.MAX_VALUE - 1);
+		writeMixed(smallWriter, small);
+		smallWriter.close();
+		assertEquals(1, budget.getSpills());
+		assertEquals(2L * small.length(), smallWriter.getSpilledBytes());
+		assertEquals(MAX_CHARS, budget.getUsedChars());
+		assertResult(small, smallWriter.getResult());
+
+		// Buffers in the heap again once the budget is returned
+		largeWriter.close();
+		assertResult(large, largeWriter.getResult());
+		largeWriter.discard();
+		MappedTempFileWriter nextWriter = newWriter(Long.MAX_VALUE - 1);
+		writeMixed(nextWriter, small);
+		nextWriter.close();
+		assertEquals(-1, nextWriter.getSpilledBytes());
+		assertEquals(1, budget.getSpills());
+		assertEquals(BLOCK, budget.getUsedChars());
+	}
+}
@@ -0,0 +1,164 @@
+/*
+ * ao-encoding-taglib - High performance streaming character encoding in a JSP environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-encoding-taglib.
+ *
+ * ao-encoding-taglib is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-encoding-taglib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-encoding-taglib.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.aoapps.encoding.taglib;
+
+import com.aoapps.encoding.MediaType;
+import com.aoapps.encoding.taglib.mock.MockJspWriter;
+import java.io.IOException;
+import javax.servlet.jsp.JspException;
+import javax.servlet.jsp.JspWriter;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+/**
+ * Tests {@link DeferredPrefixWriter}.
+ *
+ * @author  AO Industries, Inc.
+ */
+public class DeferredPrefixWriterTest {
+
+	private static final String PREFIX = "<script>";
+
+	/**
+	 * Counts the number of times the prefix is written.
+	 */
+	private static class CountingPrefix implements DeferredPrefixWriter.Prefix {
+		private int count;
+
+		@Override
+		public void writeTo(JspWriter out) throws IOException {
+			count++;
+			out.write(PREFIX);
+		}
+	}
+
+	@Test
+	public void testIsWrapper() {
+		for(MediaType outputType : MediaType.values()) {
+			for(MediaType containerType : MediaType.values()) {
+				boolean expected =
+					containerType == MediaType.XHTML
+					&& (outputType == MediaType.JAVASCRIPT || outputType == MediaType.JSON || outputType == MediaType.LD_JSON);
+				assertEquals(outputType + " in " + containerType, expected, DeferredPrefixWriter.isWrapper(outputType, containerType));
+			}
+		}
+	}
+
+	@Test
+	public void testNotDeferredWritesImmediately() throws JspException, IOException {
+		MockJspWriter out = new MockJspWriter(true);
+		CountingPrefix prefix = new CountingPrefix();
+		DeferredPrefixWriter writer = new DeferredPrefixWriter(out, false, prefix);
+		assertTrue(writer.isPrefixWritten());
+		assertEquals(PREFIX, out.toString());
+		writer.write("a");
+		assertEquals(PREFIX + "a", out.toString());
+		assertEquals(1, prefix.count);
+	}
+
+	@Test
+	public void testEmptyWritesNothing() throws JspException, IOException {
+		MockJspWriter out = new MockJspWriter(true);
+		CountingPrefix prefix = new CountingPrefix();
+		DeferredPrefixWriter writer = new DeferredPrefixWriter(out, true, prefix);
+		writer.write("");
+		writer.write("abc", 1, 0);
+		writer.write(new char[0]);
+		writer.write(new char[] {'a'}, 1, 0);
+		writer.append("");
+		writer.append("abc", 2, 2);
+		writer.flush();
+		assertFalse(writer.isPrefixWritten());
+		assertEquals("", out.toString());
+		assertEquals(0, prefix.count);
+	}
+
+	@Test
+	public void testPrefixOnFirstWrite() throws JspException, IOException {
+		MockJspWriter out = new MockJspWriter(true);
+		CountingPrefix prefix = new CountingPrefix();
+		DeferredPrefixWriter writer = new DeferredPrefixWriter(out, true, prefix);
+		writer.write('a');
+		assertTrue(writer.isPrefixWritten());
+		writer.write("bc");
+		writer.write("xdex", 1, 2);
+		writer.write(new char[] {'f'});
+		writer.write(new char[] {'x', 'g', 'x'}, 1, 1);
+		writer.append("h");
+		writer.append("xix", 1, 2);
+		writer.append('j');
+		writer.append(null);
+		assertEquals(PREFIX + "abcdefghijnull", out.toString());
+		assertEquals(1, prefix.count);
+	}
+
+	@Test
+	public void testPrefixOnFirstOfEachWriteMethod() throws JspException, IOException {
+		String expected = PREFIX + "a";
+		DeferredPrefixWriter writer;
+
+		MockJspWriter out = new MockJspWriter(true);
+		writer = new DeferredPrefixWriter(out, true, new CountingPrefix());
+		writer.write("a");
+		assertEquals(expected, out.toString());
+
+		out = new MockJspWriter(true);
+		writer = new DeferredPrefixWriter(out, true, new CountingPrefix());
+		writer.write(new char[] {'a'}, 0, 1);
+		assertEquals(expected, out.toString());
+
+		out = new MockJspWriter(true);
+		writer = new DeferredPrefixWriter(out, true, new CountingPrefix());
+		assertSame(writer, writer.append("a"));
+		assertEquals(expected, out.toString());
+
+		out = new MockJspWriter(true);
+		writer = new DeferredPrefixWriter(out, true, new CountingPrefix());
+		assertSame(writer, writer.append('a'));
+		assertEquals(expected, out.toString());
+	}
+
+	@Test
+	public void testPrefixException() throws JspException, IOException {
+		JspException cause = new JspException("prefix");
+		DeferredPrefixWriter writer = new DeferredPrefixWriter(
+			new MockJspWriter(true),
+			true,
+			out -> {
+				throw cause;
+			}
+		);
+		try {
+			writer.write("a");
+			fail("IOException expected");
+		} catch(IOException e) {
+			assertSame(cause, e.getCause());
+		}
+		// The prefix is not attempted again
+		assertTrue(writer.isPrefixWritten());
+	}
+}
@@ -0,0 +1,123 @@
+/*
+ * ao-encoding-taglib - High performance streaming character encoding in a JSP environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-encoding-taglib.
+ *
+ * ao-encoding-taglib is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-encoding-taglib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-encoding-taglib.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.aoapps.encoding.taglib;
+
+import static com.aoapps.encoding.taglib.BufferResultAssert.assertResult;
+import static com.aoapps.encoding.taglib.BufferResultAssert.sample;
+import static com.aoapps.encoding.taglib.BufferResultAssert.writeMixed;
+import com.aoapps.io.buffer.CharArrayBufferWriter;
+import java.io.IOException;
+import org.junit.After;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Tests {@link DeflatedTempFileWriter} and {@link DeflatedTempFileResult}.
+ *
+ * @author  AO Industries, Inc.
+ */
+public class DeflatedTempFileWriterTest {
+
+	private static final int BLOCK_CHARS = DeflatedTempFileResult.BLOCK_CHARS;
+
+	private final TempSpillFiles spillFiles = new TempSpillFiles();
+
+	@After
+	public void deleteSpillFiles() {
+		spillFiles.close();
+	}
+
+	private DeflatedTempFileWriter capture(String value, long tempFileThreshold) throws IOException {
+		DeflatedTempFileWriter writer = new DeflatedTempFileWriter(new CharArrayBufferWriter(), spillFiles, tempFileThreshold, null);
+		writeMixed(writer, value);
+		writer.close();
+		return writer;
+	}
+
+	@Test
+	public void testEncodeDecode() {
+		String value = "a\u00e9\u20ac\ud83d\ude00\ud800 \udc00\udc00\ud800";
+		char[] chars = value.toCharArray();
+		byte[] bytes = new byte[chars.length * DeflatedTempFileResult.MAX_BYTES_PER_CHAR];
+		int encoded = DeflatedTempFileResult.encode(chars, chars.length, bytes);
+		char[] decoded = new char[chars.length];
+		assertEquals(chars.length, DeflatedTempFileResult.decode(bytes, encoded, decoded));
+		assertArrayEquals(chars, decoded);
+	}
+
+	@Test
+	public void testBelowThresholdNotSpilled() throws IOException {
+		String value = sample(1000, '\u20ac');
+		DeflatedTempFileWriter writer = capture(value, value.length() + 1);
+		assertEquals(-1, writer.getSpilledBytes());
+		assertResult(value, writer.getResult());
+	}
+
+	@Test
+	public void testSpilledOneBlock() throws IOException {
+		String value = sample(1000, '\u20ac');
+		DeflatedTempFileWriter writer = capture(value, 10);
+		assertTrue(writer.getSpilledBytes() >= 0);
+		assertEquals(1, spillFiles.getCount());
+		assertResult(value, writer.getResult());
+	}
+
+	@Test
+	public void testSpilledFullBlock() throws IOException {
+		String value = sample(BLOCK_CHARS, '\u00ff');
+		assertResult(value, capture(value, 10).getResult());
+	}
+
+	@Test
+	public void testSpilledManyBlocks() throws IOException {
+		String value = sample(BLOCK_CHARS * 2 + 1234, '\uffff');
+		DeflatedTempFileWriter writer = capture(value, 10);
+		assertTrue("Repetitive content should compress", writer.getSpilledBytes() < value.length());
+		assertResult(value, writer.getResult());
+	}
+
+	@Test
+	public void testSurrogatePairSplitAcrossBlocks() throws IOException {
+		String value = sample(BLOCK_CHARS - 1, 'z') + "\ud83d\ude00" + sample(BLOCK_CHARS, 'z') + "\ud800";
+		assertResult(value, capture(value, 10).getResult());
+	}
+
+	@Test
+	public void testWhitespaceAcrossBlocks() throws IOException {
+		StringBuilder sb = new StringBuilder();
+		for(int i = 0; i < BLOCK_CHARS + 10; i++) sb.append((i % 2) == 0 ? ' ' : '\t');
+		sb.append("middle");
+		for(int i = 0; i < BLOCK_CHARS + 10; i++) sb.append((i % 2) == 0 ? '\n' : ' ');
+		String value = sb.toString();
+		assertResult(value, capture(value, 10).getResult());
+	}
+
+	@Test
+	public void testEmpty() throws IOException {
+		DeflatedTempFileWriter writer = capture("", 0);
+		assertEquals(0, writer.getResult().getLength());
+		assertEquals("", writer.getResult().toString());
+	}
+}
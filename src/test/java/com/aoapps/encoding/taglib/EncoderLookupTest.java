@@ -0,0 +1,118 @@
+/*
+ * ao-encoding-taglib - High performance streaming character encoding in a JSP environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-encoding-taglib.
+ *
+ * ao-encoding-taglib is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-encoding-taglib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-encoding-taglib.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.aoapps.encoding.taglib;
+
+import com.aoapps.encoding.EncodingContext;
+import com.aoapps.encoding.MediaEncoder;
+import com.aoapps.encoding.MediaType;
+import java.io.IOException;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import org.junit.Test;
+
+/**
+ * Tests {@link EncoderLookup}.
+ *
+ * @author  AO Industries, Inc.
+ */
+public class EncoderLookupTest {
+
+	/**
+	 * Gets the class of the encoder, or of the exception thrown when getting it.
+	 */
+	@FunctionalInterface
+	private static interface Lookup {
+		MediaEncoder getInstance(EncodingContext encodingContext, MediaType contentType, MediaType containerType) throws IOException;
+	}
+
+	private static Class<?> lookupClass(Lookup lookup, EncodingContext encodingContext, MediaType contentType, MediaType containerType) {
+		try {
+			MediaEncoder mediaEncoder = lookup.getInstance(encodingContext, contentType, containerType);
+			return (mediaEncoder == null) ? null : mediaEncoder.getClass();
+		} catch(IOException | RuntimeException e) {
+			return e.getClass();
+		}
+	}
+
+	/**
+	 * Resolves each pair for several contexts, through every state of the table,
+	 * expecting the same encoders as {@link MediaEncoder#getInstance(com.aoapps.encoding.EncodingContext, com.aoapps.encoding.MediaType, com.aoapps.encoding.MediaType)}.
+	 */
+	@Test
+	public void testMatchesMediaEncoder() {
+		EncodingContext[] encodingContexts = {
+			new EncodingContext() {},
+			new EncodingContext() {},
+			new EncodingContext() {},
+			new EncodingContext() {}
+		};
+		for(EncodingContext encodingContext : encodingContexts) {
+			for(MediaType contentType : MediaType.values()) {
+				for(MediaType containerType : MediaType.values()) {
+					assertEquals(
+						contentType + " in " + containerType,
+						lookupClass(MediaEncoder::getInstance, encodingContext, contentType, containerType),
+						lookupClass(EncoderLookup::getInstance, encodingContext, contentType, containerType)
+					);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testSameTypeRequiresNoEncoder() throws IOException {
+		EncodingContext encodingContext = new EncodingContext() {};
+		for(int i = 0; i < 3; i++) {
+			assertNull(EncoderLookup.getInstance(encodingContext, MediaType.XHTML, MediaType.XHTML));
+		}
+	}
+
+	/**
+	 * An encoder shared by {@link MediaEncoder} for different contexts is returned as-is.
+	 */
+	@Test
+	public void testSharedEncoder() throws IOException {
+		for(MediaType contentType : MediaType.values()) {
+			for(MediaType containerType : MediaType.values()) {
+				EncodingContext context1 = new EncodingContext() {};
+				EncodingContext context2 = new EncodingContext() {};
+				MediaEncoder expected;
+				try {
+					expected = MediaEncoder.getInstance(context1, contentType, containerType);
+				} catch(IOException | RuntimeException e) {
+					continue;
+				}
+				if(expected != null && expected == MediaEncoder.getInstance(context2, contentType, containerType)) {
+					for(int i = 0; i < 3; i++) {
+						assertSame(
+							contentType + " in " + containerType,
+							expected,
+							EncoderLookup.getInstance((i % 2 == 0) ? context1 : context2, contentType, containerType)
+						);
+					}
+				}
+			}
+		}
+	}
+}
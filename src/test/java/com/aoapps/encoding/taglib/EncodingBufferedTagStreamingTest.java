@@ -0,0 +1,191 @@
+/*
+ * ao-encoding-taglib - High performance streaming character encoding in a JSP environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-encoding-taglib.
+ *
+ * ao-encoding-taglib is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-encoding-taglib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-encoding-taglib.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.aoapps.encoding.taglib;
+
+import com.aoapps.encoding.MediaType;
+import com.aoapps.encoding.MediaValidator;
+import com.aoapps.encoding.taglib.mock.MockBody;
+import com.aoapps.encoding.taglib.mock.MockJspWriter;
+import com.aoapps.encoding.taglib.mock.MockPageContext;
+import com.aoapps.encoding.taglib.mock.ServletMocks;
+import com.aoapps.io.buffer.BufferResult;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.jsp.JspException;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@linkplain EncodingBufferedTag#isStreaming() streaming} mode of {@link EncodingBufferedTag}.
+ *
+ * @author  AO Industries, Inc.
+ */
+public class EncodingBufferedTagStreamingTest {
+
+	private static class StreamingTag extends EncodingBufferedTag {
+
+		private final MediaType contentType;
+
+		private final List<Integer> chunks = new ArrayList<>();
+
+		private int streamingEnds;
+
+		private boolean doTagCalled;
+
+		private StreamingTag(MediaType contentType) {
+			this.contentType = contentType;
+		}
+
+		@Override
+		public MediaType getContentType() {
+			return contentType;
+		}
+
+		@Override
+		public MediaType getOutputType() {
+			return contentType;
+		}
+
+		@Override
+		public long getTempFileThreshold() {
+			// Never spills, so no temp file context is needed
+			return Long.MAX_VALUE;
+		}
+
+		@Override
+		protected boolean isStreaming() {
+			return true;
+		}
+
+		@Override
+		protected void doStreamingBody(char[] cbuf, int off, int len, Writer out) throws JspException, IOException {
+			assertEquals("Streaming ended", 0, streamingEnds);
+			chunks.add(len);
+			super.doStreamingBody(cbuf, off, len, out);
+		}
+
+		@Override
+		protected void doStreamingEnd(Writer out) throws JspException, IOException {
+			streamingEnds++;
+		}
+
+		@Override
+		protected void doTag(BufferResult capturedBody, Writer out) throws JspException, IOException {
+			doTagCalled = true;
+		}
+	}
+
+	/**
+	 * Creates a body of the given length, repeating text that must be encoded in XHTML.
+	 */
+	private static String newBody(int length) {
+		String pattern = "a < b & c ";
+		StringBuilder sb = new StringBuilder(length);
+		while(sb.length() < length) {
+			sb.append(pattern, 0, Math.min(pattern.length(), length - sb.length()));
+		}
+		return sb.toString();
+	}
+
+	private MockJspWriter out;
+	private HttpServletRequest request;
+	private MockPageContext pageContext;
+
+	@Before
+	public void setUp() {
+		out = new MockJspWriter(true);
+		ServletContext servletContext = ServletMocks.newServletContext();
+		request = ServletMocks.newHttpServletRequest(servletContext);
+		pageContext = new MockPageContext(servletContext, request, ServletMocks.newHttpServletResponse(TagPipelineTest.RESPONSE_CONTENT_TYPE), out);
+	}
+
+	@SuppressWarnings("deprecation")
+	private void doTag(StreamingTag tag, String body) throws JspException, IOException {
+		tag.setJspContext(pageContext);
+		if(body != null) tag.setJspBody(new MockBody(pageContext, body));
+		tag.doTag();
+	}
+
+	private static void assertChunked(StreamingTag tag, int length) {
+		int total = 0;
+		for(int chunk : tag.chunks) {
+			assertTrue("Chunk too large: " + chunk, chunk <= EncodingBufferedTag.STREAMING_CHUNK_SIZE);
+			total += chunk;
+		}
+		assertEquals(length, total);
+		assertTrue(
+			"Passed on as written instead of captured",
+			tag.chunks.size() >= (length + EncodingBufferedTag.STREAMING_CHUNK_SIZE - 1) / EncodingBufferedTag.STREAMING_CHUNK_SIZE
+		);
+		assertEquals("doStreamingEnd once", 1, tag.streamingEnds);
+		assertFalse("doTag(BufferResult, Writer) not called", tag.doTagCalled);
+	}
+
+	@Test
+	public void testStreamingEncoder() throws JspException, IOException {
+		String body = newBody(10 * EncodingBufferedTag.STREAMING_CHUNK_SIZE + 1);
+		StreamingTag tag = new StreamingTag(MediaType.TEXT);
+		doTag(tag, body);
+		assertEquals(body.replace("&", "&amp;").replace("<", "&lt;"), out.toString());
+		assertChunked(tag, body.length());
+		assertNull("Context restored", RequestEncodingContext.getCurrentContext(request));
+	}
+
+	@Test
+	public void testStreamingNestedPassThrough() throws JspException, IOException {
+		RequestEncodingContext parent = new RequestEncodingContext(
+			MediaType.XHTML,
+			MediaValidator.getMediaValidator(MediaType.XHTML, out)
+		);
+		RequestEncodingContext.setCurrentContext(request, parent);
+		String body = newBody(3 * EncodingBufferedTag.STREAMING_CHUNK_SIZE).replace("<", "&lt;").replace("& ", "&amp; ");
+		StreamingTag tag = new StreamingTag(MediaType.XHTML);
+		doTag(tag, body);
+		assertEquals(body, out.toString());
+		assertChunked(tag, body.length());
+		assertSame("Parent restored", parent, RequestEncodingContext.getCurrentContext(request));
+	}
+
+	@Test(expected = IOException.class)
+	public void testStreamingValidatesBody() throws JspException, IOException {
+		doTag(new StreamingTag(MediaType.XHTML), "\u0000");
+	}
+
+	@Test
+	public void testWithoutBodyNotStreamed() throws JspException, IOException {
+		StreamingTag tag = new StreamingTag(MediaType.TEXT);
+		doTag(tag, null);
+		assertEquals("", out.toString());
+		assertTrue("Nothing to stream, so doTag(BufferResult, Writer) is called", tag.doTagCalled);
+		assertEquals(0, tag.streamingEnds);
+	}
+}
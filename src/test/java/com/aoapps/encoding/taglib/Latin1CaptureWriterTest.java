@@ -0,0 +1,105 @@
+/*
+ * ao-encoding-taglib - High performance streaming character encoding in a JSP environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-encoding-taglib.
+ *
+ * ao-encoding-taglib is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-encoding-taglib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-encoding-taglib.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.aoapps.encoding.taglib;
+
+import static com.aoapps.encoding.taglib.BufferResultAssert.assertResult;
+import static com.aoapps.encoding.taglib.BufferResultAssert.sample;
+import static com.aoapps.encoding.taglib.BufferResultAssert.writeMixed;
+import com.aoapps.io.buffer.BufferResult;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Tests {@link Latin1CaptureWriter} and {@link Latin1Result}.
+ *
+ * @author  AO Industries, Inc.
+ */
+public class Latin1CaptureWriterTest {
+
+	private final AtomicInteger inflations = new AtomicInteger();
+
+	private Latin1CaptureWriter newWriter() {
+		return new Latin1CaptureWriter(() -> {
+			inflations.incrementAndGet();
+			return new PooledSegmentedWriter(64);
+		});
+	}
+
+	private static BufferResult capture(Latin1CaptureWriter writer, String value) throws IOException {
+		writeMixed(writer, value);
+		writer.close();
+		return writer.getResult();
+	}
+
+	@Test
+	public void testLatin1() throws IOException {
+		for(int length : new int[] {1, 100, Latin1CaptureWriter.CHUNK_SIZE - 1, Latin1CaptureWriter.CHUNK_SIZE, Latin1CaptureWriter.CHUNK_SIZE * 3 + 7}) {
+			String value = sample(length, '\u00ff');
+			BufferResult result = capture(newWriter(), value);
+			assertTrue(result instanceof Latin1Result);
+			assertResult(value, result);
+		}
+		assertEquals(0, inflations.get());
+	}
+
+	@Test
+	public void testInflated() throws IOException {
+		String value = sample(Latin1CaptureWriter.CHUNK_SIZE * 2 + 100, '\u00ff') + '\u0100' + sample(1000, '\u20ac');
+		assertResult(value, capture(newWriter(), value));
+		assertEquals(1, inflations.get());
+	}
+
+	@Test
+	public void testInflatedByFirstCharacter() throws IOException {
+		String value = "\u20ac" + sample(500, '\u00ff');
+		assertResult(value, capture(newWriter(), value));
+		assertEquals(1, inflations.get());
+	}
+
+	@Test
+	public void testEmpty() throws IOException {
+		BufferResult result = capture(newWriter(), "");
+		assertEquals(0, result.getLength());
+		assertEquals("", result.toString());
+	}
+
+	@Test
+	public void testReset() throws IOException {
+		Latin1CaptureWriter writer = newWriter();
+		String wide = sample(5000, '\u20ac');
+		assertResult(wide, capture(writer, wide));
+		writer.reset();
+		String narrow = sample(Latin1CaptureWriter.CHUNK_SIZE + 1, '\u00ff');
+		BufferResult result = capture(writer, narrow);
+		assertTrue(result instanceof Latin1Result);
+		assertResult(narrow, result);
+		writer.reset();
+		String wide2 = sample(300, '\uffff');
+		assertResult(wide2, capture(writer, wide2));
+		// The resettable UTF-16 writer is kept for the next inflation
+		assertEquals(1, inflations.get());
+	}
+}
@@ -0,0 +1,140 @@
+/*
+ * ao-encoding-taglib - High performance streaming character encoding in a JSP environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-encoding-taglib.
+ *
+ * ao-encoding-taglib is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-encoding-taglib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-encoding-taglib.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.aoapps.encoding.taglib;
+
+import static com.aoapps.encoding.taglib.BufferResultAssert.assertResult;
+import static com.aoapps.encoding.taglib.BufferResultAssert.sample;
+import static com.aoapps.encoding.taglib.BufferResultAssert.writeMixed;
+import com.aoapps.io.buffer.CharArrayBufferWriter;
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+/**
+ * Tests {@link MappedTempFileWriter}, {@link MappedTempFileResult}, and the
+ * spilling of {@link SpillingTempFileWriter}.
+ *
+ * @author  AO Industries, Inc.
+ */
+public class MappedTempFileWriterTest {
+
+	private final TempSpillFiles spillFiles = new TempSpillFiles();
+
+	@After
+	public void deleteSpillFiles() {
+		spillFiles.close();
+	}
+
+	private MappedTempFileWriter newWriter(long tempFileThreshold) {
+		return new MappedTempFileWriter(new CharArrayBufferWriter(), spillFiles, tempFileThreshold, null);
+	}
+
+	private MappedTempFileWriter capture(String value, long tempFileThreshold) throws IOException {
+		MappedTempFileWriter writer = newWriter(tempFileThreshold);
+		writeMixed(writer, value);
+		writer.close();
+		return writer;
+	}
+
+	@Test
+	public void testBelowThresholdNotSpilled() throws IOException {
+		String value = sample(999, '\u00e9');
+		MappedTempFileWriter writer = capture(value, value.length() + 1);
+		assertEquals(-1, writer.getSpilledBytes());
+		assertEquals(0, spillFiles.getCount());
+		assertResult(value, writer.getResult());
+	}
+
+	@Test
+	public void testAtThresholdSpilled() throws IOException {
+		String value = sample(1000, '\u00e9');
+		MappedTempFileWriter writer = capture(value, value.length());
+		assertEquals(2L * value.length(), writer.getSpilledBytes());
+		assertEquals(1, spillFiles.getCount());
+		assertResult(value, writer.getResult());
+	}
+
+	@Test
+	public void testSpilledBeyondWriteBuffer() throws IOException {
+		String value = sample(200_000, '\uffff');
+		MappedTempFileWriter writer = capture(value, 100);
+		assertEquals(2L * value.length(), writer.getSpilledBytes());
+		assertResult(value, writer.getResult());
+	}
+
+	@Test
+	public void testSpilledSurrogates() throws IOException {
+		String value = "\ud83d\ude00 \ud800" + sample(70_000, '\u20ac') + "\udc00 \ud83d\ude00";
+		assertResult(value, capture(value, 10).getResult());
+	}
+
+	@Test
+	public void testSpilledAllWhitespace() throws IOException {
+		String value = " \t\r\n  \n ";
+		MappedTempFileWriter writer = capture(value, 1);
+		assertEquals(2L * value.length(), writer.getSpilledBytes());
+		assertResult(value, writer.getResult());
+	}
+
+	@Test
+	public void testEmpty() throws IOException {
+		MappedTempFileWriter writer = capture("", 0);
+		assertEquals(0, writer.getLength());
+		assertEquals(0, writer.getResult().getLength());
+		assertEquals("", writer.getResult().toString());
+	}
+
+	@Test
+	public void testResultReused() throws IOException {
+		MappedTempFileWriter writer = capture(sample(5000, 'z'), 10);
+		assertEquals(writer.getResult(), writer.getResult());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testGetResultBeforeClose() throws IOException {
+		MappedTempFileWriter writer = newWriter(10);
+		writer.write("Not closed");
+		writer.getResult();
+	}
+
+	@Test
+	public void testWriteAfterClose() throws IOException {
+		MappedTempFileWriter writer = capture("Closed", 1);
+		try {
+			writer.write('x');
+			fail("Expected ClosedChannelException");
+		} catch(ClosedChannelException e) {
+			// Expected
+		}
+		try {
+			writer.write("x");
+			fail("Expected ClosedChannelException");
+		} catch(ClosedChannelException e) {
+			// Expected
+		}
+		assertEquals("Closed", writer.getResult().toString());
+	}
+}
@@ -0,0 +1,321 @@
+/*
+ * ao-encoding-taglib - High performance streaming character encoding in a JSP environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-encoding-taglib.
+ *
+ * ao-encoding-taglib is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-encoding-taglib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-encoding-taglib.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.aoapps.encoding.taglib;
+
+import com.aoapps.encoding.taglib.mock.MockJspWriter;
+import com.aoapps.encoding.taglib.mock.MockPageContext;
+import com.aoapps.encoding.taglib.mock.ServletMocks;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.stream.Stream;
+import javax.el.ELContext;
+import javax.el.ValueExpression;
+import javax.servlet.ServletContext;
+import javax.servlet.jsp.JspException;
+import static org.junit.Assert.assertEquals;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Runs {@link OutTag} end-to-end, writing text in an XHTML response.
+ *
+ * @author  AO Industries, Inc.
+ */
+public class OutTagTest {
+
+	/**
+	 * A default that counts its evaluations.
+	 */
+	private static class CountingExpression extends ValueExpression {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Object value;
+
+		private final String expressionString;
+
+		private final boolean literalText;
+
+		private int evaluations;
+
+		private CountingExpression(Object value, String expressionString, boolean literalText) {
+			this.value = value;
+			this.expressionString = expressionString;
+			this.literalText = literalText;
+		}
+
+		private CountingExpression(Object value) {
+			this(value, "${default}", false);
+		}
+
+		@Override
+		public Object getValue(ELContext context) {
+			evaluations++;
+			return value;
+		}
+
+		@Override
+		public void setValue(ELContext context, Object value) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public boolean isReadOnly(ELContext context) {
+			return true;
+		}
+
+		@Override
+		public Class<?> getType(ELContext context) {
+			return Object.class;
+		}
+
+		@Override
+		public Class<?> getExpectedType() {
+			return Object.class;
+		}
+
+		@Override
+		public String getExpressionString() {
+			return expressionString;
+		}
+
+		@Override
+		public boolean isLiteralText() {
+			return literalText;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return this == obj;
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(this);
+		}
+	}
+
+	/**
+	 * Creates a value several buffers long, with a surrogate pair split across the first buffer boundary.
+	 */
+	private static String newLargeValue() {
+		StringBuilder sb = new StringBuilder();
+		while(sb.length() < 1023) sb.append("a < b & ");
+		sb.setLength(1023);
+		sb.append("\ud83d\ude00");
+		while(sb.length() < 5000) sb.append(" c < d & \ud83d\ude00");
+		return sb.toString();
+	}
+
+	private static String encode(String text) {
+		return text.replace("&", "&amp;").replace("<", "&lt;");
+	}
+
+	private MockJspWriter out;
+	private MockPageContext pageContext;
+
+	@Before
+	public void setUp() {
+		out = new MockJspWriter(true);
+		ServletContext servletContext = ServletMocks.newServletContext();
+		pageContext = new MockPageContext(
+			servletContext,
+			ServletMocks.newHttpServletRequest(servletContext),
+			ServletMocks.newHttpServletResponse(TagPipelineTest.RESPONSE_CONTENT_TYPE),
+			out
+		);
+	}
+
+	@SuppressWarnings("deprecation")
+	private String doTag(OutTag tag) throws JspException, IOException {
+		tag.setJspContext(pageContext);
+		tag.doTag();
+		return out.toString();
+	}
+
+	private String writeItems(Object items, Object separator) throws JspException, IOException {
+		OutTag tag = new OutTag();
+		tag.setItems(items);
+		tag.setSeparator(separator);
+		return doTag(tag);
+	}
+
+	@Test
+	public void testItemsIterable() throws JspException, IOException {
+		assertEquals("a &lt; b, c &amp; d", writeItems(Arrays.asList("a < b", "c & d"), ", "));
+	}
+
+	@Test
+	public void testItemsSkipsNull() throws JspException, IOException {
+		assertEquals("a|b", writeItems(Arrays.asList(null, "a", null, null, "b", null), "|"));
+	}
+
+	@Test
+	public void testItemsWithoutSeparator() throws JspException, IOException {
+		assertEquals("ab", writeItems(Arrays.asList("a", "b"), null));
+	}
+
+	@Test
+	public void testItemsEmpty() throws JspException, IOException {
+		assertEquals("", writeItems(Collections.emptyList(), ", "));
+	}
+
+	@Test
+	public void testItemsEnumeration() throws JspException, IOException {
+		assertEquals("a;&lt;;c", writeItems(Collections.enumeration(Arrays.asList("a", null, "<", "c")), ";"));
+	}
+
+	@Test
+	public void testItemsIterator() throws JspException, IOException {
+		assertEquals("1 2", writeItems(Arrays.asList(1, 2).iterator(), " "));
+	}
+
+	@Test
+	public void testItemsStream() throws JspException, IOException {
+		assertEquals("x&amp;y", writeItems(Stream.of("x", "y"), "&"));
+	}
+
+	@Test
+	public void testItemsObjectArray() throws JspException, IOException {
+		assertEquals("a, true, 3", writeItems(new Object[] {"a", null, true, 3}, ", "));
+	}
+
+	@Test
+	public void testItemsIntArray() throws JspException, IOException {
+		assertEquals("1 &lt; -2 &lt; " + Integer.MAX_VALUE, writeItems(new int[] {1, -2, Integer.MAX_VALUE}, " < "));
+	}
+
+	@Test
+	public void testItemsCharArray() throws JspException, IOException {
+		assertEquals("&lt;,&amp;", writeItems(new char[] {'<', '&'}, ","));
+	}
+
+	@Test
+	public void testItemsSingleObject() throws JspException, IOException {
+		assertEquals("a &lt; b", writeItems("a < b", ", "));
+	}
+
+	@Test
+	public void testItemsReplaceValue() throws JspException, IOException {
+		OutTag tag = new OutTag();
+		tag.setValue("value");
+		tag.setItems(Arrays.asList("a", "b"));
+		tag.setSeparator(",");
+		assertEquals("a,b", doTag(tag));
+	}
+
+	@Test
+	public void testDefaultNotEvaluatedWithValue() throws JspException, IOException {
+		CountingExpression def = new CountingExpression("default");
+		OutTag tag = new OutTag();
+		tag.setValue("a < b");
+		tag.setDefault(def);
+		assertEquals("a &lt; b", doTag(tag));
+		assertEquals(0, def.evaluations);
+	}
+
+	@Test
+	public void testDefaultNotEvaluatedWithItems() throws JspException, IOException {
+		CountingExpression def = new CountingExpression("default");
+		OutTag tag = new OutTag();
+		tag.setItems(Collections.emptyList());
+		tag.setDefault(def);
+		assertEquals("", doTag(tag));
+		assertEquals(0, def.evaluations);
+	}
+
+	@Test
+	public void testDefaultEvaluatedOnce() throws JspException, IOException {
+		CountingExpression def = new CountingExpression("c & d");
+		OutTag tag = new OutTag();
+		tag.setDefault(def);
+		assertEquals("c &amp; d", doTag(tag));
+		assertEquals("Evaluated once, though needed by both the prefix and the output", 1, def.evaluations);
+	}
+
+	@Test
+	public void testDefaultNull() throws JspException, IOException {
+		CountingExpression def = new CountingExpression(null);
+		OutTag tag = new OutTag();
+		tag.setDefault(def);
+		assertEquals("", doTag(tag));
+		assertEquals(1, def.evaluations);
+	}
+
+	@Test
+	public void testValueReader() throws JspException, IOException {
+		String value = newLargeValue();
+		OutTag tag = new OutTag();
+		tag.setValue(new StringReader(value));
+		assertEquals(encode(value), doTag(tag));
+	}
+
+	@Test
+	public void testValueCharArray() throws JspException, IOException {
+		String value = newLargeValue();
+		OutTag tag = new OutTag();
+		tag.setValue(value.toCharArray());
+		assertEquals(encode(value), doTag(tag));
+	}
+
+	@Test
+	public void testValueStringBuilder() throws JspException, IOException {
+		String value = newLargeValue();
+		OutTag tag = new OutTag();
+		tag.setValue(new StringBuilder(value));
+		assertEquals(encode(value), doTag(tag));
+	}
+
+	@Test
+	public void testDefaultReader() throws JspException, IOException {
+		String value = newLargeValue();
+		OutTag tag = new OutTag();
+		tag.setDefault(new CountingExpression(new StringReader(value)));
+		assertEquals("Read only once", encode(value), doTag(tag));
+	}
+
+	@Test
+	public void testItemsReader() throws JspException, IOException {
+		assertEquals("a &lt; b, c", writeItems(Arrays.asList(new StringReader("a < b"), "c"), ", "));
+	}
+
+	@Test
+	public void testLiteralDefaultNotEvaluated() throws JspException, IOException {
+		CountingExpression def = new CountingExpression("a < b", "a < b", true);
+		OutTag tag = new OutTag();
+		tag.setDefault(def);
+		assertEquals("a &lt; b", doTag(tag));
+		assertEquals("Taken from the expression", 0, def.evaluations);
+	}
+
+	@Test
+	public void testEscapedLiteralDefaultEvaluated() throws JspException, IOException {
+		CountingExpression def = new CountingExpression("${x}", "\\${x}", true);
+		OutTag tag = new OutTag();
+		tag.setDefault(def);
+		assertEquals("${x}", doTag(tag));
+		assertEquals("Escapes are removed by evaluation", 1, def.evaluations);
+	}
+}
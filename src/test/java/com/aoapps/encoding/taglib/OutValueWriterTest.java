@@ -0,0 +1,187 @@
+/*
+ * ao-encoding-taglib - High performance streaming character encoding in a JSP environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-encoding-taglib.
+ *
+ * ao-encoding-taglib is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-encoding-taglib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-encoding-taglib.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.aoapps.encoding.taglib;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Collections;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import org.junit.Test;
+
+/**
+ * Tests {@link OutValueWriter}.
+ *
+ * @author  AO Industries, Inc.
+ */
+public class OutValueWriterTest {
+
+	/**
+	 * Records when any write ends with a high surrogate, and optionally writes a nested value
+	 * during each write.
+	 */
+	private static class CheckedWriter extends StringWriter {
+
+		private final Object nested;
+		private boolean nesting;
+		private boolean split;
+
+		private CheckedWriter(Object nested) {
+			this.nested = nested;
+		}
+
+		@Override
+		public void write(char[] cbuf, int off, int len) {
+			if(len > 0 && Character.isHighSurrogate(cbuf[off + len - 1])) split = true;
+			// Nested before copying, so a shared buffer would be overwritten
+			if(nested != null && !nesting) {
+				nesting = true;
+				try {
+					OutValueWriter.write(nested, new StringWriter());
+				} catch(IOException e) {
+					throw new AssertionError(e);
+				} finally {
+					nesting = false;
+				}
+			}
+			super.write(cbuf, off, len);
+		}
+	}
+
+	/**
+	 * A value with a surrogate pair across every possible slice boundary.
+	 */
+	private static String surrogates(int length) {
+		StringBuilder sb = new StringBuilder(length);
+		while(sb.length() + 1 < length) sb.append("\ud83d\ude00");
+		if(sb.length() < length) sb.append('x');
+		return sb.toString();
+	}
+
+	private static String write(Object value, Object nested) throws IOException {
+		CheckedWriter out = new CheckedWriter(nested);
+		OutValueWriter.write(value, out);
+		assertFalse("Surrogate pair split between writes", out.split);
+		return out.toString();
+	}
+
+	@Test
+	public void testNumbers() throws IOException {
+		for(long value : new long[] {0, 1, -1, 9, 10, -10, Long.MAX_VALUE, Long.MIN_VALUE}) {
+			assertEquals(Long.toString(value), write(value, null));
+		}
+		assertEquals(Integer.toString(Integer.MIN_VALUE), write(Integer.MIN_VALUE, null));
+		assertEquals("-128", write((byte)-128, null));
+		assertEquals("32767", write((short)32767, null));
+	}
+
+	@Test
+	public void testNestedNumbers() throws IOException {
+		assertEquals("1234567890", write(1234567890, 987654321L));
+	}
+
+	@Test
+	public void testSurrogatesNotSplit() throws IOException {
+		for(int length : new int[] {1023, 1024, 1025, 2047, 2048, 2049, 5000}) {
+			for(String value : new String[] {surrogates(length), 'x' + surrogates(length - 1)}) {
+				assertEquals(value, write(value.toCharArray(), null));
+				assertEquals(value, write(new StringBuilder(value), null));
+				assertEquals(value, write(new StringBuffer(value), null));
+				assertEquals(value, write(new StringReader(value), null));
+			}
+		}
+	}
+
+	@Test
+	public void testNestedChunks() throws IOException {
+		String value = surrogates(5000);
+		char[] other = new char[3000];
+		Arrays.fill(other, 'o');
+		assertEquals(value, write(new StringBuilder(value), other));
+		assertEquals(value, write(new StringReader(value), new StringBuilder(new String(other))));
+	}
+
+	private static String writeElements(Object array) throws IOException {
+		StringWriter out = new StringWriter();
+		OutValueWriter.writeElements(array, ", ", out);
+		return out.toString();
+	}
+
+	@Test
+	public void testElements() throws IOException {
+		assertEquals("1, -2, 2147483647", writeElements(new int[] {1, -2, Integer.MAX_VALUE}));
+		assertEquals("-9223372036854775808", writeElements(new long[] {Long.MIN_VALUE}));
+		assertEquals("a, \u20ac", writeElements(new char[] {'a', '\u20ac'}));
+		assertEquals("-128, 127", writeElements(new byte[] {-128, 127}));
+		assertEquals("-32768", writeElements(new short[] {Short.MIN_VALUE}));
+		assertEquals("true, false", writeElements(new boolean[] {true, false}));
+		assertEquals("1.5, NaN", writeElements(new double[] {1.5, Double.NaN}));
+		assertEquals("0.1", writeElements(new float[] {0.1f}));
+		assertEquals("", writeElements(new int[0]));
+	}
+
+	@Test
+	public void testElementsWithoutSeparator() throws IOException {
+		StringWriter out = new StringWriter();
+		OutValueWriter.writeElements(new int[] {1, 2, 3}, null, out);
+		assertEquals("123", out.toString());
+	}
+
+	private static String writeItems(Object items) throws IOException {
+		StringWriter out = new StringWriter();
+		OutValueWriter.writeItems(items, ", ", out);
+		return out.toString();
+	}
+
+	@Test
+	public void testItems() throws IOException {
+		assertEquals("a, 1", writeItems(Arrays.asList(null, "a", null, 1)));
+		assertEquals("a, 1", writeItems(Arrays.asList(null, "a", null, 1).iterator()));
+		assertEquals("a, 1", writeItems(Collections.enumeration(Arrays.asList(null, "a", null, 1))));
+		assertEquals("a, 1", writeItems(Arrays.asList(null, "a", null, 1).stream()));
+		assertEquals("a, 1", writeItems(new Object[] {null, "a", null, 1}));
+		assertEquals("1, 2", writeItems(new int[] {1, 2}));
+		assertEquals("a", writeItems("a"));
+		assertEquals("", writeItems(Collections.emptyEnumeration()));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testElementsNotPrimitive() throws IOException {
+		OutValueWriter.writeElements(new Object[0], null, new StringWriter());
+	}
+
+	@Test
+	public void testTrailingHighSurrogate() throws IOException {
+		String value = surrogates(1023) + '\ud83d';
+		// Written at the end, since no low surrogate follows
+		Writer out = new StringWriter();
+		OutValueWriter.write(new StringReader(value), out);
+		assertEquals(value, out.toString());
+		out = new StringWriter();
+		OutValueWriter.write(value.toCharArray(), out);
+		assertEquals(value, out.toString());
+	}
+}
@@ -0,0 +1,120 @@
+/*
+ * ao-encoding-taglib - High performance streaming character encoding in a JSP environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-encoding-taglib.
+ *
+ * ao-encoding-taglib is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-encoding-taglib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-encoding-taglib.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.aoapps.encoding.taglib;
+
+import static com.aoapps.encoding.taglib.BufferResultAssert.assertResult;
+import static com.aoapps.encoding.taglib.BufferResultAssert.sample;
+import static com.aoapps.encoding.taglib.BufferResultAssert.writeMixed;
+import com.aoapps.encoding.taglib.mock.ServletMocks;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletRequest;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Tests {@link PooledSegmentedWriter}, {@link PooledSegmentedResult}, and {@link CharChunkPool}.
+ *
+ * @author  AO Industries, Inc.
+ */
+public class PooledSegmentedWriterTest {
+
+	private static PooledSegmentedWriter capture(PooledSegmentedWriter writer, String value) throws IOException {
+		writeMixed(writer, value);
+		writer.close();
+		return writer;
+	}
+
+	@Test
+	public void testChunkBoundaries() throws IOException {
+		for(int length : new int[] {1, 15, 16, 17, 31, 32, 33, 1000}) {
+			String value = sample(length, '\uffff');
+			assertResult(value, capture(new PooledSegmentedWriter(16), value).getResult());
+		}
+	}
+
+	@Test
+	public void testNotFastToString() throws IOException {
+		assertFalse(capture(new PooledSegmentedWriter(16), sample(40, 'z')).getResult().isFastToString());
+	}
+
+	@Test
+	public void testEmpty() throws IOException {
+		PooledSegmentedWriter writer = capture(new PooledSegmentedWriter(16), "");
+		assertEquals(0, writer.getResult().getLength());
+		assertEquals("", writer.getResult().toString());
+	}
+
+	@Test
+	public void testReset() throws IOException {
+		PooledSegmentedWriter writer = new PooledSegmentedWriter(16);
+		String first = sample(1000, 'z');
+		assertResult(first, capture(writer, first).getResult());
+		writer.reset();
+		String second = sample(40, '\u00e9');
+		assertResult(second, capture(writer, second).getResult());
+		writer.reset();
+		assertEquals(0, capture(writer, "").getResult().getLength());
+	}
+
+	@Test
+	public void testPooled() throws IOException {
+		Map<String, String> initParams = new HashMap<>();
+		initParams.put(CharChunkPool.CHUNK_SIZE_INIT_PARAM, "16");
+		initParams.put(CharChunkPool.MAX_CHUNKS_INIT_PARAM, "4");
+		ServletContext servletContext = ServletMocks.newServletContext(initParams);
+		CharChunkPool pool = CharChunkPool.getInstance(servletContext);
+		assertTrue(pool.isEnabled());
+		assertEquals(16, pool.getChunkSize());
+
+		// Allocates new chunks while the pool is empty
+		ServletRequest request = ServletMocks.newServletRequest(servletContext);
+		List<char[]> requestChunks = CharChunkPool.getRequestChunks(request);
+		String value = sample(100, '\u20ac');
+		assertResult(value, capture(new PooledSegmentedWriter(pool, requestChunks), value).getResult());
+		assertEquals(7, requestChunks.size());
+		assertEquals(0, pool.getHits());
+		assertEquals(7, pool.getMisses());
+
+		// Returns the chunks when the request is destroyed, discarding those beyond the pool size
+		CharChunkPool.requestDestroyed(servletContext, request);
+		assertNull(request.getAttribute(CharChunkPool.class.getName() + ".chunks"));
+		assertEquals(4, pool.getAvailable());
+		assertEquals(3, pool.getDiscarded());
+
+		// Takes pooled chunks for the next request
+		ServletRequest request2 = ServletMocks.newServletRequest(servletContext);
+		String value2 = sample(32, 'z');
+		assertResult(value2, capture(new PooledSegmentedWriter(pool, CharChunkPool.getRequestChunks(request2)), value2).getResult());
+		assertEquals(2, pool.getHits());
+		assertEquals(2, pool.getAvailable());
+		CharChunkPool.requestDestroyed(servletContext, request2);
+		assertEquals(4, pool.getAvailable());
+	}
+}
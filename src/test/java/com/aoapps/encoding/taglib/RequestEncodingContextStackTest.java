@@ -0,0 +1,126 @@
+/*
+ * ao-encoding-taglib - High performance streaming character encoding in a JSP environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-encoding-taglib.
+ *
+ * ao-encoding-taglib is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-encoding-taglib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-encoding-taglib.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.aoapps.encoding.taglib;
+
+import com.aoapps.encoding.MediaType;
+import com.aoapps.encoding.taglib.mock.ServletMocks;
+import javax.servlet.ServletRequest;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import org.junit.Test;
+
+/**
+ * Tests {@link RequestEncodingContextStack} and the accessors of {@link RequestEncodingContext}.
+ *
+ * @author  AO Industries, Inc.
+ */
+public class RequestEncodingContextStackTest {
+
+	private static ServletRequest newServletRequest() {
+		return ServletMocks.newServletRequest(ServletMocks.newServletContext());
+	}
+
+	private static RequestEncodingContext newContext(MediaType contentType) {
+		return RequestEncodingContext.DISCARD.passThrough(contentType);
+	}
+
+	@Test
+	public void testOneStackPerRequest() {
+		ServletRequest request = newServletRequest();
+		assertNull(RequestEncodingContextStack.getInstanceIfExists(request));
+		RequestEncodingContextStack stack = RequestEncodingContextStack.getInstance(request);
+		assertSame(stack, RequestEncodingContextStack.getInstance(request));
+		assertSame(stack, RequestEncodingContextStack.getInstanceIfExists(request));
+	}
+
+	@Test
+	public void testPushPopBeyondInitialCapacity() {
+		RequestEncodingContextStack stack = RequestEncodingContextStack.getInstance(newServletRequest());
+		assertNull(stack.peek());
+		MediaType[] types = MediaType.values();
+		RequestEncodingContext[] pushed = new RequestEncodingContext[40];
+		for(int i = 0; i < pushed.length; i++) {
+			pushed[i] = new RequestEncodingContext(types[i % types.length], RequestEncodingContext.DISCARD.validMediaInput);
+			stack.push(pushed[i]);
+			assertSame(pushed[i], stack.peek());
+		}
+		for(int i = pushed.length - 1; i >= 0; i--) {
+			assertSame(pushed[i], stack.peek());
+			stack.pop();
+		}
+		assertNull(stack.peek());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testPopEmpty() {
+		RequestEncodingContextStack.getInstance(newServletRequest()).pop();
+	}
+
+	@Test
+	public void testSetReplacesTop() {
+		RequestEncodingContextStack stack = RequestEncodingContextStack.getInstance(newServletRequest());
+		RequestEncodingContext outer = newContext(MediaType.XHTML);
+		RequestEncodingContext inner = newContext(MediaType.JAVASCRIPT);
+		RequestEncodingContext replacement = newContext(MediaType.TEXT);
+		stack.push(outer);
+		stack.push(inner);
+		stack.set(replacement);
+		assertSame(replacement, stack.peek());
+		stack.pop();
+		assertSame("Only the top is replaced", outer, stack.peek());
+	}
+
+	@Test
+	public void testCurrentContextAccessors() {
+		ServletRequest request = newServletRequest();
+		assertNull(RequestEncodingContext.getCurrentContext(request));
+		// Clearing does not create the stack
+		RequestEncodingContext.setCurrentContext(request, null);
+		assertNull(RequestEncodingContextStack.getInstanceIfExists(request));
+
+		RequestEncodingContext context = newContext(MediaType.XHTML);
+		RequestEncodingContext.setCurrentContext(request, context);
+		assertSame(context, RequestEncodingContext.getCurrentContext(request));
+
+		// Legacy tags replace the context while SimpleTags push over it
+		RequestEncodingContextStack stack = RequestEncodingContextStack.getInstance(request);
+		RequestEncodingContext nested = newContext(MediaType.TEXT);
+		stack.push(nested);
+		assertSame(nested, RequestEncodingContext.getCurrentContext(request));
+		stack.pop();
+		assertSame(context, RequestEncodingContext.getCurrentContext(request));
+
+		RequestEncodingContext.setCurrentContext(request, null);
+		assertNull(RequestEncodingContext.getCurrentContext(request));
+	}
+
+	@Test
+	public void testPassThroughReused() {
+		RequestEncodingContext context = new RequestEncodingContext(MediaType.XHTML, RequestEncodingContext.DISCARD.validMediaInput);
+		assertSame(context, context.passThrough(MediaType.XHTML));
+		RequestEncodingContext passThrough = context.passThrough(MediaType.TEXT);
+		assertSame(MediaType.TEXT, passThrough.contentType);
+		assertSame(context.validMediaInput, passThrough.validMediaInput);
+		assertSame(passThrough, context.passThrough(MediaType.TEXT));
+	}
+}
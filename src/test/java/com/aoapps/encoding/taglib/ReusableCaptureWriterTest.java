@@ -0,0 +1,126 @@
+/*
+ * ao-encoding-taglib - High performance streaming character encoding in a JSP environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-encoding-taglib.
+ *
+ * ao-encoding-taglib is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-encoding-taglib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-encoding-taglib.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.aoapps.encoding.taglib;
+
+import static com.aoapps.encoding.taglib.BufferResultAssert.assertResult;
+import static com.aoapps.encoding.taglib.BufferResultAssert.sample;
+import static com.aoapps.encoding.taglib.BufferResultAssert.writeMixed;
+import com.aoapps.encoding.taglib.mock.ServletMocks;
+import com.aoapps.io.buffer.BufferResult;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletRequest;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Tests {@link ReusableCaptureWriter} over each in-heap capture buffer.
+ *
+ * @author  AO Industries, Inc.
+ */
+public class ReusableCaptureWriterTest {
+
+	private static BufferResult capture(ReusableCaptureWriter writer, String value) throws IOException {
+		writeMixed(writer, value);
+		writer.close();
+		return writer.getResult();
+	}
+
+	/**
+	 * Captures several bodies of varying size and content into the same writer,
+	 * as an iterating tag would.
+	 */
+	private static void assertReusable(ServletContext servletContext) throws IOException {
+		ServletRequest request = ServletMocks.newServletRequest(servletContext);
+		ReusableCaptureWriter writer = new ReusableCaptureWriter(request, Long.MAX_VALUE, false);
+		assertTrue(writer.getBuffer() instanceof ReusableCaptureWriter.Resettable);
+		String[] bodies = {
+			sample(5000, '\u00ff'),
+			sample(10, '\u20ac'),
+			"",
+			sample(20_000, '\uffff'),
+			" \n ",
+			sample(3000, 'z')
+		};
+		boolean first = true;
+		for(String body : bodies) {
+			if(!first) writer.reset();
+			first = false;
+			BufferResult result = capture(writer, body);
+			assertEquals(body.length(), writer.getLength());
+			if(body.isEmpty()) {
+				assertEquals(0, result.getLength());
+			} else {
+				assertResult(body, result);
+			}
+		}
+		CharChunkPool.requestDestroyed(servletContext, request);
+	}
+
+	@Test
+	public void testUnpooled() throws IOException {
+		ServletContext servletContext = ServletMocks.newServletContext();
+		assertReusable(servletContext);
+		assertEquals(0, CharChunkPool.getInstance(servletContext).getMisses());
+	}
+
+	@Test
+	public void testPooled() throws IOException {
+		Map<String, String> initParams = new HashMap<>();
+		initParams.put(CharChunkPool.CHUNK_SIZE_INIT_PARAM, "256");
+		initParams.put(CharChunkPool.MAX_CHUNKS_INIT_PARAM, "1000");
+		ServletContext servletContext = ServletMocks.newServletContext(initParams);
+		assertReusable(servletContext);
+		CharChunkPool pool = CharChunkPool.getInstance(servletContext);
+		// The chunks of the largest body are reused by every other body
+		assertEquals((20_000 + 255) / 256, pool.getMisses());
+		assertEquals(pool.getMisses(), pool.getAvailable());
+	}
+
+	@Test
+	public void testLatin1() throws IOException {
+		assertReusable(ServletMocks.newServletContext(Collections.singletonMap(Latin1CaptureWriter.INIT_PARAM, "true")));
+	}
+
+	@Test
+	public void testLatin1Pooled() throws IOException {
+		Map<String, String> initParams = new HashMap<>();
+		initParams.put(Latin1CaptureWriter.INIT_PARAM, "true");
+		initParams.put(CharChunkPool.MAX_CHUNKS_INIT_PARAM, "1000");
+		ServletContext servletContext = ServletMocks.newServletContext(initParams);
+		assertReusable(servletContext);
+		assertEquals(CharChunkPool.getInstance(servletContext).getMisses(), CharChunkPool.getInstance(servletContext).getAvailable());
+	}
+
+	@Test
+	public void testNeverSpillsUnwrapped() {
+		ServletRequest request = ServletMocks.newServletRequest(ServletMocks.newServletContext());
+		ReusableCaptureWriter writer = new ReusableCaptureWriter(request, Long.MAX_VALUE, true);
+		assertSame(PooledSegmentedWriter.class, writer.getBuffer().getClass());
+	}
+}
@@ -0,0 +1,250 @@
+/*
+ * ao-encoding-taglib - High performance streaming character encoding in a JSP environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-encoding-taglib.
+ *
+ * ao-encoding-taglib is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-encoding-taglib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-encoding-taglib.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.aoapps.encoding.taglib;
+
+import com.aoapps.encoding.MediaType;
+import com.aoapps.encoding.MediaValidator;
+import com.aoapps.encoding.taglib.mock.MockBody;
+import com.aoapps.encoding.taglib.mock.MockJspWriter;
+import com.aoapps.encoding.taglib.mock.MockPageContext;
+import com.aoapps.encoding.taglib.mock.ServletMocks;
+import com.aoapps.io.buffer.BufferResult;
+import java.io.IOException;
+import java.io.Writer;
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.jsp.JspException;
+import javax.servlet.jsp.tagext.SimpleTagSupport;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Runs {@link EncodingFilteredTag}, {@link EncodingBufferedTag}, and {@link EncodingNullTag}
+ * end-to-end in an XHTML response, through each branch of the encoding decision.
+ *
+ * @author  AO Industries, Inc.
+ */
+public class TagPipelineTest {
+
+	/**
+	 * The content type of the simulated response.
+	 */
+	static final String RESPONSE_CONTENT_TYPE = "application/xhtml+xml;charset=UTF-8";
+
+	private static final String TEXT = "a < b & c";
+
+	private static final String TEXT_IN_XHTML = "a &lt; b &amp; c";
+
+	private static final String XHTML = "<p class=\"x\">a &lt; b</p>";
+
+	private static class FilteredTag extends EncodingFilteredTag {
+
+		private final MediaType contentType;
+
+		private MediaType bodyContentType;
+
+		private FilteredTag(MediaType contentType) {
+			this.contentType = contentType;
+		}
+
+		@Override
+		public MediaType getContentType() {
+			return contentType;
+		}
+
+		@Override
+		protected void doTag(Writer out) throws JspException, IOException {
+			bodyContentType = RequestEncodingContext.getCurrentContext(((MockPageContext)getJspContext()).getRequest()).contentType;
+			super.doTag(out);
+		}
+	}
+
+	private static class BufferedTag extends EncodingBufferedTag {
+
+		private final MediaType contentType;
+
+		private BufferedTag(MediaType contentType) {
+			this.contentType = contentType;
+		}
+
+		@Override
+		public MediaType getContentType() {
+			return contentType;
+		}
+
+		@Override
+		public MediaType getOutputType() {
+			return contentType;
+		}
+
+		@Override
+		public long getTempFileThreshold() {
+			// Never spills, so no temp file context is needed
+			return Long.MAX_VALUE;
+		}
+
+		@Override
+		protected void doTag(BufferResult capturedBody, Writer out) throws JspException, IOException {
+			capturedBody.writeTo(out);
+		}
+	}
+
+	private static class NullTag extends EncodingNullTag {
+
+		@Override
+		public MediaType getOutputType() {
+			return MediaType.TEXT;
+		}
+
+		@Override
+		protected void doTag(Writer out) throws JspException, IOException {
+			out.write(TEXT);
+		}
+	}
+
+	private MockJspWriter out;
+	private HttpServletRequest request;
+	private MockPageContext pageContext;
+
+	@Before
+	public void setUp() {
+		out = new MockJspWriter(true);
+		ServletContext servletContext = ServletMocks.newServletContext();
+		request = ServletMocks.newHttpServletRequest(servletContext);
+		pageContext = new MockPageContext(servletContext, request, ServletMocks.newHttpServletResponse(RESPONSE_CONTENT_TYPE), out);
+	}
+
+	/**
+	 * Nests the following tags in a validating XHTML parent.
+	 */
+	private RequestEncodingContext setXhtmlParent() {
+		RequestEncodingContext parent = new RequestEncodingContext(
+			MediaType.XHTML,
+			MediaValidator.getMediaValidator(MediaType.XHTML, out)
+		);
+		RequestEncodingContext.setCurrentContext(request, parent);
+		return parent;
+	}
+
+	@SuppressWarnings("deprecation")
+	private void doTag(SimpleTagSupport tag, String body) throws JspException, IOException {
+		tag.setJspContext(pageContext);
+		if(body != null) tag.setJspBody(new MockBody(pageContext, body));
+		tag.doTag();
+	}
+
+	@Test
+	public void testFilteredEncoder() throws JspException, IOException {
+		FilteredTag tag = new FilteredTag(MediaType.TEXT);
+		doTag(tag, TEXT);
+		assertEquals(TEXT_IN_XHTML, out.toString());
+		assertSame(MediaType.TEXT, tag.bodyContentType);
+		assertNull("Context restored", RequestEncodingContext.getCurrentContext(request));
+	}
+
+	@Test
+	public void testFilteredValidator() throws JspException, IOException {
+		FilteredTag tag = new FilteredTag(MediaType.XHTML);
+		doTag(tag, XHTML);
+		assertEquals(XHTML, out.toString());
+		assertSame(MediaType.XHTML, tag.bodyContentType);
+		assertNull("Context restored", RequestEncodingContext.getCurrentContext(request));
+	}
+
+	@Test(expected = IOException.class)
+	public void testFilteredValidatorRejectsInvalid() throws JspException, IOException {
+		doTag(new FilteredTag(MediaType.XHTML), "\u0000");
+	}
+
+	@Test
+	public void testFilteredNestedEncoder() throws JspException, IOException {
+		RequestEncodingContext parent = setXhtmlParent();
+		FilteredTag tag = new FilteredTag(MediaType.TEXT);
+		doTag(tag, TEXT);
+		assertEquals(TEXT_IN_XHTML, out.toString());
+		assertSame(MediaType.TEXT, tag.bodyContentType);
+		assertSame("Parent restored", parent, RequestEncodingContext.getCurrentContext(request));
+	}
+
+	@Test
+	public void testFilteredNestedPassThrough() throws JspException, IOException {
+		RequestEncodingContext parent = setXhtmlParent();
+		FilteredTag tag = new FilteredTag(MediaType.XHTML);
+		doTag(tag, XHTML);
+		assertEquals(XHTML, out.toString());
+		assertSame(MediaType.XHTML, tag.bodyContentType);
+		assertSame("Parent restored", parent, RequestEncodingContext.getCurrentContext(request));
+	}
+
+	@Test
+	public void testBufferedEncoder() throws JspException, IOException {
+		doTag(new BufferedTag(MediaType.TEXT), TEXT);
+		assertEquals(TEXT_IN_XHTML, out.toString());
+		assertNull("Context restored", RequestEncodingContext.getCurrentContext(request));
+	}
+
+	@Test
+	public void testBufferedValidator() throws JspException, IOException {
+		doTag(new BufferedTag(MediaType.XHTML), XHTML);
+		assertEquals(XHTML, out.toString());
+		assertNull("Context restored", RequestEncodingContext.getCurrentContext(request));
+	}
+
+	@Test(expected = IOException.class)
+	public void testBufferedValidatorRejectsInvalid() throws JspException, IOException {
+		doTag(new BufferedTag(MediaType.XHTML), "\u0000");
+	}
+
+	@Test
+	public void testBufferedNestedPassThrough() throws JspException, IOException {
+		RequestEncodingContext parent = setXhtmlParent();
+		doTag(new BufferedTag(MediaType.XHTML), XHTML);
+		assertEquals(XHTML, out.toString());
+		assertSame("Parent restored", parent, RequestEncodingContext.getCurrentContext(request));
+	}
+
+	@Test
+	public void testBufferedWithoutBody() throws JspException, IOException {
+		doTag(new BufferedTag(MediaType.TEXT), null);
+		assertEquals("", out.toString());
+		assertNull("Context restored", RequestEncodingContext.getCurrentContext(request));
+	}
+
+	@Test
+	public void testNullDiscardsBody() throws JspException, IOException {
+		doTag(new NullTag(), "discarded");
+		assertEquals(TEXT_IN_XHTML, out.toString());
+		assertNull("Context restored", RequestEncodingContext.getCurrentContext(request));
+	}
+
+	@Test
+	public void testNullNestedEncoder() throws JspException, IOException {
+		RequestEncodingContext parent = setXhtmlParent();
+		doTag(new NullTag(), "discarded");
+		assertEquals(TEXT_IN_XHTML, out.toString());
+		assertSame("Parent restored", parent, RequestEncodingContext.getCurrentContext(request));
+	}
+}
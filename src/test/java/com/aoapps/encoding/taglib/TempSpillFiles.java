@@ -0,0 +1,67 @@
+/*
+ * ao-encoding-taglib - High performance streaming character encoding in a JSP environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-encoding-taglib.
+ *
+ * ao-encoding-taglib is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-encoding-taglib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-encoding-taglib.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.aoapps.encoding.taglib;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Creates spill files in the default temp directory and deletes them when closed.
+ *
+ * @author  AO Industries, Inc.
+ */
+final class TempSpillFiles implements SpillingTempFileWriter.SpillFiles, Closeable {
+
+	private final List<Path> files = new ArrayList<>();
+
+	@Override
+	public Path createSpillFile(String prefix) throws IOException {
+		Path file = Files.createTempFile(prefix, null);
+		files.add(file);
+		return file;
+	}
+
+	/**
+	 * Gets the number of spill files created.
+	 */
+	int getCount() {
+		return files.size();
+	}
+
+	@Override
+	public void close() {
+		for(Path file : files) {
+			try {
+				Files.deleteIfExists(file);
+			} catch(IOException e) {
+				// May still be mapped on some platforms
+				file.toFile().deleteOnExit();
+			}
+		}
+		files.clear();
+	}
+}
@@ -0,0 +1,56 @@
+/*
+ * ao-encoding-taglib - High performance streaming character encoding in a JSP environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-encoding-taglib.
+ *
+ * ao-encoding-taglib is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-encoding-taglib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-encoding-taglib.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.aoapps.encoding.taglib.mock;
+
+import java.io.IOException;
+import java.io.Writer;
+import javax.servlet.jsp.JspContext;
+import javax.servlet.jsp.tagext.JspFragment;
+
+/**
+ * A tag body that writes a fixed payload, as a compiled JSP fragment of static
+ * template text would.
+ *
+ * @author  AO Industries, Inc.
+ */
+public final class MockBody extends JspFragment {
+
+	private final JspContext jspContext;
+	private final String payload;
+
+	public MockBody(JspContext jspContext, String payload) {
+		this.jspContext = jspContext;
+		this.payload = payload;
+	}
+
+	@Override
+	public void invoke(Writer out) throws IOException {
+		if(out == null) out = jspContext.getOut();
+		out.write(payload);
+	}
+
+	@Override
+	public JspContext getJspContext() {
+		return jspContext;
+	}
+}
@@ -0,0 +1,225 @@
+/*
+ * ao-encoding-taglib - High performance streaming character encoding in a JSP environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-encoding-taglib.
+ *
+ * ao-encoding-taglib is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-encoding-taglib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-encoding-taglib.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.aoapps.encoding.taglib.mock;
+
+import java.io.IOException;
+import javax.servlet.jsp.JspWriter;
+
+/**
+ * An unbuffered, in-memory {@link JspWriter} that counts the characters written.
+ * The tests collect everything written, while the benchmarks discard it, so they
+ * measure the tag pipeline and not the container output buffering.
+ *
+ * @author  AO Industries, Inc.
+ */
+public final class MockJspWriter extends JspWriter {
+
+	/**
+	 * Everything written, or {@code null} when discarded.
+	 */
+	private final StringBuilder sb;
+
+	private long count;
+
+	/**
+	 * @param  collect  collects everything written when {@code true}, otherwise discards it
+	 */
+	public MockJspWriter(boolean collect) {
+		super(NO_BUFFER, true);
+		sb = collect ? new StringBuilder() : null;
+	}
+
+	/**
+	 * Creates a writer that discards everything written.
+	 */
+	public MockJspWriter() {
+		this(false);
+	}
+
+	@Override
+	public void write(int c) {
+		count++;
+		if(sb != null) sb.append((char)c);
+	}
+
+	@Override
+	public void write(char[] cbuf, int off, int len) {
+		count += len;
+		if(sb != null) sb.append(cbuf, off, len);
+	}
+
+	@Override
+	public void write(String str, int off, int len) {
+		count += len;
+		if(sb != null) sb.append(str, off, off + len);
+	}
+
+	@Override
+	public void newLine() {
+		write(System.lineSeparator());
+	}
+
+	@Override
+	public void print(boolean b) {
+		write(String.valueOf(b));
+	}
+
+	@Override
+	public void print(char c) {
+		write(c);
+	}
+
+	@Override
+	public void print(int i) {
+		write(String.valueOf(i));
+	}
+
+	@Override
+	public void print(long l) {
+		write(String.valueOf(l));
+	}
+
+	@Override
+	public void print(float f) {
+		write(String.valueOf(f));
+	}
+
+	@Override
+	public void print(double d) {
+		write(String.valueOf(d));
+	}
+
+	@Override
+	public void print(char[] s) {
+		write(s, 0, s.length);
+	}
+
+	@Override
+	public void print(String s) {
+		write(String.valueOf(s));
+	}
+
+	@Override
+	public void print(Object obj) {
+		write(String.valueOf(obj));
+	}
+
+	@Override
+	public void println() {
+		newLine();
+	}
+
+	@Override
+	public void println(boolean x) {
+		print(x);
+		newLine();
+	}
+
+	@Override
+	public void println(char x) {
+		print(x);
+		newLine();
+	}
+
+	@Override
+	public void println(int x) {
+		print(x);
+		newLine();
+	}
+
+	@Override
+	public void println(long x) {
+		print(x);
+		newLine();
+	}
+
+	@Override
+	public void println(float x) {
+		print(x);
+		newLine();
+	}
+
+	@Override
+	public void println(double x) {
+		print(x);
+		newLine();
+	}
+
+	@Override
+	public void println(char[] x) {
+		print(x);
+		newLine();
+	}
+
+	@Override
+	public void println(String x) {
+		print(x);
+		newLine();
+	}
+
+	@Override
+	public void println(Object x) {
+		print(x);
+		newLine();
+	}
+
+	@Override
+	public void clear() throws IOException {
+		throw new IOException("Not buffered");
+	}
+
+	@Override
+	public void clearBuffer() {
+		// Not buffered
+	}
+
+	@Override
+	public void flush() {
+		// Not buffered
+	}
+
+	@Override
+	public void close() {
+		// Nothing to close
+	}
+
+	@Override
+	public int getRemaining() {
+		return 0;
+	}
+
+	/**
+	 * Gets the total number of characters written.
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Gets everything written, when collecting.
+	 */
+	@Override
+	public String toString() {
+		return (sb == null) ? super.toString() : sb.toString();
+	}
+}
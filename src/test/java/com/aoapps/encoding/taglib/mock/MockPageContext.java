@@ -0,0 +1,224 @@
+/*
+ * ao-encoding-taglib - High performance streaming character encoding in a JSP environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-encoding-taglib.
+ *
+ * ao-encoding-taglib is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-encoding-taglib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-encoding-taglib.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.aoapps.encoding.taglib.mock;
+
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import javax.el.ELContext;
+import javax.servlet.Servlet;
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+import javax.servlet.jsp.JspWriter;
+import javax.servlet.jsp.PageContext;
+
+/**
+ * An in-memory {@link PageContext} with page-scope attributes only.
+ * Request, response, and context are provided by {@link ServletMocks}.
+ *
+ * @author  AO Industries, Inc.
+ */
+public final class MockPageContext extends PageContext {
+
+	private final ServletContext servletContext;
+	private final HttpServletRequest request;
+	private final HttpServletResponse response;
+	private final JspWriter out;
+	private final Map<String, Object> pageAttributes = new HashMap<>();
+
+	public MockPageContext(ServletContext servletContext, HttpServletRequest request, HttpServletResponse response, JspWriter out) {
+		this.servletContext = servletContext;
+		this.request = request;
+		this.response = response;
+		this.out = out;
+	}
+
+	@Override
+	public void initialize(Servlet servlet, ServletRequest request, ServletResponse response, String errorPageURL, boolean needsSession, int bufferSize, boolean autoFlush) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void release() {
+		pageAttributes.clear();
+	}
+
+	@Override
+	public HttpSession getSession() {
+		return null;
+	}
+
+	@Override
+	public Object getPage() {
+		return null;
+	}
+
+	@Override
+	public HttpServletRequest getRequest() {
+		return request;
+	}
+
+	@Override
+	public HttpServletResponse getResponse() {
+		return response;
+	}
+
+	@Override
+	public Exception getException() {
+		return null;
+	}
+
+	@Override
+	public ServletConfig getServletConfig() {
+		return null;
+	}
+
+	@Override
+	public ServletContext getServletContext() {
+		return servletContext;
+	}
+
+	@Override
+	public void forward(String relativeUrlPath) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void include(String relativeUrlPath) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void include(String relativeUrlPath, boolean flush) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void handlePageException(Exception e) {
+		throw new UnsupportedOperationException(e);
+	}
+
+	@Override
+	public void handlePageException(Throwable t) {
+		throw new UnsupportedOperationException(t);
+	}
+
+	@Override
+	public void setAttribute(String name, Object value) {
+		setAttribute(name, value, PAGE_SCOPE);
+	}
+
+	@Override
+	public void setAttribute(String name, Object value, int scope) {
+		if(value == null) {
+			removeAttribute(name, scope);
+		} else if(scope == PAGE_SCOPE) {
+			pageAttributes.put(name, value);
+		} else if(scope == REQUEST_SCOPE) {
+			request.setAttribute(name, value);
+		} else if(scope == APPLICATION_SCOPE) {
+			servletContext.setAttribute(name, value);
+		} else {
+			throw new IllegalArgumentException("Unsupported scope: " + scope);
+		}
+	}
+
+	@Override
+	public Object getAttribute(String name) {
+		return getAttribute(name, PAGE_SCOPE);
+	}
+
+	@Override
+	public Object getAttribute(String name, int scope) {
+		if(scope == PAGE_SCOPE) return pageAttributes.get(name);
+		if(scope == REQUEST_SCOPE) return request.getAttribute(name);
+		if(scope == APPLICATION_SCOPE) return servletContext.getAttribute(name);
+		return null;
+	}
+
+	@Override
+	public Object findAttribute(String name) {
+		int scope = getAttributesScope(name);
+		return scope == 0 ? null : getAttribute(name, scope);
+	}
+
+	@Override
+	public void removeAttribute(String name) {
+		pageAttributes.remove(name);
+		request.removeAttribute(name);
+		servletContext.removeAttribute(name);
+	}
+
+	@Override
+	public void removeAttribute(String name, int scope) {
+		if(scope == PAGE_SCOPE) pageAttributes.remove(name);
+		else if(scope == REQUEST_SCOPE) request.removeAttribute(name);
+		else if(scope == APPLICATION_SCOPE) servletContext.removeAttribute(name);
+	}
+
+	@Override
+	public int getAttributesScope(String name) {
+		if(pageAttributes.containsKey(name)) return PAGE_SCOPE;
+		if(request.getAttribute(name) != null) return REQUEST_SCOPE;
+		if(servletContext.getAttribute(name) != null) return APPLICATION_SCOPE;
+		return 0;
+	}
+
+	@Override
+	public Enumeration<String> getAttributeNamesInScope(int scope) {
+		if(scope == PAGE_SCOPE) return Collections.enumeration(pageAttributes.keySet());
+		if(scope == REQUEST_SCOPE) return request.getAttributeNames();
+		if(scope == APPLICATION_SCOPE) return servletContext.getAttributeNames();
+		return Collections.emptyEnumeration();
+	}
+
+	@Override
+	public JspWriter getOut() {
+		return out;
+	}
+
+	@Override
+	@Deprecated
+	@SuppressWarnings("deprecation")
+	public javax.servlet.jsp.el.ExpressionEvaluator getExpressionEvaluator() {
+		return null;
+	}
+
+	@Override
+	@Deprecated
+	@SuppressWarnings("deprecation")
+	public javax.servlet.jsp.el.VariableResolver getVariableResolver() {
+		return null;
+	}
+
+	@Override
+	public ELContext getELContext() {
+		return null;
+	}
+}
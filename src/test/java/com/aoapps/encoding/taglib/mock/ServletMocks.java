@@ -0,0 +1,227 @@
+/*
+ * ao-encoding-taglib - High performance streaming character encoding in a JSP environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-encoding-taglib.
+ *
+ * ao-encoding-taglib is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-encoding-taglib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-encoding-taglib.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.aoapps.encoding.taglib.mock;
+
+import java.io.File;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletRequest;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Minimal servlet objects for the tests and benchmarks, backed by attribute maps.
+ * The servlet context, HTTP request, and HTTP response, used to run whole tags,
+ * return {@code null}, {@code false}, or zero from methods the tags do not depend on.
+ * The plain request, used by the capture writers alone, throws
+ * {@link UnsupportedOperationException} from any method they do not need.
+ *
+ * @author  AO Industries, Inc.
+ */
+public final class ServletMocks {
+
+	private static Object defaultValue(Class<?> returnType) {
+		if(returnType == boolean.class) return false;
+		if(returnType == int.class) return 0;
+		if(returnType == long.class) return 0L;
+		if(returnType == short.class) return (short)0;
+		if(returnType == byte.class) return (byte)0;
+		if(returnType == char.class) return (char)0;
+		if(returnType == float.class) return 0f;
+		if(returnType == double.class) return 0d;
+		return null;
+	}
+
+	/**
+	 * Creates a servlet context with the given init parameters, using the system
+	 * temporary directory as its {@linkplain ServletContext#TEMPDIR temp directory}.
+	 */
+	public static ServletContext newServletContext(Map<String, String> initParams) {
+		Map<String, Object> attributes = new HashMap<>();
+		attributes.put(ServletContext.TEMPDIR, new File(System.getProperty("java.io.tmpdir")));
+		Map<String, String> params = new HashMap<>(initParams);
+		return (ServletContext)Proxy.newProxyInstance(
+			ServletContext.class.getClassLoader(),
+			new Class<?>[] {ServletContext.class},
+			(proxy, method, args) -> {
+				switch(method.getName()) {
+					case "getInitParameter" :
+						return params.get((String)args[0]);
+					case "getInitParameterNames" :
+						return Collections.enumeration(params.keySet());
+					case "getAttribute" :
+						return attributes.get((String)args[0]);
+					case "setAttribute" :
+						if(args[1] == null) attributes.remove((String)args[0]);
+						else attributes.put((String)args[0], args[1]);
+						return null;
+					case "removeAttribute" :
+						attributes.remove((String)args[0]);
+						return null;
+					case "getAttributeNames" :
+						return Collections.enumeration(attributes.keySet());
+					case "getContextPath" :
+						return "";
+					case "getMajorVersion" :
+						return 3;
+					case "getMinorVersion" :
+						return 1;
+					case "hashCode" :
+						return System.identityHashCode(proxy);
+					case "equals" :
+						return proxy == args[0];
+					case "toString" :
+						return proxy.getClass().getInterfaces()[0].getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(proxy));
+					default :
+						return defaultValue(method.getReturnType());
+				}
+			}
+		);
+	}
+
+	/**
+	 * Creates a servlet context without any init parameters.
+	 */
+	public static ServletContext newServletContext() {
+		return newServletContext(Collections.emptyMap());
+	}
+
+	/**
+	 * Creates a request of the given servlet context.
+	 */
+	public static ServletRequest newServletRequest(ServletContext servletContext) {
+		Map<String, Object> attributes = new HashMap<>();
+		return (ServletRequest)Proxy.newProxyInstance(
+			ServletRequest.class.getClassLoader(),
+			new Class<?>[] {ServletRequest.class},
+			(proxy, method, args) -> {
+				switch(method.getName()) {
+					case "getServletContext" :
+						return servletContext;
+					case "getAttribute" :
+						return attributes.get((String)args[0]);
+					case "setAttribute" :
+						if(args[1] == null) attributes.remove((String)args[0]);
+						else attributes.put((String)args[0], args[1]);
+						return null;
+					case "removeAttribute" :
+						attributes.remove((String)args[0]);
+						return null;
+					case "hashCode" :
+						return System.identityHashCode(proxy);
+					case "equals" :
+						return proxy == args[0];
+					case "toString" :
+						return proxy.getClass().getInterfaces()[0].getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(proxy));
+					default :
+						throw new UnsupportedOperationException(method.toString());
+				}
+			}
+		);
+	}
+
+	/**
+	 * Creates an HTTP request of the given servlet context.
+	 */
+	public static HttpServletRequest newHttpServletRequest(ServletContext servletContext) {
+		Map<String, Object> attributes = new HashMap<>();
+		return (HttpServletRequest)Proxy.newProxyInstance(
+			HttpServletRequest.class.getClassLoader(),
+			new Class<?>[] {HttpServletRequest.class},
+			(proxy, method, args) -> {
+				switch(method.getName()) {
+					case "getServletContext" :
+						return servletContext;
+					case "getAttribute" :
+						return attributes.get((String)args[0]);
+					case "setAttribute" :
+						if(args[1] == null) attributes.remove((String)args[0]);
+						else attributes.put((String)args[0], args[1]);
+						return null;
+					case "removeAttribute" :
+						attributes.remove((String)args[0]);
+						return null;
+					case "getAttributeNames" :
+						return Collections.enumeration(attributes.keySet());
+					case "getContextPath" :
+						return "";
+					case "getServletPath" :
+					case "getRequestURI" :
+						return "/test.jspx";
+					case "getMethod" :
+						return "GET";
+					case "getCharacterEncoding" :
+						return "UTF-8";
+					case "hashCode" :
+						return System.identityHashCode(proxy);
+					case "equals" :
+						return proxy == args[0];
+					case "toString" :
+						return proxy.getClass().getInterfaces()[0].getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(proxy));
+					default :
+						return defaultValue(method.getReturnType());
+				}
+			}
+		);
+	}
+
+	/**
+	 * Creates an HTTP response of the given content type.
+	 */
+	public static HttpServletResponse newHttpServletResponse(String contentType) {
+		return (HttpServletResponse)Proxy.newProxyInstance(
+			HttpServletResponse.class.getClassLoader(),
+			new Class<?>[] {HttpServletResponse.class},
+			(proxy, method, args) -> {
+				switch(method.getName()) {
+					case "getContentType" :
+						return contentType;
+					case "getCharacterEncoding" :
+						return "UTF-8";
+					case "encodeURL" :
+					case "encodeUrl" :
+					case "encodeRedirectURL" :
+					case "encodeRedirectUrl" :
+						return args[0];
+					case "hashCode" :
+						return System.identityHashCode(proxy);
+					case "equals" :
+						return proxy == args[0];
+					case "toString" :
+						return proxy.getClass().getInterfaces()[0].getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(proxy));
+					default :
+						return defaultValue(method.getReturnType());
+				}
+			}
+		);
+	}
+
+	/**
+	 * Make no instances.
+	 */
+	private ServletMocks() {
+	}
+}